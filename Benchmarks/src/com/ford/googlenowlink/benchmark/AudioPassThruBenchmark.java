@@ -0,0 +1,117 @@
+package com.ford.googlenowlink.benchmark;
+
+import com.ford.googlenowlink.applink.audio.AudioChunkConsumer;
+import com.ford.googlenowlink.applink.audio.StreamingCaptureSink;
+import com.ford.syncV4.proxy.rpc.OnAudioPassThru;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingests OnAudioPassThru chunks the way AppLinkService does: queued on the
+ * audio lane, then written to the capture sink and run through the voice
+ * activity detector (APTtoDevice).
+ *
+ * {@code dispatch} is the cost on the proxy's thread, including waiting for
+ * a full lane, so its throughput is that of the whole pipeline; {@code handle}
+ * runs the handler alone on the benchmark thread.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AudioPassThruBenchmark {
+    private static final int SAMPLE_RATE = 16000;
+    // quiet audio fed before the speech, so the detector calibrates its noise floor
+    private static final int CALIBRATION_MS = 400;
+
+    // OnAudioPassThru chunk sizes seen from SYNC: 10 ms to 200 ms of audio
+    @Param({"320", "1600", "6400"})
+    public int chunkSize;
+
+    private SyncCallbackHarness harness;
+    private OnAudioPassThru speech;
+    private byte[] quiet;
+    // written on the audio lane only
+    private long capturedBytes;
+
+    @Setup
+    public void setUp() {
+        harness = new SyncCallbackHarness(new StreamingCaptureSink(new AudioChunkConsumer() {
+            @Override
+            public void onCaptureStarted() {
+            }
+
+            @Override
+            public void onAudioChunk(byte[] data, int offset, int length) {
+                capturedBytes += length;
+            }
+
+            @Override
+            public void onCaptureFinished() {
+            }
+        }));
+        Random random = new Random(42);
+        quiet = new byte[chunkSize];
+        byte[] voiced = new byte[chunkSize];
+        for (int i = 0; i < chunkSize / 2; i++) {
+            int noise = random.nextInt(64) - 32;
+            int tone = (int) (6000 * Math.sin(2 * Math.PI * 220 * i / SAMPLE_RATE)
+                    + 2000 * Math.sin(2 * Math.PI * 1330 * i / SAMPLE_RATE));
+            putSample(quiet, i, noise);
+            putSample(voiced, i, tone + noise);
+        }
+        speech = new OnAudioPassThru();
+        speech.setAPTData(voiced);
+    }
+
+    private static void putSample(byte[] pcm, int index, int sample) {
+        pcm[2 * index] = (byte) sample;
+        pcm[2 * index + 1] = (byte) (sample >> 8);
+    }
+
+    /**
+     * Starts every iteration on a fresh recording with the user speaking, so
+     * the detector does its full work on each chunk and never ends it.
+     */
+    @Setup(Level.Iteration)
+    public void startRecording() throws InterruptedException {
+        harness.awaitIdle();
+        harness.startAPT();
+        int quietChunks = CALIBRATION_MS * SAMPLE_RATE * 2 / 1000 / chunkSize + 1;
+        for (int i = 0; i < quietChunks; i++) {
+            harness.APTtoDevice(quiet);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        harness.shutdown();
+    }
+
+    @Benchmark
+    public void dispatch() {
+        harness.onOnAudioPassThru(speech);
+    }
+
+    @Benchmark
+    public void handle() {
+        harness.handleOnAudioPassThru(speech);
+    }
+}
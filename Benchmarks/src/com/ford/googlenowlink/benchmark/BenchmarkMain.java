@@ -0,0 +1,32 @@
+package com.ford.googlenowlink.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the SYNC callback benchmarks with the GC profiler, so every result
+ * comes with its allocation per operation (gc.alloc.rate.norm) next to the
+ * throughput and latency percentiles.
+ *
+ * Arguments are regular expressions selecting benchmarks, by default all of
+ * the callback benchmarks. For anything else use org.openjdk.jmh.Main.
+ */
+public class BenchmarkMain {
+    private static final String[] CALLBACK_BENCHMARKS = {
+            AudioPassThruBenchmark.class.getSimpleName(),
+            HmiStatusBenchmark.class.getSimpleName(),
+            MenuRegistrationBenchmark.class.getSimpleName(),
+            RpcSerializationBenchmark.class.getSimpleName()
+    };
+
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder().addProfiler(GCProfiler.class);
+        for (String include : args.length > 0 ? args : CALLBACK_BENCHMARKS) {
+            options.include(include);
+        }
+        new Runner(options.build()).run();
+    }
+}
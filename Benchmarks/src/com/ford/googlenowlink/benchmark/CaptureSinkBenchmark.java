@@ -0,0 +1,122 @@
+package com.ford.googlenowlink.benchmark;
+
+import com.ford.googlenowlink.applink.audio.AudioCaptureSink;
+import com.ford.googlenowlink.applink.audio.AudioCaptureWriter;
+import com.ford.googlenowlink.applink.audio.AudioChunkConsumer;
+import com.ford.googlenowlink.applink.audio.BufferPoolCaptureSink;
+import com.ford.googlenowlink.applink.audio.StreamingCaptureSink;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Captures one full audio pass-through utterance (10 s of 16 kHz/16-bit PCM,
+ * as requested by AppLinkService.startAPT) through each capture sink.
+ * Run with -prof gc to compare allocation per utterance.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CaptureSinkBenchmark {
+    private static final int SAMPLE_RATE = 16000;
+    private static final int BITS_PER_SAMPLE = 16;
+    private static final int MAX_DURATION_MS = 10000;
+
+    @Param({"file", "memory", "streaming"})
+    public String sink;
+
+    // OnAudioPassThru chunk sizes seen from SYNC: 10 ms to 200 ms of audio
+    @Param({"320", "1600", "3200", "6400"})
+    public int chunkSize;
+
+    private AudioCaptureSink captureSink;
+    private BufferPoolCaptureSink memorySink;
+    private File file;
+    private byte[] chunk;
+    private int chunksPerUtterance;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(Blackhole bh) throws IOException {
+        blackhole = bh;
+        chunk = new byte[chunkSize];
+        for (int i = 0; i < chunk.length; i++) {
+            chunk[i] = (byte) i;
+        }
+        int utteranceBytes = BufferPoolCaptureSink.bufferSizeFor(MAX_DURATION_MS, SAMPLE_RATE, BITS_PER_SAMPLE);
+        chunksPerUtterance = utteranceBytes / chunkSize;
+        if ("file".equals(sink)) {
+            file = File.createTempFile("capture", ".wav");
+            // chunks arrive far faster than real time here, so size the ring for a whole
+            // utterance to keep the writer from dropping any
+            captureSink = new AudioCaptureWriter(file, SAMPLE_RATE, BITS_PER_SAMPLE, 1,
+                    Integer.highestOneBit(utteranceBytes) << 1);
+        } else if ("memory".equals(sink)) {
+            memorySink = new BufferPoolCaptureSink(utteranceBytes, 2, new BufferPoolCaptureSink.Listener() {
+                @Override
+                public void onUtterance(ByteBuffer audio, int droppedChunks) {
+                    blackhole.consume(audio.remaining());
+                    memorySink.recycle(audio);
+                }
+
+                @Override
+                public void onUtteranceDropped(int droppedChunks) {
+                    blackhole.consume(droppedChunks);
+                }
+            });
+            captureSink = memorySink;
+        } else {
+            captureSink = new StreamingCaptureSink(new AudioChunkConsumer() {
+                @Override
+                public void onCaptureStarted() {
+                }
+
+                @Override
+                public void onAudioChunk(byte[] data, int offset, int length) {
+                    blackhole.consume(data[offset + length - 1]);
+                }
+
+                @Override
+                public void onCaptureFinished() {
+                }
+            });
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        captureSink.finish();
+        if (file != null && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public void captureUtterance() {
+        AudioCaptureSink target = captureSink;
+        target.start();
+        for (int i = 0; i < chunksPerUtterance; i++) {
+            target.write(chunk);
+        }
+        target.finish();
+    }
+}
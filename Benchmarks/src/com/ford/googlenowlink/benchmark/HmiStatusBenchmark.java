@@ -0,0 +1,87 @@
+package com.ford.googlenowlink.benchmark;
+
+import com.ford.syncV4.proxy.rpc.OnHMIStatus;
+import com.ford.syncV4.proxy.rpc.enums.AudioStreamingState;
+import com.ford.syncV4.proxy.rpc.enums.HMILevel;
+import com.ford.syncV4.proxy.rpc.enums.SystemContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handles OnHMIStatus notifications the way AppLinkService does, cycling
+ * through the transitions a head unit sends while the user moves between
+ * apps, opens the menu and uses voice recognition. HMI_FULL updates the
+ * display, which sends a Show when the text changed.
+ *
+ * {@code dispatch} is the cost on the proxy's thread, including waiting for
+ * a full lane; {@code handle} runs the handler alone on the benchmark thread.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HmiStatusBenchmark {
+    private SyncCallbackHarness harness;
+    private OnHMIStatus[] transitions;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        harness = new SyncCallbackHarness();
+        transitions = new OnHMIStatus[] {
+                status(HMILevel.HMI_NONE, SystemContext.SYSCTXT_MAIN, AudioStreamingState.NOT_AUDIBLE, false),
+                status(HMILevel.HMI_FULL, SystemContext.SYSCTXT_MAIN, AudioStreamingState.AUDIBLE, true),
+                status(HMILevel.HMI_FULL, SystemContext.SYSCTXT_MENU, AudioStreamingState.AUDIBLE, false),
+                status(HMILevel.HMI_FULL, SystemContext.SYSCTXT_VRSESSION, AudioStreamingState.NOT_AUDIBLE, false),
+                status(HMILevel.HMI_FULL, SystemContext.SYSCTXT_ALERT, AudioStreamingState.ATTENUATED, false),
+                status(HMILevel.HMI_LIMITED, SystemContext.SYSCTXT_MAIN, AudioStreamingState.AUDIBLE, false),
+                status(HMILevel.HMI_BACKGROUND, SystemContext.SYSCTXT_MAIN, AudioStreamingState.NOT_AUDIBLE, false),
+                status(HMILevel.HMI_FULL, SystemContext.SYSCTXT_MAIN, AudioStreamingState.AUDIBLE, false)
+        };
+    }
+
+    private static OnHMIStatus status(HMILevel hmiLevel, SystemContext systemContext,
+                                      AudioStreamingState audioStreamingState, boolean firstRun) {
+        OnHMIStatus notification = new OnHMIStatus();
+        notification.setHmiLevel(hmiLevel);
+        notification.setSystemContext(systemContext);
+        notification.setAudioStreamingState(audioStreamingState);
+        notification.setFirstRun(firstRun);
+        return notification;
+    }
+
+    @TearDown
+    public void tearDown() {
+        harness.shutdown();
+    }
+
+    private OnHMIStatus nextTransition() {
+        OnHMIStatus notification = transitions[next];
+        next = (next + 1) % transitions.length;
+        return notification;
+    }
+
+    @Benchmark
+    public void dispatch() {
+        harness.onOnHMIStatus(nextTransition());
+    }
+
+    @Benchmark
+    public void handle() {
+        harness.handleOnHMIStatus(nextTransition());
+    }
+}
@@ -0,0 +1,67 @@
+package com.ford.googlenowlink.benchmark;
+
+import com.ford.googlenowlink.applink.log.AsyncLogger;
+import com.ford.syncV4.proxy.rpc.PerformAudioPassThruResponse;
+import com.ford.syncV4.proxy.rpc.enums.Result;
+
+import android.util.Log;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs the records of the audio pass-through path: a trace per chunk and the
+ * PerformAudioPassThru response with its JSON. At INFO both are rejected
+ * before formatting and must not allocate; at VERBOSE they are queued for
+ * the drain thread, which does the formatting and serialization.
+ * Run with -prof gc to check the allocation per record.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LoggingBenchmark {
+    @Param({"INFO", "VERBOSE"})
+    public String level;
+
+    private AsyncLogger logger;
+    private PerformAudioPassThruResponse response;
+    private int chunkSize = 1600;
+
+    @Setup
+    public void setUp() {
+        logger = new AsyncLogger("Benchmark", AsyncLogger.DEFAULT_CAPACITY, new AsyncLogger.Sink() {
+            @Override
+            public void write(int level, String tag, String message, Throwable throwable) {
+            }
+        });
+        logger.setLevel("INFO".equals(level) ? Log.INFO : Log.VERBOSE);
+        response = new PerformAudioPassThruResponse();
+        response.setCorrelationID(42);
+        response.setSuccess(true);
+        response.setResultCode(Result.SUCCESS);
+    }
+
+    @Benchmark
+    public void chunkTrace() {
+        logger.log(Log.VERBOSE, "Audio pass-through chunk, {} bytes", 1, chunkSize, 0);
+    }
+
+    @Benchmark
+    public void rpcPayload() {
+        logger.log(Log.DEBUG, "S onPerformAudioPassThruResponse: {}", 1, response, null, null, null);
+    }
+}
@@ -0,0 +1,80 @@
+package com.ford.googlenowlink.benchmark;
+
+import com.ford.googlenowlink.applink.menu.MenuModel;
+import com.ford.googlenowlink.applink.menu.MenuRegistrar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registers a whole menu on the fake head unit: AddSubMenu requests first,
+ * then from each onAddSubMenuResponse the AddCommands of that submenu, with
+ * every response handled on the response lane as in AppLinkService. One
+ * operation lasts until the last response has been handled.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MenuRegistrationBenchmark {
+    @Param({"1", "4"})
+    public int subMenus;
+
+    @Param({"4", "16"})
+    public int commandsPerSubMenu;
+
+    private SyncCallbackHarness harness;
+    private MenuModel menu;
+
+    @Setup
+    public void setUp() {
+        harness = new SyncCallbackHarness();
+        menu = new MenuModel();
+        int cmdId = 100;
+        for (int i = 1; i <= subMenus; i++) {
+            menu.addSubMenu(i, "Menu " + i);
+            for (int j = 0; j < commandsPerSubMenu; j++) {
+                menu.addCommand(cmdId, "Command " + cmdId, i, "Command " + cmdId, "Run " + cmdId);
+                cmdId++;
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        harness.shutdown();
+    }
+
+    @Benchmark
+    public MenuModel register() throws InterruptedException {
+        final CountDownLatch registered = new CountDownLatch(1);
+        final int[] failures = new int[1];
+        harness.getMenuRegistrar().register(menu, new MenuRegistrar.Listener() {
+            @Override
+            public void onMenuRegistered(MenuModel registeredMenu, int failureCount, long elapsedMs) {
+                failures[0] = failureCount;
+                registered.countDown();
+            }
+        });
+        registered.await();
+        if (failures[0] != 0) {
+            throw new IllegalStateException(failures[0] + " menu items failed to register");
+        }
+        return menu;
+    }
+}
@@ -0,0 +1,85 @@
+package com.ford.googlenowlink.benchmark;
+
+import com.ford.syncV4.marshal.JsonRPCMarshaller;
+import com.ford.syncV4.proxy.RPCRequest;
+import com.ford.syncV4.proxy.rpc.AddCommand;
+import com.ford.syncV4.proxy.rpc.MenuParams;
+import com.ford.syncV4.proxy.rpc.PutFile;
+import com.ford.syncV4.proxy.rpc.Show;
+import com.ford.syncV4.proxy.rpc.enums.FileType;
+import com.ford.syncV4.proxy.rpc.enums.TextAlignment;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Marshals the requests the app sends most into the JSON payload
+ * SyncProxyALM puts on the wire. PutFile carries one upload chunk, which
+ * travels as binary data next to the JSON.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RpcSerializationBenchmark {
+    // protocol version 2, used by SYNC generation 2 and later
+    private static final byte PROTOCOL_VERSION = 2;
+
+    @Param({"Show", "AddCommand", "PutFile"})
+    public String rpc;
+
+    private RPCRequest request;
+
+    @Setup
+    public void setUp() {
+        if ("Show".equals(rpc)) {
+            Show show = new Show();
+            show.setMainField1("SyncProxy is");
+            show.setMainField2("Alive");
+            show.setAlignment(TextAlignment.CENTERED);
+            request = show;
+        } else if ("AddCommand".equals(rpc)) {
+            MenuParams menuParams = new MenuParams();
+            menuParams.setMenuName("Test Command");
+            menuParams.setParentID(1);
+            menuParams.setPosition(0);
+            AddCommand addCommand = new AddCommand();
+            addCommand.setCmdID(100);
+            addCommand.setMenuParams(menuParams);
+            addCommand.setVrCommands(new Vector<String>(Arrays.asList("Test Command", "Test")));
+            request = addCommand;
+        } else {
+            byte[] chunk = new byte[16 * 1024];
+            Arrays.fill(chunk, (byte) 0x5a);
+            PutFile putFile = new PutFile();
+            putFile.setSyncFileName("ic_launcher.png");
+            putFile.setFileType(FileType.GRAPHIC_PNG);
+            putFile.setPersistentFile(true);
+            putFile.setOffset(0);
+            putFile.setLength(chunk.length);
+            putFile.setBulkData(chunk);
+            request = putFile;
+        }
+        request.setCorrelationID(65535);
+    }
+
+    @Benchmark
+    public byte[] marshall() {
+        return JsonRPCMarshaller.marshall(request, PROTOCOL_VERSION);
+    }
+}
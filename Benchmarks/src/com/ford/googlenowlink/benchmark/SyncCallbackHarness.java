@@ -0,0 +1,224 @@
+package com.ford.googlenowlink.benchmark;
+
+import com.ford.googlenowlink.applink.audio.AudioCaptureSink;
+import com.ford.googlenowlink.applink.audio.AudioChunkConsumer;
+import com.ford.googlenowlink.applink.audio.AudioPassThruHandler;
+import com.ford.googlenowlink.applink.audio.StreamingCaptureSink;
+import com.ford.googlenowlink.applink.audio.VoiceActivityDetector;
+import com.ford.googlenowlink.applink.connection.HmiStatusHandler;
+import com.ford.googlenowlink.applink.connection.ReconnectScheduler;
+import com.ford.googlenowlink.applink.connection.RegistrationCache;
+import com.ford.googlenowlink.applink.connection.TaskScheduler;
+import com.ford.googlenowlink.applink.dispatch.EventDispatcher;
+import com.ford.googlenowlink.applink.dispatch.ResponseDispatcher;
+import com.ford.googlenowlink.applink.display.DisplayCoalescer;
+import com.ford.googlenowlink.applink.menu.MenuRegistrar;
+import com.ford.googlenowlink.applink.metrics.ConnectionTracer;
+import com.ford.googlenowlink.applink.rpc.AsyncRpcClient;
+import com.ford.googlenowlink.applink.rpc.RpcTransport;
+import com.ford.syncV4.exception.SyncException;
+import com.ford.syncV4.proxy.RPCRequest;
+import com.ford.syncV4.proxy.RPCResponse;
+import com.ford.syncV4.proxy.rpc.AddCommand;
+import com.ford.syncV4.proxy.rpc.AddCommandResponse;
+import com.ford.syncV4.proxy.rpc.AddSubMenu;
+import com.ford.syncV4.proxy.rpc.AddSubMenuResponse;
+import com.ford.syncV4.proxy.rpc.EndAudioPassThru;
+import com.ford.syncV4.proxy.rpc.EndAudioPassThruResponse;
+import com.ford.syncV4.proxy.rpc.OnAudioPassThru;
+import com.ford.syncV4.proxy.rpc.OnHMIStatus;
+import com.ford.syncV4.proxy.rpc.Show;
+import com.ford.syncV4.proxy.rpc.ShowResponse;
+import com.ford.syncV4.proxy.rpc.enums.HMILevel;
+import com.ford.syncV4.proxy.rpc.enums.Result;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stand-in for AppLinkService and its SyncProxyALM on a plain JVM.
+ *
+ * The service itself needs Android, so this wires up the same components the
+ * service does, with the same lanes, and hands OnAudioPassThru, OnHMIStatus
+ * and the responses to the same handlers the service's callbacks call,
+ * leaving out only the Android side: setting the app up on the first run
+ * and the HMI level in the app state. The fake proxy answers every request
+ * with SUCCESS and calls the matching response callback right away, like
+ * SyncProxyALM does from its dispatch thread. Requests skip
+ * RpcSendQueue, whose rate limit would otherwise be all that is measured, and
+ * delayed tasks run at once.
+ */
+public class SyncCallbackHarness {
+    private static final int APT_SAMPLE_RATE = 16000;
+
+    private final EventDispatcher dispatcher = new EventDispatcher();
+    private final EventDispatcher.Lane eventLane = dispatcher.addLane("events", 64, 1);
+    private final EventDispatcher.Lane audioLane = dispatcher.addLane("audio", 256, 1);
+    private final EventDispatcher.Lane responseLane = dispatcher.addLane("responses", 128, 4);
+
+    private final RpcTransport proxy = new RpcTransport() {
+        @Override
+        public void sendRPCRequest(RPCRequest request) throws SyncException {
+            if (request instanceof AddSubMenu) {
+                onAddSubMenuResponse(success(new AddSubMenuResponse(), request));
+            } else if (request instanceof AddCommand) {
+                onAddCommandResponse(success(new AddCommandResponse(), request));
+            } else if (request instanceof Show) {
+                onShowResponse(success(new ShowResponse(), request));
+            } else if (request instanceof EndAudioPassThru) {
+                onEndAudioPassThruResponse(success(new EndAudioPassThruResponse(), request));
+            }
+        }
+    };
+
+    private final TaskScheduler scheduler = new TaskScheduler() {
+        @Override
+        public long now() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            task.run();
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+        }
+    };
+
+    private final AsyncRpcClient rpcClient = new AsyncRpcClient(proxy);
+    private final RegistrationCache registrationCache = new RegistrationCache();
+    private final MenuRegistrar menuRegistrar = new MenuRegistrar(rpcClient, registrationCache);
+    private final DisplayCoalescer display = new DisplayCoalescer(rpcClient, scheduler);
+    private final ConnectionTracer tracer = new ConnectionTracer();
+    private final ReconnectScheduler reconnectScheduler = new ReconnectScheduler(scheduler, new Runnable() {
+        @Override
+        public void run() {
+        }
+    });
+    private final ResponseDispatcher responses = new ResponseDispatcher(dispatcher, responseLane, rpcClient);
+    private final AudioPassThruHandler audioPassThru = new AudioPassThruHandler(dispatcher, audioLane,
+            APT_SAMPLE_RATE, new AudioPassThruHandler.Listener() {
+        @Override
+        public void onEndOfUtterance(VoiceActivityDetector.State state, int frames) {
+            rpcClient.send(new EndAudioPassThru());
+        }
+    });
+    private volatile HMILevel hmiLevel = HMILevel.HMI_NONE;
+    private final HmiStatusHandler hmiStatus = new HmiStatusHandler(dispatcher, eventLane, tracer,
+            reconnectScheduler, display, new HmiStatusHandler.Listener() {
+        @Override
+        public void onHmiLevel(HMILevel level) {
+            hmiLevel = level;
+        }
+
+        @Override
+        public void onActivated(String timeline) {
+        }
+
+        @Override
+        public void onFirstRun() {
+        }
+    });
+
+    /**
+     * Creates a harness that discards captured audio.
+     */
+    public SyncCallbackHarness() {
+        this(new StreamingCaptureSink(new AudioChunkConsumer() {
+            @Override
+            public void onCaptureStarted() {
+            }
+
+            @Override
+            public void onAudioChunk(byte[] data, int offset, int length) {
+            }
+
+            @Override
+            public void onCaptureFinished() {
+            }
+        }));
+    }
+
+    public SyncCallbackHarness(AudioCaptureSink audioCapture) {
+        audioPassThru.setSink(audioCapture);
+    }
+
+    private static <T extends RPCResponse> T success(T response, RPCRequest request) {
+        response.setCorrelationID(request.getCorrelationID());
+        response.setSuccess(true);
+        response.setResultCode(Result.SUCCESS);
+        return response;
+    }
+
+    public MenuRegistrar getMenuRegistrar() {
+        return menuRegistrar;
+    }
+
+    public EventDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    public HMILevel getHmiLevel() {
+        return hmiLevel;
+    }
+
+    /**
+     * Starts a new recording, as startAPT does before PerformAudioPassThru is sent.
+     */
+    public void startAPT() {
+        audioPassThru.start();
+    }
+
+    public void onOnAudioPassThru(OnAudioPassThru notification) {
+        audioPassThru.onOnAudioPassThru(notification);
+    }
+
+    public void handleOnAudioPassThru(OnAudioPassThru notification) {
+        audioPassThru.handle(notification);
+    }
+
+    public void APTtoDevice(byte[] aptData) {
+        audioPassThru.write(aptData);
+    }
+
+    public void onOnHMIStatus(OnHMIStatus notification) {
+        hmiStatus.onOnHMIStatus(notification);
+    }
+
+    public void handleOnHMIStatus(OnHMIStatus notification) {
+        hmiStatus.handle(notification);
+    }
+
+    public void onAddSubMenuResponse(AddSubMenuResponse response) {
+        responses.onAddSubMenuResponse(response);
+    }
+
+    public void onAddCommandResponse(AddCommandResponse response) {
+        responses.onAddCommandResponse(response);
+    }
+
+    public void onShowResponse(ShowResponse response) {
+        responses.dispatch(response);
+    }
+
+    public void onEndAudioPassThruResponse(EndAudioPassThruResponse response) {
+        responses.dispatch(response);
+    }
+
+    /**
+     * Waits until no callback is queued on any lane.
+     */
+    public void awaitIdle() throws InterruptedException {
+        for (EventDispatcher.Lane lane : dispatcher.getLanes()) {
+            while (lane.getDepth() > 0) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    public void shutdown() {
+        dispatcher.shutdown();
+        audioPassThru.finish();
+    }
+}
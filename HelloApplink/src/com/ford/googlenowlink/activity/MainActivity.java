@@ -2,10 +2,10 @@ package com.ford.googlenowlink.activity;
 
 import com.ford.googlenowlink.applink.AppLinkActivity;
 import com.ford.googlenowlink.applink.AppLinkApplication;
+import com.ford.googlenowlink.applink.log.AppLog;
 import com.ford.googlenowlink.R;
 
 import android.os.Bundle;
-import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 
@@ -45,7 +45,7 @@ public class MainActivity extends AppLinkActivity {
 
 	@Override
 	protected void onDestroy() {
-		Log.v(AppLinkApplication.TAG, "onDestroy main");		
+		AppLog.v("onDestroy main");		
 		super.onDestroy();
 	}
 }
@@ -18,9 +18,7 @@ public class AppLinkActivity extends Activity {
 		super.onResume();
 		AppLinkApplication.setCurrentActivity(this);
 		activityOnTop = true;
-    	if (LockScreenManager.getLockScreenStatus()) {
-    		LockScreenManager.showLockScreen();
-    	}
+		LockScreenManager.onActivityResumed();
 	}
 	
 	/**
@@ -49,12 +47,19 @@ public class AppLinkActivity extends Activity {
     @Override
 	protected void onDestroy() {
     	// Set the current activity to null if no other activity has taken the foreground.
-    	if (AppLinkApplication.getCurrentActivity() == this) {
-    		AppLinkApplication.setCurrentActivity(null);
-    	}
+    	AppLinkApplication.clearCurrentActivity(this);
+    	LockScreenManager.onActivityDestroyed(this);
     	super.onDestroy();
 	}
 
+	// Disable back button while the lockscreen is up
+	@Override
+	public void onBackPressed() {
+		if (!LockScreenManager.getLockScreenStatus()) {
+			super.onBackPressed();
+		}
+	}
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         return true;
@@ -1,5 +1,9 @@
 package com.ford.googlenowlink.applink;
 
+import com.ford.googlenowlink.applink.log.AppLog;
+import com.ford.googlenowlink.applink.metrics.ConnectionTracer;
+import com.ford.googlenowlink.applink.metrics.MetricsRegistry;
+import com.ford.googlenowlink.applink.state.AppStateHolder;
 import com.ford.syncV4.exception.SyncException;
 import com.ford.syncV4.proxy.SyncProxyALM;
 
@@ -10,38 +14,60 @@ import android.bluetooth.BluetoothAdapter;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager.NameNotFoundException;
-import android.util.Log;
+
+import java.util.Locale;
 
 public class AppLinkApplication extends Application {
 	
 	public static final String TAG = "Hello Google Now"; // Global TAG used in logging
-	private static AppLinkApplication instance;
-	private static Activity currentUIActivity;
+	// application, service, proxy, foreground activity, lockscreen and HMI level, read without locking
+	private static final AppStateHolder STATE = new AppStateHolder();
+	// timeline of each connection from ACL_CONNECTED to HMI_FULL
+	private static final ConnectionTracer TRACER = new ConnectionTracer();
+	// counters and latency histograms, dumped with dumpsys, see AppLinkService.dump()
+	private static final MetricsRegistry METRICS = new MetricsRegistry();
 	
 	static {
-		instance = null;
+		for (ConnectionTracer.Phase phase : ConnectionTracer.Phase.values()) {
+			METRICS.register("connection." + phase.name().toLowerCase(Locale.US), TRACER.getDurations(phase));
+		}
+	}
+	
+	public static AppStateHolder getState() {
+		return STATE;
+	}
+	
+	public static ConnectionTracer getTracer() {
+		return TRACER;
+	}
+	
+	public static MetricsRegistry getMetrics() {
+		return METRICS;
 	}
 	
-	private static synchronized void setInstance(AppLinkApplication app) {
-		instance = app;
+	public static AppLinkApplication getInstance() {
+		return STATE.get().getApplication();
 	}
 	
-	public static synchronized AppLinkApplication getInstance() {
-		return instance;
+	public static void setCurrentActivity(Activity act) {
+		STATE.setCurrentActivity(act);
 	}
 	
-	public static synchronized void setCurrentActivity(Activity act) {
-		currentUIActivity = act;
+	/**
+	 * Clears the current activity if no other activity has taken the foreground.
+	 */
+	public static void clearCurrentActivity(Activity act) {
+		STATE.clearCurrentActivity(act);
 	}
 	
-	public static synchronized Activity getCurrentActivity() {
-		return currentUIActivity;
+	public static Activity getCurrentActivity() {
+		return STATE.get().getCurrentActivity();
 	}
 	
 	@Override
 	public void onCreate() {
 		super.onCreate();
-		AppLinkApplication.setInstance(this);
+		STATE.setApplication(this);
 	}
 	
 	@Override
@@ -58,6 +84,11 @@ public class AppLinkApplication extends Application {
 		{
 			if ((mBtAdapter.isEnabled() && mBtAdapter.getBondedDevices().isEmpty() == false)) 
 			{
+				// started from the app rather than by ACL_CONNECTED
+				if (!TRACER.isTracing()) {
+					TRACER.startConnection();
+				}
+				TRACER.begin(ConnectionTracer.Phase.SERVICE_START);
         		Intent startIntent = new Intent(this, AppLinkService.class);
         		startService(startIntent);
 			}
@@ -79,7 +110,7 @@ public class AppLinkApplication extends Application {
 		}
 	}
 	
-	// Stop the AppLinkService
+	// Stop the AppLinkService once its warm-standby budget runs out
 	public void endSyncProxyService() {
 		AppLinkService serviceInstance = AppLinkService.getInstance();
 		if (serviceInstance != null){
@@ -95,7 +126,7 @@ public class AppLinkApplication extends Application {
 			appMessage = "Google Now Link Version: " +
 						  getPackageManager().getPackageInfo(getPackageName(), 0).versionName;
 		} catch (NameNotFoundException e) {
-			Log.d(AppLinkApplication.TAG, "Can't get package info", e);
+			AppLog.d("Can't get package info", e);
 		}
 		
 		try {
@@ -109,8 +140,7 @@ public class AppLinkApplication extends Application {
 	    		}
 			}	
 		} catch (SyncException e) {
-			Log.d(AppLinkApplication.TAG, "Can't get Proxy Version", e);
-			e.printStackTrace();
+			AppLog.w("Can't get Proxy Version", e);
 		}
 		new AlertDialog.Builder(context).setTitle("App Version Information")
 									 .setMessage(appMessage + "\r\n" + proxyMessage)
@@ -9,6 +9,7 @@ public class AppLinkReceiver  extends BroadcastReceiver {
 	public void onReceive(Context context, Intent intent) {
 		// Start the AppLinkService on BT connection
 		if (intent.getAction().compareTo(BluetoothDevice.ACTION_ACL_CONNECTED) == 0) {
+			AppLinkApplication.getTracer().startConnection();
 			AppLinkApplication app = AppLinkApplication.getInstance();
 			if (app != null) {
 				app.startSyncProxyService();
@@ -1,20 +1,61 @@
 package com.ford.googlenowlink.applink;
 
+import com.ford.googlenowlink.R;
+import com.ford.googlenowlink.applink.audio.AudioCaptureSink;
+import com.ford.googlenowlink.applink.audio.AudioCaptureWriter;
+import com.ford.googlenowlink.applink.audio.AudioPassThruHandler;
+import com.ford.googlenowlink.applink.audio.BufferPoolCaptureSink;
+import com.ford.googlenowlink.applink.audio.VoiceActivityDetector;
+import com.ford.googlenowlink.applink.connection.HandlerTaskScheduler;
+import com.ford.googlenowlink.applink.connection.HmiStatusHandler;
+import com.ford.googlenowlink.applink.diagnostics.DiagnosticScanner;
+import com.ford.googlenowlink.applink.dispatch.EventDispatcher;
+import com.ford.googlenowlink.applink.dispatch.LaneTaskScheduler;
+import com.ford.googlenowlink.applink.dispatch.ResponseDispatcher;
+import com.ford.googlenowlink.applink.files.FileUploadManager;
+import com.ford.googlenowlink.applink.files.UploadAsset;
+import com.ford.googlenowlink.applink.interaction.ChoiceSetManager;
+import com.ford.googlenowlink.applink.interaction.ChoiceSetModel;
+import com.ford.googlenowlink.applink.display.DisplayCoalescer;
+import com.ford.googlenowlink.applink.connection.ReconnectScheduler;
+import com.ford.googlenowlink.applink.connection.RegistrationCache;
+import com.ford.googlenowlink.applink.connection.ResumptionStore;
+import com.ford.googlenowlink.applink.log.AppLog;
+import com.ford.googlenowlink.applink.menu.MenuModel;
+import com.ford.googlenowlink.applink.metrics.ConnectionTracer;
+import com.ford.googlenowlink.applink.metrics.MetricsRegistry;
+import com.ford.googlenowlink.applink.metrics.StripedCounter;
+import com.ford.googlenowlink.applink.menu.MenuRegistrar;
+import com.ford.googlenowlink.applink.rpc.AsyncRpcClient;
+import com.ford.googlenowlink.applink.rpc.RpcCallback;
+import com.ford.googlenowlink.applink.rpc.RpcFuture;
+import com.ford.googlenowlink.applink.rpc.RpcSendQueue;
+import com.ford.googlenowlink.applink.rpc.RpcTransport;
+import com.ford.googlenowlink.applink.rpc.SupersededRequestException;
+import com.ford.googlenowlink.applink.speech.SpeechQueue;
+import com.ford.googlenowlink.applink.speech.TtsPrompt;
+import com.ford.googlenowlink.applink.state.AppStateHolder;
+import com.ford.googlenowlink.applink.vehicle.TripRecorder;
+import com.ford.googlenowlink.applink.vehicle.VehicleDataEngine;
+import com.ford.googlenowlink.applink.vehicle.VehicleDataSubscriptions;
+import com.ford.googlenowlink.applink.vehicle.VehicleSignal;
 import com.ford.syncV4.exception.SyncException;
 import com.ford.syncV4.exception.SyncExceptionCause;
+import com.ford.syncV4.proxy.RPCRequest;
+import com.ford.syncV4.proxy.RPCResponse;
 import com.ford.syncV4.proxy.SyncProxyALM;
-import com.ford.syncV4.proxy.TTSChunkFactory;
 import com.ford.syncV4.proxy.interfaces.IProxyListenerALM;
 import com.ford.syncV4.proxy.rpc.*;
 import com.ford.syncV4.proxy.rpc.enums.AudioType;
 import com.ford.syncV4.proxy.rpc.enums.BitsPerSample;
 import com.ford.syncV4.proxy.rpc.enums.ButtonName;
-import com.ford.syncV4.proxy.rpc.enums.LockScreenStatus;
+import com.ford.syncV4.proxy.rpc.enums.FileType;
+import com.ford.syncV4.proxy.rpc.enums.HMILevel;
+import com.ford.syncV4.proxy.rpc.enums.Language;
 import com.ford.syncV4.proxy.rpc.enums.Result;
 import com.ford.syncV4.proxy.rpc.enums.SamplingRate;
 import com.ford.syncV4.proxy.rpc.enums.SyncDisconnectedReason;
 import com.ford.syncV4.proxy.rpc.enums.TextAlignment;
-import com.ford.syncV4.util.DebugTool;
 
 import android.app.Service;
 import android.bluetooth.BluetoothAdapter;
@@ -22,36 +63,121 @@ import android.content.ActivityNotFoundException;
 import android.content.Context;
 import android.content.Intent;
 import android.media.AudioManager;
+import android.media.MediaPlayer;
 import android.os.Handler;
 import android.os.IBinder;
-import android.util.Log;
+import android.os.SystemClock;
+
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.FileDescriptor;
 import java.io.IOException;
-import java.util.Vector;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class AppLinkService extends Service implements IProxyListenerALM {
-    // variable used to increment correlation ID for every request sent to SYNC
-    public int autoIncCorrId = 0;
-    // variable to contain the current state of the service
-    private static AppLinkService instance = null;
+    // the only writer to the proxy: sends requests in priority order at a rate SYNC accepts
+    private final RpcSendQueue sendQueue = new RpcSendQueue(new RpcTransport() {
+        @Override
+        public void sendRPCRequest(RPCRequest request) throws SyncException {
+            SyncProxyALM current = getProxy();
+            if (current == null) {
+                throw new SyncException("Proxy is not running", SyncExceptionCause.SYNC_PROXY_DISPOSED);
+            }
+            current.sendRPCRequest(request);
+        }
+    }, new RpcSendQueue.Listener() {
+        @Override
+        public void onNotSent(RPCRequest request, Throwable cause) {
+            rpcClient.fail(request.getCorrelationID(), cause);
+        }
+    });
+    // sends requests to SYNC and matches responses to them by correlation ID
+    private final AsyncRpcClient rpcClient = new AsyncRpcClient(sendQueue);
+    // holds the running service and its SyncProxy, see getInstance() and getProxy()
+    private final AppStateHolder state = AppLinkApplication.getState();
+    private final ConnectionTracer tracer = AppLinkApplication.getTracer();
+    // RPC round trips and connection counts, see dump()
+    private final MetricsRegistry metrics = AppLinkApplication.getMetrics();
+    private final StripedCounter connectionsActivated = metrics.counter("connection.activated");
+    private final StripedCounter connectionsLost = metrics.counter("connection.lost");
+    private final StripedCounter proxyResets = metrics.counter("proxy.reset");
+    // binary snapshot written by "dumpsys activity service AppLinkService binary"
+    private static final String METRICS_FILE = "metrics.bin";
     // variable to access the BluetoothAdapter
     private BluetoothAdapter mBtAdapter;
-    // variable to create and call functions of the SyncProxy
-    private SyncProxyALM proxy = null;
 
     // Service shutdown timing constants
     private static final int CONNECTION_TIMEOUT = 60000;
     private static final int STOP_SERVICE_DELAY = 5000;
+    // How long the service and proxy stay alive after ACL_DISCONNECT by default
+    public static final long DEFAULT_WARM_STANDBY_BUDGET = 120000;
 
     // Constant for command ID
     private static final int COMMAND_1 = 1;
     private static final int SUBMENU_1 = 100;
 
+    // Menu shown on SYNC, sent on the first HMI_FULL
+    private final MenuModel menu = new MenuModel()
+            .addSubMenu(SUBMENU_1, "SubMenu 1")
+            .addCommand(COMMAND_1, "Command 1", SUBMENU_1, "Okay Google", "Ok Google");
+    // everything SYNC accepted during setup, replayed after a warm reconnect
+    private final RegistrationCache registrationCache = new RegistrationCache();
+    private final MenuRegistrar menuRegistrar = new MenuRegistrar(rpcClient, registrationCache);
+    // choice sets kept on SYNC so an interaction is a single PerformInteraction
+    public static final int CHOICE_SET_CONFIRM = 1000;
+    private static final int CHOICE_YES = 1001;
+    private static final int CHOICE_NO = 1002;
+    private final ChoiceSetManager choiceSets = new ChoiceSetManager(rpcClient)
+            .define(new ChoiceSetModel(CHOICE_SET_CONFIRM)
+                    .addChoice(CHOICE_YES, "Yes", "Yes", "Okay")
+                    .addChoice(CHOICE_NO, "No", "No", "Cancel"), true);
+    // idle time after ACL_DISCONNECT before the service and proxy are torn down
+    private volatile long warmStandbyBudget = DEFAULT_WARM_STANDBY_BUDGET;
+
+    // How long to wait on the first HMI_FULL for SYNC to confirm a resumption
+    private static final int RESUMPTION_GRACE = 2000;
+    // last hash ID from OnHashChange, handed back on the next registration
+    private ResumptionStore resumptionStore;
+    // set when the proxy registered with a stored hash ID
+    private volatile boolean resumptionRequested;
+    // set when OnHashChange arrived since the proxy (re)registered
+    private volatile boolean hashChanged;
+    // set while the first HMI_FULL waits for the resumption to be confirmed
+    private final AtomicBoolean setupPending = new AtomicBoolean();
+
+    // Audio pass-through recording length, and how much longer to wait for its response
+    private static final int APT_MAX_DURATION = 10000;
+    private static final int APT_RESPONSE_MARGIN = 5000;
+    // Audio pass-through format, must match the PerformAudioPassThru request
+    private static final int APT_SAMPLE_RATE = 16000;
+    private static final int APT_BITS_PER_SAMPLE = 16;
+
+    // Audio pass-through capture files in the cache directory
+    private static final String AUDIO_PASS_THRU_FILE = "audiopassthru";
+    private static final String WAV = ".wav";
+    // writes audio pass-through chunks to a WAV file off the proxy's callback thread
+    private AudioCaptureWriter fileCapture;
+    // plays back the last recording
+    private MediaPlayer audioPassThruPlayer;
+
     public static final String TAG = "Hello Google Now"; // Global TAG used in logging
+    /**
+     * Runnable that sets the app up from scratch when SYNC did not confirm
+     * the resumption within RESUMPTION_GRACE of the first HMI_FULL.
+     */
+    private Runnable mResumptionTimeoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (setupPending.compareAndSet(true, false)) {
+                AppLog.i("Resumption not confirmed, registering from scratch");
+                // the stored hash is stale, a new one arrives with the registration
+                resumptionStore.clear();
+                registerApp();
+            }
+        }
+    };
+
     /**
      * Runnable that stops this service if there hasn't been a connection to SYNC
      * within a reasonable amount of time since ACL_CONNECT.
@@ -60,6 +186,7 @@ public class AppLinkService extends Service implements IProxyListenerALM {
         @Override
         public void run() {
             Boolean stopService = true;
+            SyncProxyALM proxy = getProxy();
             // If the proxy has connected to SYNC, do NOT stop the service
             if (proxy != null && proxy.getIsConnected()) {
                 stopService = false;
@@ -79,6 +206,7 @@ public class AppLinkService extends Service implements IProxyListenerALM {
     private Runnable mStopServiceRunnable = new Runnable() {
         @Override
         public void run() {
+            SyncProxyALM proxy = getProxy();
             // As long as the proxy is null or not connected to SYNC, stop the service
             if (proxy == null || !proxy.getIsConnected()) {
                 mHandler.removeCallbacks(mCheckConnectionRunnable);
@@ -90,18 +218,120 @@ public class AppLinkService extends Service implements IProxyListenerALM {
 
     private Handler mHandler = new Handler();
 
+    // moves proxy callbacks off the proxy's threads so a slow handler can't stall the RPC stream
+    private final EventDispatcher dispatcher = new EventDispatcher();
+    // HMI status, proxy state and hash changes, in the order SYNC sent them
+    private final EventDispatcher.Lane eventLane = dispatcher.addLane("events", 64, 1);
+    // commands and lock screen changes, in order
+    private final EventDispatcher.Lane uiLane = dispatcher.addLane("ui", 32, 1);
+    // audio pass-through chunks and the response that ends the recording, in order
+    private final EventDispatcher.Lane audioLane = dispatcher.addLane("audio", 256, 1);
+    // responses to independent requests
+    private final EventDispatcher.Lane responseLane = dispatcher.addLane("responses", 128, 4);
+    // vehicle data notifications, in order
+    private final EventDispatcher.Lane vehicleLane = dispatcher.addLane("vehicle", 64, 1);
+
+    // vehicle signals for context-aware queries, only changes that matter reach consumers
+    private final VehicleDataEngine vehicleData = new VehicleDataEngine(rpcClient, registrationCache,
+            new VehicleDataSubscriptions()
+                    .add(VehicleSignal.SPEED, 1000, 1)
+                    .add(VehicleSignal.FUEL_LEVEL, 10000, 1)
+                    .add(VehicleSignal.EXTERNAL_TEMPERATURE, 30000, 0.5)
+                    .add(VehicleSignal.PRNDL, 0, 0)
+                    .addGps(1000, 0.0001),
+            // held back changes are flushed on the lane the notifications are handled on
+            new LaneTaskScheduler(dispatcher, vehicleLane, new HandlerTaskScheduler(mHandler)));
+    // batched DTC and DID reads, with recent results cached
+    private final DiagnosticScanner diagnostics = new DiagnosticScanner(rpcClient, new HandlerTaskScheduler(mHandler));
+    // the app's icon and artwork on the head unit, only missing or changed files are sent
+    private static final String APP_ICON = "ic_launcher.png";
+    private FileUploadManager files;
+    // trip history of the vehicle data for diagnostics
+    private static final String TRIPS_DIR = "trips";
+    private TripRecorder tripRecorder;
+
+    // paces proxy resets after the connection to SYNC is lost
+    private final ReconnectScheduler reconnectScheduler = new ReconnectScheduler(
+            new HandlerTaskScheduler(mHandler), new Runnable() {
+        @Override
+        public void run() {
+            reset();
+        }
+    });
+    // turns text updates into as few Show RPCs as possible
+    private final DisplayCoalescer display = new DisplayCoalescer(rpcClient, new HandlerTaskScheduler(mHandler));
+    // speaks one prompt at a time, dropping prompts that would play late
+    private final SpeechQueue speech = new SpeechQueue(rpcClient, new HandlerTaskScheduler(mHandler));
+    private static final TtsPrompt APT_PROMPT = TtsPrompt.intern("Initial Prompt");
+    private static final TtsPrompt PLAYBACK_PROMPT = TtsPrompt.intern("playing back what you just said:");
+
+    // captures audio pass-through, to the WAV file unless configured otherwise, and
+    // ends it as soon as the user stops talking
+    private final AudioPassThruHandler audioPassThru = new AudioPassThruHandler(dispatcher, audioLane,
+            APT_SAMPLE_RATE, new AudioPassThruHandler.Listener() {
+        @Override
+        public void onEndOfUtterance(VoiceActivityDetector.State state, int frames) {
+            AppLog.i("Ending audio pass-through: {} after {} frames", state, frames);
+            sendRequest(new EndAudioPassThru(), EndAudioPassThruResponse.class);
+        }
+    });
+    // traces the connection until HMI_FULL and greets the user
+    private final HmiStatusHandler hmiStatus = new HmiStatusHandler(dispatcher, eventLane, tracer,
+            reconnectScheduler, display, new HmiStatusHandler.Listener() {
+        @Override
+        public void onHmiLevel(HMILevel hmiLevel) {
+            state.setHmiLevel(hmiLevel);
+        }
+
+        @Override
+        public void onActivated(String timeline) {
+            connectionsActivated.increment();
+            AppLog.i(timeline);
+        }
+
+        @Override
+        public void onFirstRun() {
+            // send addcommands
+            // subscribe to buttons
+            setupApp();
+        }
+    });
+    // completes requests from the response callbacks
+    private final ResponseDispatcher responses = new ResponseDispatcher(dispatcher, responseLane, rpcClient);
+
     @Override
     public void onCreate() {
         super.onCreate();
-        instance = this;
+        state.setService(this);
+        rpcClient.setMetrics(metrics.getRpcMetrics());
+        for (EventDispatcher.Lane lane : dispatcher.getLanes()) {
+            metrics.register("lane." + lane.getName() + ".wait", lane.getWaitTimes());
+        }
+        fileCapture = new AudioCaptureWriter(audioPassThruOutputFile(WAV), APT_SAMPLE_RATE, APT_BITS_PER_SAMPLE, 1);
+        audioPassThru.setSink(fileCapture);
+        resumptionStore = new ResumptionStore(getSharedPreferences(ResumptionStore.PREFERENCES, Context.MODE_PRIVATE));
+        files = new FileUploadManager(rpcClient,
+                getSharedPreferences(FileUploadManager.PREFERENCES, Context.MODE_PRIVATE),
+                new HandlerTaskScheduler(mHandler));
+        files.add(UploadAsset.fromResource(getResources(), R.drawable.ic_launcher, APP_ICON, FileType.GRAPHIC_PNG));
+        File trips = new File(getFilesDir(), TRIPS_DIR);
+        if (!trips.isDirectory() && !trips.mkdirs()) {
+            AppLog.w("Can't create {}", trips);
+        }
+        tripRecorder = new TripRecorder(trips);
+        vehicleData.addListener(tripRecorder);
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
+        tracer.end(ConnectionTracer.Phase.SERVICE_START);
         // Remove any previous stop service runnables that could be from a recent ACL Disconnect
         mHandler.removeCallbacks(mStopServiceRunnable);
 
-        // Start the proxy when the service starts
+        // Start the proxy when the service starts; a proxy kept in warm standby is reused
+        if (getProxy() != null) {
+            AppLog.i("Reusing warm proxy, {} cached registrations", registrationCache.size());
+        }
         if (intent != null) {
             mBtAdapter = BluetoothAdapter.getDefaultAdapter();
             if (mBtAdapter != null) {
@@ -121,63 +351,204 @@ public class AppLinkService extends Service implements IProxyListenerALM {
     @Override
     public void onDestroy() {
         disposeSyncProxy();
+        tripRecorder.stop();
         LockScreenManager.clearLockScreen();
-        instance = null;
+        reconnectScheduler.cancel();
+        display.reset();
+        mHandler.removeCallbacks(mResumptionTimeoutRunnable);
+        closeAudioPassThruStream();
+        closeAudioPassThruMediaPlayer();
+        SyncException destroyed = new SyncException("Service destroyed", SyncExceptionCause.SYNC_PROXY_DISPOSED);
+        sendQueue.shutdown(destroyed);
+        rpcClient.shutdown(destroyed);
+        dispatcher.shutdown();
+        state.clearService(this);
         super.onDestroy();
     }
 
     public static AppLinkService getInstance() {
-        return instance;
+        return AppLinkApplication.getState().get().getService();
     }
 
     public SyncProxyALM getProxy() {
-        return proxy;
+        return state.get().getProxy();
+    }
+
+    public AsyncRpcClient getRpcClient() {
+        return rpcClient;
+    }
+
+    /**
+     * Returns the queue every request goes through, e.g. for its depth, wait and drop counts.
+     */
+    public RpcSendQueue getSendQueue() {
+        return sendQueue;
+    }
+
+    /**
+     * Returns the dispatcher that runs the proxy callbacks, e.g. for its per-callback latencies.
+     */
+    public EventDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    public ReconnectScheduler getReconnectScheduler() {
+        return reconnectScheduler;
+    }
+
+    /**
+     * Selects where audio pass-through is captured: a WAV file (the default, which
+     * is played back after recording), a pooled in-memory buffer or a streaming consumer.
+     * Pass null to go back to the WAV file.
+     */
+    public void setAudioCaptureSink(AudioCaptureSink sink) {
+        audioPassThru.setSink(sink != null ? sink : fileCapture);
+    }
+
+    /**
+     * Returns the size of an in-memory buffer that holds the longest audio pass-through recording.
+     */
+    public static int getMaxAudioPassThruSize() {
+        return BufferPoolCaptureSink.bufferSizeFor(APT_MAX_DURATION, APT_SAMPLE_RATE, APT_BITS_PER_SAMPLE);
+    }
+
+    /**
+     * Sends the request through the RPC client and logs it if it cannot be sent.
+     * The returned future completes when the matching response callback arrives.
+     */
+    public <T extends RPCResponse> RpcFuture<T> sendRequest(RPCRequest request, Class<T> responseType) {
+        return sendRequest(request, responseType, AsyncRpcClient.DEFAULT_TIMEOUT_MS);
+    }
+
+    public <T extends RPCResponse> RpcFuture<T> sendRequest(final RPCRequest request, Class<T> responseType,
+                                                            long timeoutMs) {
+        RpcFuture<T> future = rpcClient.send(request, responseType, timeoutMs);
+        future.addCallback(new RpcCallback<T>() {
+            @Override
+            public void onResponse(T response) {
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                if (cause instanceof SupersededRequestException) {
+                    AppLog.d("Request {} superseded before it was sent", request.getFunctionName());
+                    return;
+                }
+                AppLog.e("Request {} failed", request.getFunctionName(), cause);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Shows two lines of text. Updates within one frame are sent as a single
+     * Show carrying only the fields that changed.
+     */
+    public void show(String mainField1, String mainField2, TextAlignment alignment) {
+        display.update(mainField1, mainField2, alignment);
+    }
+
+    /**
+     * Speaks the text once the prompts queued before it are done.
+     */
+    public void speak(String ttsText) {
+        speech.speak(TtsPrompt.of(ttsText));
+    }
+
+    /**
+     * Returns the speech queue, for prompts with a priority, a tag or a callback.
+     */
+    public SpeechQueue getSpeech() {
+        return speech;
     }
 
     /**
-     * Queue's a runnable that stops the service after a small delay,
-     * unless the proxy manages to reconnects to SYNC.
+     * Queues a runnable that stops the service once the warm-standby budget runs out,
+     * unless the proxy manages to reconnect to SYNC. Until then the service and proxy
+     * stay alive so a short disconnect (tunnel, phone call handoff) reconnects without
+     * a cold start.
      */
     public void stopService() {
+        long delay = warmStandbyBudget > 0 ? warmStandbyBudget : STOP_SERVICE_DELAY;
         mHandler.removeCallbacks(mStopServiceRunnable);
-        mHandler.postDelayed(mStopServiceRunnable, STOP_SERVICE_DELAY);
+        mHandler.postDelayed(mStopServiceRunnable, delay);
+    }
+
+    /**
+     * Sets how long the service and proxy stay alive after ACL_DISCONNECT,
+     * 0 to stop them almost immediately.
+     */
+    public void setWarmStandbyBudget(long budgetMs) {
+        warmStandbyBudget = budgetMs;
+    }
+
+    public long getWarmStandbyBudget() {
+        return warmStandbyBudget;
     }
 
     public void startProxy() {
-        if (proxy == null) {
+        if (getProxy() == null) {
+            tracer.begin(ConnectionTracer.Phase.PROXY_START);
+            SyncProxyALM proxy = null;
             try {
-                proxy = new SyncProxyALM(this, "Google Now", true, "438316430");
-            } catch (SyncException e) {
-                e.printStackTrace();
-                // error creating proxy, returned proxy = null
-                if (proxy == null) {
-                    stopSelf();
+                String hashId = resumptionStore.getHashId(registrationSnapshot());
+                resumptionRequested = hashId != null;
+                hashChanged = false;
+                tracer.begin(ConnectionTracer.Phase.PROXY_CONSTRUCTION);
+                if (hashId != null) {
+                    AppLog.i("Registering with stored hash ID {}", hashId);
+                    proxy = new SyncProxyALM(this, "Google Now", true, Language.EN_US, Language.EN_US,
+                            "438316430", hashId);
+                } else {
+                    proxy = new SyncProxyALM(this, "Google Now", true, "438316430");
                 }
+                tracer.end(ConnectionTracer.Phase.PROXY_CONSTRUCTION);
+                tracer.begin(ConnectionTracer.Phase.REGISTRATION);
+            } catch (SyncException e) {
+                AppLog.e("Can't start the proxy", e);
+            }
+            tracer.end(ConnectionTracer.Phase.PROXY_START);
+            // error creating proxy, returned proxy = null
+            if (proxy == null) {
+                stopSelf();
+            } else if (!state.compareAndSetProxy(null, proxy)) {
+                // another thread started one first
+                dispose(proxy);
             }
         }
     }
 
     public void disposeSyncProxy() {
-        if (proxy != null) {
-            try {
-                proxy.dispose();
-            } catch (SyncException e) {
-                e.printStackTrace();
-            }
-            proxy = null;
+        SyncProxyALM proxy = getProxy();
+        // only the thread that takes the proxy out of the state disposes it
+        if (proxy != null && state.compareAndSetProxy(proxy, null)) {
+            dispose(proxy);
+            // a new proxy registers from scratch
+            registrationCache.clear();
             LockScreenManager.clearLockScreen();
         }
     }
 
+    private static void dispose(SyncProxyALM proxy) {
+        try {
+            proxy.dispose();
+        } catch (SyncException e) {
+            AppLog.w("Can't dispose the proxy", e);
+        }
+    }
+
     public void reset() {
+        SyncProxyALM proxy = getProxy();
         if (proxy != null) {
+            hashChanged = false;
+            proxyResets.increment();
             try {
                 proxy.resetProxy();
             } catch (SyncException e1) {
-                e1.printStackTrace();
+                AppLog.e("Can't reset the proxy", e1);
                 //something goes wrong, & the proxy returns as null, stop the service.
                 // do not want a running service with a null proxy
-                if (proxy == null) {
+                if (getProxy() == null) {
                     stopSelf();
                 }
             }
@@ -188,114 +559,206 @@ public class AppLinkService extends Service implements IProxyListenerALM {
 
     public void subButtons() {
         /*try {
-            proxy.subscribeButton(ButtonName.OK, autoIncCorrId++);
-	        proxy.subscribeButton(ButtonName.SEEKLEFT, autoIncCorrId++);
-			proxy.subscribeButton(ButtonName.SEEKRIGHT, autoIncCorrId++);
-			proxy.subscribeButton(ButtonName.TUNEUP, autoIncCorrId++);
-			proxy.subscribeButton(ButtonName.TUNEDOWN, autoIncCorrId++);
-			proxy.subscribeButton(ButtonName.PRESET_1, autoIncCorrId++);
-			proxy.subscribeButton(ButtonName.PRESET_2, autoIncCorrId++);
-			proxy.subscribeButton(ButtonName.PRESET_3, autoIncCorrId++);
-			proxy.subscribeButton(ButtonName.PRESET_4, autoIncCorrId++);
-			proxy.subscribeButton(ButtonName.PRESET_5, autoIncCorrId++);
-			proxy.subscribeButton(ButtonName.PRESET_6, autoIncCorrId++);
-			proxy.subscribeButton(ButtonName.PRESET_7, autoIncCorrId++);
-			proxy.subscribeButton(ButtonName.PRESET_8, autoIncCorrId++);
-			proxy.subscribeButton(ButtonName.PRESET_9, autoIncCorrId++);
-			proxy.subscribeButton(ButtonName.PRESET_0, autoIncCorrId++);
+            proxy.subscribeButton(ButtonName.OK, rpcClient.nextCorrelationId());
+	        proxy.subscribeButton(ButtonName.SEEKLEFT, rpcClient.nextCorrelationId());
+			proxy.subscribeButton(ButtonName.SEEKRIGHT, rpcClient.nextCorrelationId());
+			proxy.subscribeButton(ButtonName.TUNEUP, rpcClient.nextCorrelationId());
+			proxy.subscribeButton(ButtonName.TUNEDOWN, rpcClient.nextCorrelationId());
+			proxy.subscribeButton(ButtonName.PRESET_1, rpcClient.nextCorrelationId());
+			proxy.subscribeButton(ButtonName.PRESET_2, rpcClient.nextCorrelationId());
+			proxy.subscribeButton(ButtonName.PRESET_3, rpcClient.nextCorrelationId());
+			proxy.subscribeButton(ButtonName.PRESET_4, rpcClient.nextCorrelationId());
+			proxy.subscribeButton(ButtonName.PRESET_5, rpcClient.nextCorrelationId());
+			proxy.subscribeButton(ButtonName.PRESET_6, rpcClient.nextCorrelationId());
+			proxy.subscribeButton(ButtonName.PRESET_7, rpcClient.nextCorrelationId());
+			proxy.subscribeButton(ButtonName.PRESET_8, rpcClient.nextCorrelationId());
+			proxy.subscribeButton(ButtonName.PRESET_9, rpcClient.nextCorrelationId());
+			proxy.subscribeButton(ButtonName.PRESET_0, rpcClient.nextCorrelationId());
 		} catch (SyncException e) {}*/
     }
 
     @Override
-    public void onProxyClosed(String info, Exception e, SyncDisconnectedReason reason) {
-        LockScreenManager.clearLockScreen();
+    public void onProxyClosed(final String info, final Exception e, final SyncDisconnectedReason reason) {
+        dispatcher.dispatch(eventLane, "ProxyClosed", new Runnable() {
+            @Override
+            public void run() {
+                handleProxyClosed(info, e, reason);
+            }
+        });
+    }
 
-        if ((((SyncException) e).getSyncExceptionCause() != SyncExceptionCause.SYNC_PROXY_CYCLED)) {
-            if (((SyncException) e).getSyncExceptionCause() != SyncExceptionCause.BLUETOOTH_DISABLED) {
-                Log.v(AppLinkApplication.TAG, "reset proxy in onproxy closed");
-                reset();
+    private void handleProxyClosed(String info, Exception e, SyncDisconnectedReason reason) {
+        connectionsLost.increment();
+        LockScreenManager.clearLockScreen();
+        state.setHmiLevel(HMILevel.HMI_NONE);
+        // nothing queued for the old session may reach the next one
+        speech.reset(e);
+        sendQueue.clear(e);
+        rpcClient.failAll(e);
+        display.reset();
+        diagnostics.invalidate();
+        files.reset();
+        choiceSets.reset();
+        dispatcher.dispatch(vehicleLane, "VehicleDataReset", new Runnable() {
+            @Override
+            public void run() {
+                vehicleData.reset();
             }
+        });
+        AppLog.v("send queue: {}", sendQueue);
+        AppLog.v("{}", dispatcher);
+
+        // the reconnect scheduler decides from the cause whether and when to reset the proxy
+        SyncExceptionCause cause = e instanceof SyncException ? ((SyncException) e).getSyncExceptionCause() : null;
+        AppLog.v("proxy closed: {}, {}", cause, reconnectScheduler);
+        reconnectScheduler.onConnectionLost(cause);
+        if (reason == SyncDisconnectedReason.IGNITION_OFF) {
+            tripRecorder.stop();
         }
     }
 
     @Override
     public void onOnHMIStatus(OnHMIStatus notification) {
-        switch (notification.getSystemContext()) {
-            case SYSCTXT_MAIN:
-                break;
-            case SYSCTXT_VRSESSION:
-                break;
-            case SYSCTXT_MENU:
-                break;
-            default:
-                return;
+        hmiStatus.onOnHMIStatus(notification);
+    }
+
+    /**
+     * Sets the app up on the first HMI_FULL. If the proxy registered with a stored
+     * hash ID, SYNC restores the menu and subscriptions itself and confirms it with
+     * OnHashChange; only if that does not arrive in time is everything sent again.
+     */
+    private void setupApp() {
+        if (!tripRecorder.isRecording()) {
+            tripRecorder.start(SystemClock.elapsedRealtime());
         }
+        syncFiles();
+        choiceSets.preload();
+        if (!resumptionRequested) {
+            registerApp();
+            return;
+        }
+        setupPending.set(true);
+        if (hashChanged) {
+            onResumed();
+        } else {
+            mHandler.removeCallbacks(mResumptionTimeoutRunnable);
+            mHandler.postDelayed(mResumptionTimeoutRunnable, RESUMPTION_GRACE);
+        }
+    }
 
-        switch (notification.getAudioStreamingState()) {
-            case AUDIBLE:
-                // play audio if applicable
-                break;
-            case NOT_AUDIBLE:
-                // pause/stop/mute audio if applicable
-                break;
-            default:
-                return;
+    private void onResumed() {
+        if (setupPending.compareAndSet(true, false)) {
+            mHandler.removeCallbacks(mResumptionTimeoutRunnable);
+            AppLog.i("Resumed with stored hash ID, skipping menu setup");
+            refreshVehicleData();
         }
+    }
 
-        switch (notification.getHmiLevel()) {
-            case HMI_FULL:
-                Log.i(AppLinkApplication.TAG, "HMI_FULL");
-                if (notification.getFirstRun()) {
-                    // setup app on SYNC
-                    // send welcome message if applicable
-                    try {
-                        proxy.show("Welcome to", "Google Now Link", TextAlignment.CENTERED, autoIncCorrId++);
-                    } catch (SyncException e) {
-                        DebugTool.logError("Failed to send Show", e);
-                    }
-                    // send addcommands
-                    // subscribe to buttons
-                    subButtons();
-                    addCommands();
-                } else {
-                    try {
-                        proxy.show("SyncProxy is", "Alive", TextAlignment.CENTERED, autoIncCorrId++);
-                    } catch (SyncException e) {
-                        DebugTool.logError("Failed to send Show", e);
-                    }
+    /**
+     * Uploads the app's files that the head unit is missing, then sets the app icon.
+     */
+    private void syncFiles() {
+        files.sync(new FileUploadManager.Listener() {
+            @Override
+            public void onFilesSynced(int uploaded, int upToDate, int failures, long bytesSent, long elapsedMs) {
+                if (files.isOnHeadUnit(APP_ICON)) {
+                    SetAppIcon setAppIcon = new SetAppIcon();
+                    setAppIcon.setSyncFileName(APP_ICON);
+                    rpcClient.send(setAppIcon, SetAppIconResponse.class);
                 }
-                break;
-            case HMI_LIMITED:
-                Log.i(AppLinkApplication.TAG, "HMI_LIMITED");
-                break;
-            case HMI_BACKGROUND:
-                Log.i(AppLinkApplication.TAG, "HMI_BACKGROUND");
-                break;
-            case HMI_NONE:
-                Log.i(AppLinkApplication.TAG, "HMI_NONE");
-                break;
-            default:
-                return;
+            }
+        });
+    }
+
+    /**
+     * Sends the app's button subscriptions and menu, replaying them from the
+     * registration cache after a warm reconnect.
+     */
+    private void registerApp() {
+        subButtons();
+        if (registrationCache.isEmpty()) {
+            addCommands();
+            vehicleData.subscribe();
+        } else {
+            replayRegistration();
         }
+        refreshVehicleData();
+    }
+
+    /**
+     * Reads the current vehicle data, since notifications only report changes.
+     */
+    private void refreshVehicleData() {
+        vehicleData.refresh().addCallback(new RpcCallback<GetVehicleDataResponse>() {
+            @Override
+            public void onResponse(final GetVehicleDataResponse response) {
+                dispatcher.dispatch(vehicleLane, "GetVehicleDataResponse", new Runnable() {
+                    @Override
+                    public void run() {
+                        vehicleData.onGetVehicleDataResponse(response);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                AppLog.w("GetVehicleData failed", cause);
+            }
+        });
+    }
+
+    /**
+     * Returns the vehicle data engine, for consumers of speed, GPS, fuel and the like.
+     */
+    public VehicleDataEngine getVehicleData() {
+        return vehicleData;
+    }
+
+    /**
+     * Returns the diagnostic scanner, for reading trouble codes and DIDs of the vehicle's ECUs.
+     */
+    public DiagnosticScanner getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * Returns the choice set manager, for interactions over the app's choice sets.
+     */
+    public ChoiceSetManager getChoiceSets() {
+        return choiceSets;
+    }
+
+    /**
+     * Describes what the app registers on SYNC, stored with the hash ID.
+     */
+    private String registrationSnapshot() {
+        return ResumptionStore.snapshot(menu, files.getUploadedFileNames());
     }
 
     /**
      * Add commands (should be called when the first HMI_FULL is detected).
+     * The whole menu is sent as one pipelined batch.
      */
     public void addCommands() {
-        // Create and build an AddSubMenu RPC
-        AddSubMenu submenu = new AddSubMenu();
-        submenu.setMenuName("SubMenu 1");
-        submenu.setPosition(0);
-        submenu.setMenuID(SUBMENU_1);
-        submenu.setCorrelationID(autoIncCorrId++);
-        // Send
-        try {
-            proxy.sendRPCRequest(submenu);
-        } catch (SyncException e) {
-            Log.i(TAG, "sync exception" + e.getMessage() + e.getSyncExceptionCause());
-            e.printStackTrace();
-        }
+        menuRegistrar.register(menu, new MenuRegistrar.Listener() {
+            @Override
+            public void onMenuRegistered(MenuModel registered, int failures, long elapsedMs) {
+                AppLog.i("Menu registered in {} ms, {} failures", elapsedMs, failures);
+            }
+        });
+    }
+
+    /**
+     * Sends everything cached from the previous registration in one pipelined round
+     * (used after a warm reconnect instead of building the app's setup again).
+     */
+    private void replayRegistration() {
+        registrationCache.replay(rpcClient, new RegistrationCache.Listener() {
+            @Override
+            public void onReplayed(int replayed, int failures, long elapsedMs) {
+                AppLog.i("Replayed {} registrations in {} ms, {} failures", replayed, elapsedMs, failures);
+            }
+        });
     }
 
     /**
@@ -303,38 +766,7 @@ public class AppLinkService extends Service implements IProxyListenerALM {
      */
     @Override
     public void onAddSubMenuResponse(AddSubMenuResponse response) {
-        boolean bSuccess = response.getSuccess();
-
-        // Create and build an AddCommand RPC
-        AddCommand msg = new AddCommand();
-        msg.setCmdID(COMMAND_1);
-        String menuName = "Command 1";
-        MenuParams menuParams = new MenuParams();
-        menuParams.setMenuName(menuName);
-
-        // Set the parent ID to the submenu that was added only if the response was SUCCESS
-        if (bSuccess) {
-            menuParams.setParentID(SUBMENU_1);
-        }
-        msg.setMenuParams(menuParams);
-
-        // Build voice recognition commands
-        Vector<String> vrCommands = new Vector<String>();
-        vrCommands.add("Okay Google");
-        vrCommands.add("Ok Google");
-        msg.setVrCommands(vrCommands);
-
-        // Set the correlation ID
-        int correlationId = autoIncCorrId++;
-        msg.setCorrelationID(correlationId);
-
-        // Send to proxy
-        try {
-            proxy.sendRPCRequest(msg);
-        } catch (SyncException e) {
-            Log.i(TAG, "sync exception" + e.getMessage() + e.getSyncExceptionCause());
-            e.printStackTrace();
-        }
+        responses.onAddSubMenuResponse(response);
     }
 
     /**
@@ -343,19 +775,7 @@ public class AppLinkService extends Service implements IProxyListenerALM {
      */
     @Override
     public void onAddCommandResponse(AddCommandResponse response) {
-        boolean bSuccess = response.getSuccess();
-
-        if (!bSuccess) {
-            // Handle error
-        }
-
-        // Correlation ID used to associate a response with a request
-        int correlationID = response.getCorrelationID();
-        Result resultCode = response.getResultCode();
-
-        if (resultCode != Result.SUCCESS) {
-            // Handle error
-        }
+        responses.onAddCommandResponse(response);
     }
 
     @Override
@@ -369,15 +789,24 @@ public class AppLinkService extends Service implements IProxyListenerALM {
 
     @Override
     public void onGenericResponse(GenericResponse response) {
-        // TODO Auto-generated method stub
+        responses.dispatch(response);
     }
 
     @Override
-    public void onOnCommand(OnCommand notification) {
+    public void onOnCommand(final OnCommand notification) {
+        dispatcher.dispatch(uiLane, "OnCommand", new Runnable() {
+            @Override
+            public void run() {
+                handleOnCommand(notification);
+            }
+        });
+    }
+
+    private void handleOnCommand(OnCommand notification) {
         // Get identifier for the command
         int cmdID = notification.getCmdID();
 
-        Log.d(TAG, "S onOnCommand: " + cmdID);
+        AppLog.d("S onOnCommand: {}", cmdID);
 
         // Determine which command was selected
         if (cmdID == COMMAND_1) {
@@ -390,58 +819,64 @@ public class AppLinkService extends Service implements IProxyListenerALM {
     @Override
     public void onCreateInteractionChoiceSetResponse(
             CreateInteractionChoiceSetResponse response) {
-        // TODO Auto-generated method stub
+        // completes the choice set manager's request
+        responses.dispatch(response);
     }
 
     @Override
     public void onAlertResponse(AlertResponse response) {
-        // TODO Auto-generated method stub
+        responses.dispatch(response);
     }
 
     @Override
     public void onDeleteCommandResponse(DeleteCommandResponse response) {
-        // TODO Auto-generated method stub
+        responses.dispatch(response);
     }
 
     @Override
     public void onDeleteInteractionChoiceSetResponse(
             DeleteInteractionChoiceSetResponse response) {
-        // TODO Auto-generated method stub
+        // completes the choice set manager's request
+        responses.dispatch(response);
     }
 
     @Override
     public void onDeleteSubMenuResponse(DeleteSubMenuResponse response) {
-        // TODO Auto-generated method stub
+        responses.dispatch(response);
     }
 
     @Override
     public void onPerformInteractionResponse(PerformInteractionResponse response) {
-        // TODO Auto-generated method stub
+        // delivered to the callback given to ChoiceSetManager.performInteraction
+        responses.dispatch(response);
     }
 
     @Override
     public void onResetGlobalPropertiesResponse(
             ResetGlobalPropertiesResponse response) {
-        // TODO Auto-generated method stub
+        responses.dispatch(response);
     }
 
     @Override
     public void onSetGlobalPropertiesResponse(SetGlobalPropertiesResponse response) {
+        responses.dispatch(response);
     }
 
     @Override
     public void onSetMediaClockTimerResponse(SetMediaClockTimerResponse response) {
-        // TODO Auto-generated method stub
+        responses.dispatch(response);
     }
 
     @Override
     public void onShowResponse(ShowResponse response) {
-        // TODO Auto-generated method stub
+        // confirms the display state the coalescer sent
+        responses.dispatch(response);
     }
 
     @Override
     public void onSpeakResponse(SpeakResponse response) {
-        // TODO Auto-generated method stub
+        // lets the speech queue send the next prompt
+        responses.dispatch(response);
     }
 
     @Override
@@ -457,17 +892,18 @@ public class AppLinkService extends Service implements IProxyListenerALM {
 
     @Override
     public void onSubscribeButtonResponse(SubscribeButtonResponse response) {
-        // TODO Auto-generated method stub
+        responses.dispatch(response);
     }
 
     @Override
     public void onUnsubscribeButtonResponse(UnsubscribeButtonResponse response) {
-        // TODO Auto-generated method stub
+        responses.dispatch(response);
     }
 
     @Override
     public void onOnPermissionsChange(OnPermissionsChange notification) {
-        // TODO Auto-generated method stub
+        // SYNC sends the app's permissions right after it registered
+        hmiStatus.onRegistered();
     }
 
     @Override
@@ -480,92 +916,111 @@ public class AppLinkService extends Service implements IProxyListenerALM {
         return null;
     }
 
+    /**
+     * Dumps the metrics and the callback lanes, for
+     * {@code adb shell dumpsys activity service AppLinkService}. With the
+     * argument {@code binary} a binary snapshot is also written to the app's
+     * files, see {@link MetricsRegistry#writeBinary}.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        metrics.writeText(writer);
+        writer.println(dispatcher);
+        writer.println(sendQueue);
+        writer.println(choiceSets);
+        writer.println(speech);
+        if (args != null && args.length > 0 && "binary".equals(args[0])) {
+            File file = new File(getFilesDir(), METRICS_FILE);
+            try {
+                metrics.writeTo(file);
+                writer.println("Wrote " + file);
+            } catch (IOException e) {
+                writer.println("Can't write " + file + ": " + e);
+            }
+        }
+    }
+
 
     @Override
     public void onSubscribeVehicleDataResponse(SubscribeVehicleDataResponse response) {
-        // TODO Auto-generated method stub
-
+        responses.dispatch(response);
     }
 
     @Override
     public void onUnsubscribeVehicleDataResponse(
             UnsubscribeVehicleDataResponse response) {
-        // TODO Auto-generated method stub
-
+        responses.dispatch(response);
     }
 
     @Override
     public void onGetVehicleDataResponse(GetVehicleDataResponse response) {
-        // TODO Auto-generated method stub
-
+        responses.dispatch(response);
     }
 
     @Override
     public void onReadDIDResponse(ReadDIDResponse response) {
-        // TODO Auto-generated method stub
-
+        // completes the DiagnosticScanner's request future
+        responses.dispatch(response);
     }
 
     @Override
     public void onGetDTCsResponse(GetDTCsResponse response) {
-        // TODO Auto-generated method stub
-
+        // completes the DiagnosticScanner's request future
+        responses.dispatch(response);
     }
 
     @Override
-    public void onOnVehicleData(OnVehicleData notification) {
-        // TODO Auto-generated method stub
-
+    public void onOnVehicleData(final OnVehicleData notification) {
+        dispatcher.dispatch(vehicleLane, "OnVehicleData", new Runnable() {
+            @Override
+            public void run() {
+                vehicleData.onVehicleData(notification);
+            }
+        });
     }
 
 
     @Override
     public void onEndAudioPassThruResponse(EndAudioPassThruResponse response) {
-        // TODO Auto-generated method stub
-
+        responses.dispatch(response);
     }
 
 
     @Override
     public void onPutFileResponse(PutFileResponse response) {
-        // TODO Auto-generated method stub
-
+        // completes the FileUploadManager's chunk future
+        responses.dispatch(response);
     }
 
     @Override
     public void onDeleteFileResponse(DeleteFileResponse response) {
-        // TODO Auto-generated method stub
-
+        responses.dispatch(response);
     }
 
     @Override
     public void onListFilesResponse(ListFilesResponse response) {
-        // TODO Auto-generated method stub
-
+        // completes the FileUploadManager's ListFiles future
+        responses.dispatch(response);
     }
 
     @Override
     public void onSetAppIconResponse(SetAppIconResponse response) {
-        // TODO Auto-generated method stub
-
+        responses.dispatch(response);
     }
 
     @Override
     public void onScrollableMessageResponse(ScrollableMessageResponse response) {
-        // TODO Auto-generated method stub
-
+        responses.dispatch(response);
     }
 
     @Override
     public void onChangeRegistrationResponse(ChangeRegistrationResponse response) {
-        // TODO Auto-generated method stub
-
+        responses.dispatch(response);
     }
 
     @Override
     public void onSetDisplayLayoutResponse(SetDisplayLayoutResponse response) {
-        // TODO Auto-generated method stub
-
+        responses.dispatch(response);
     }
 
     @Override
@@ -576,20 +1031,35 @@ public class AppLinkService extends Service implements IProxyListenerALM {
 
     @Override
     public void onSliderResponse(SliderResponse response) {
-        // TODO Auto-generated method stub
-
+        responses.dispatch(response);
     }
 
     @Override
     public void onDiagnosticMessageResponse(DiagnosticMessageResponse arg0) {
-        // TODO Auto-generated method stub
-
+        responses.dispatch(arg0);
     }
 
     @Override
-    public void onOnHashChange(OnHashChange arg0) {
-        // TODO Auto-generated method stub
+    public void onOnHashChange(final OnHashChange notification) {
+        dispatcher.dispatch(eventLane, "OnHashChange", new Runnable() {
+            @Override
+            public void run() {
+                handleOnHashChange(notification);
+            }
+        });
+    }
 
+    private void handleOnHashChange(OnHashChange notification) {
+        String hashId = notification.getHashID();
+        if (hashId == null) {
+            return;
+        }
+        resumptionStore.save(hashId, registrationSnapshot());
+        hashChanged = true;
+        // SYNC restored the app's data if the first HMI_FULL is waiting for this
+        if (resumptionRequested) {
+            onResumed();
+        }
     }
 
     @Override
@@ -612,130 +1082,129 @@ public class AppLinkService extends Service implements IProxyListenerALM {
 
     @Override
     public void onSystemRequestResponse(SystemRequestResponse arg0) {
-        // TODO Auto-generated method stub
-
+        responses.dispatch(arg0);
     }
 
     @Override
-    public void onOnLockScreenNotification(OnLockScreenStatus notification) {
-        LockScreenStatus displayLockScreen = notification.getShowLockScreen();
-        // Show lockscreen in both REQUIRED and OPTIONAL
-        //if (displayLockScreen == LockScreenStatus.REQUIRED || displayLockScreen == LockScreenStatus.OPTIONAL) {
-        //Show lockscreen in only REQUIRED
-        if (displayLockScreen == LockScreenStatus.REQUIRED) {
-            LockScreenManager.showLockScreen();
-        } else {
-            LockScreenManager.clearLockScreen();
-        }
+    public void onOnLockScreenNotification(final OnLockScreenStatus notification) {
+        dispatcher.dispatch(uiLane, "OnLockScreenNotification", new Runnable() {
+            @Override
+            public void run() {
+                handleOnLockScreenNotification(notification);
+            }
+        });
+    }
+
+    private void handleOnLockScreenNotification(OnLockScreenStatus notification) {
+        // Show lockscreen in only REQUIRED; OFF and OPTIONAL clear it once they
+        // held for a moment, so flapping states don't make it blink
+        LockScreenManager.onLockScreenStatus(notification.getShowLockScreen());
     }
 
     //Build Request and send to proxy object:
     public void startAPT() {
-        int corrId = autoIncCorrId++;
         PerformAudioPassThru msg = new PerformAudioPassThru();
-        msg.setCorrelationID(corrId);
-        Vector<TTSChunk> initChunks = TTSChunkFactory
-                .createSimpleTTSChunks("Initial Prompt");
-        msg.setInitialPrompt(initChunks);
+        msg.setInitialPrompt(APT_PROMPT.getChunks());
         msg.setAudioPassThruDisplayText1("DisplayText1");
         msg.setAudioPassThruDisplayText2("DisplayText2");
         msg.setSamplingRate(SamplingRate._16KHZ);
-        msg.setMaxDuration(10000); //in milliseconds
+        msg.setMaxDuration(APT_MAX_DURATION); //in milliseconds
         msg.setBitsPerSample(BitsPerSample._16_BIT);
         msg.setAudioType(AudioType.PCM);
 
-        try {
-            proxy.sendRPCRequest(msg);
-        } catch (SyncException e) {
-            Log.i(TAG, "sync exception" + e.getMessage() + e.getSyncExceptionCause());
-            e.printStackTrace();
-        }
+        // open the capture file now, not on the first audio chunk
+        audioPassThru.start();
+        sendRequest(msg, PerformAudioPassThruResponse.class, APT_MAX_DURATION + APT_RESPONSE_MARGIN);
     }
 
     //Listen for callbacks inside of the service
     @Override
     public void onOnAudioPassThru(OnAudioPassThru notification) {
-        byte[] aptData = notification.getAPTData();
+        audioPassThru.onOnAudioPassThru(notification);
+    }
 
-        if (aptData == null) {
-            Log.w(TAG, "onAudioPassThru aptData is null");
-            //addMessage("ononAudioPassThru aptData is null");
-            return;
-        } else {
-            APTtoDevice(aptData);
-            /*Context context = this;
-            AudioManager mAudioManager =
-                    (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
-            // Switch to headset
-            mAudioManager.setMode(AudioManager.MODE_IN_CALL);
-            mAudioManager.startBluetoothSco();*/
+    /**
+     * Hands an audio chunk to the capture sink. None of the sinks block the
+     * proxy's callback thread on disk I/O.
+     */
+    public void APTtoDevice(byte[] aptData) {
+        audioPassThru.write(aptData);
+    }
 
-        }
+    private File audioPassThruOutputFile(String extension) {
+        return new File(getCacheDir(), AUDIO_PASS_THRU_FILE + extension);
     }
 
-    public void APTtoDevice(byte[] aptData) {
-        File outFile = audioPassThruOutputFile(PCM);
-        iByteCount = iByteCount + aptData.length;
+    private void closeAudioPassThruStream() {
+        audioPassThru.finish();
+    }
+
+    private void playAPTfile() {
+        closeAudioPassThruMediaPlayer();
+        MediaPlayer player = new MediaPlayer();
         try {
-            if (audioPassThruOutStream == null) {
-                audioPassThruOutStream = new BufferedOutputStream(
-                        new FileOutputStream(outFile, false));
-            }
-            audioPassThruOutStream.write(aptData);
-            Log.i(TAG, "audioPassThruOutStream.write(aptData)");
-            audioPassThruOutStream.flush();
-        } catch (FileNotFoundException e) {
-            Log.e(TAG, "Output file "
-                    + (outFile != null ? outFile.toString() : "'unknown'")
-                    + " can't be opened for writing", e);
-            e.printStackTrace();
+            player.setDataSource(audioPassThruOutputFile(WAV).getAbsolutePath());
+            player.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
+                @Override
+                public void onCompletion(MediaPlayer mp) {
+                    closeAudioPassThruMediaPlayer();
+                }
+            });
+            player.prepare();
+            player.start();
+            audioPassThruPlayer = player;
         } catch (IOException e) {
-            Log.e(TAG, "Can't write to output file", e);
-            e.printStackTrace();
-            addMessage("Can't write to output file");
-        } catch (Exception e) {
-            Log.e(TAG, "audio media player2", e);
-            e.printStackTrace();
+            AppLog.e("Can't play audio pass-through recording", e);
+            player.release();
         }
     }
 
-    @Override
-    public void onPerformAudioPassThruResponse(
-            PerformAudioPassThruResponse response) {
-        Log.d(TAG, "S onPerformAudioPassThruResponse" + response.getInfo()
-                + response.getSuccess());
-        try {
-            Log.d(TAG, "S onPerformAudioPassThruResponse: "
-                    + response.serializeJSON().toString());
-        } catch (JSONException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+    private void closeAudioPassThruMediaPlayer() {
+        MediaPlayer player = audioPassThruPlayer;
+        audioPassThruPlayer = null;
+        if (player != null) {
+            if (player.isPlaying()) {
+                player.stop();
+            }
+            player.release();
         }
+    }
+
+    @Override
+    public void onPerformAudioPassThruResponse(final PerformAudioPassThruResponse response) {
+        dispatcher.dispatch(audioLane, "PerformAudioPassThruResponse", new Runnable() {
+            @Override
+            public void run() {
+                handlePerformAudioPassThruResponse(response);
+            }
+        });
+    }
+
+    private void handlePerformAudioPassThruResponse(PerformAudioPassThruResponse response) {
+        rpcClient.onResponse(response);
+        AppLog.d("S onPerformAudioPassThruResponse {} {}", response.getInfo(), response.getSuccess());
+        // serialized on the log thread, and only when debug logging is on
+        AppLog.d("S onPerformAudioPassThruResponse: {}", response);
         Result result = response.getResultCode();
         closeAudioPassThruStream();
         closeAudioPassThruMediaPlayer();
 
         if (Result.SUCCESS != result) {
-            File outFile = audioPassThruOutputFile(PCM);
+            File outFile = audioPassThruOutputFile(WAV);
             if ((outFile != null) && outFile.exists()) {
                 if (!outFile.delete()) {
-                    Log.i(TAG, "Failed to delete output file", null);
+                    AppLog.i("Failed to delete output file");
                 }
             }
             if ((Result.RETRY == result)) {
-                Log.i(TAG, "retry result APT");
+                AppLog.i("retry result APT");
                 startAPT();
             }
         } else { //success
-            saveAsWav();
-            try {
-                audioPassThruDone = autoIncCorrId;
-                proxy.speak("playing back what you just said:", autoIncCorrId++);
-            } catch (SyncException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+            if (audioPassThru.getSink() == fileCapture) {
+                speech.speak(PLAYBACK_PROMPT);
+                playAPTfile();
             }
-            playAPTfile();
         }
     }
 
@@ -1,39 +1,63 @@
 package com.ford.googlenowlink.applink;
 
-import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
 
-import com.ford.googlenowlink.activity.LockScreenActivity;
+import com.ford.googlenowlink.applink.connection.HandlerTaskScheduler;
+import com.ford.googlenowlink.applink.lockscreen.LockScreenController;
+import com.ford.googlenowlink.applink.lockscreen.LockScreenOverlay;
+import com.ford.syncV4.proxy.rpc.enums.LockScreenStatus;
 
 /**
  * This class manages the lockscreen for the app.
+ * The lock screen is an overlay on the app's foreground activity, shown and
+ * hidden by a {@link LockScreenController}; whether it is up is published
+ * in the app state, so checking it takes no lock.
  */
 public class LockScreenManager {
-	// variable to contain the current state of the lockscreen
-	private static boolean lockScreenUp = false;
-	
-	public static synchronized void showLockScreen() {
-		// only show the lockscreen if main activity is currently on top
-		// else, wait until onResume() to show the lockscreen so it doesn't 
-		// pop-up while a user is using another app on the phone
-		if (AppLinkApplication.getCurrentActivity() != null) {
-			if (((AppLinkActivity) AppLinkApplication.getCurrentActivity()).isActivityonTop() == true) {
-				Intent i = new Intent(AppLinkApplication.getInstance(), LockScreenActivity.class);
-				i.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-				i.addFlags(Intent.FLAG_ACTIVITY_NO_USER_ACTION);
-				AppLinkApplication.getInstance().startActivity(i);
+	private static final Handler handler = new Handler(Looper.getMainLooper());
+	private static final LockScreenController controller = new LockScreenController(new HandlerTaskScheduler(handler));
+	private static final LockScreenOverlay overlay = new LockScreenOverlay(controller, handler);
+
+	static {
+		controller.setSurface(overlay);
+		controller.setListener(new LockScreenController.Listener() {
+			@Override
+			public void onLockChanged(boolean locked) {
+				AppLinkApplication.getState().setLockScreenUp(locked);
 			}
-		}
-		lockScreenUp = true;		
+		});
+	}
+
+	public static LockScreenController getController() {
+		return controller;
+	}
+
+	public static void onLockScreenStatus(LockScreenStatus status) {
+		controller.onStatus(status);
+	}
+
+	/**
+	 * Shows the lockscreen if it is up, or prepares it while connected to SYNC.
+	 * Called when an activity of the app comes to the foreground, so the
+	 * lockscreen doesn't pop up while the user is using another app on the phone.
+	 */
+	public static void onActivityResumed() {
+		controller.onSurfaceAvailable();
+	}
+
+	/**
+	 * Called on the main thread when an activity of the app is destroyed.
+	 */
+	public static void onActivityDestroyed(AppLinkActivity activity) {
+		overlay.detach(activity);
+	}
+
+	public static void clearLockScreen() {
+		controller.clear();
 	}
 
-	public static synchronized void clearLockScreen() {
-		if (LockScreenActivity.getInstance() != null) {  
-			LockScreenActivity.getInstance().exit();
-		}
-		lockScreenUp = false;
+	public static boolean getLockScreenStatus() {
+		return AppLinkApplication.getState().get().isLockScreenUp();
 	}
-	
-	public static synchronized boolean getLockScreenStatus() {
-		return lockScreenUp;
-	}	
 }
@@ -0,0 +1,26 @@
+package com.ford.googlenowlink.applink.audio;
+
+/**
+ * Destination for the audio pass-through chunks of one utterance at a time.
+ * {@link #write} is called on the proxy's callback thread for every
+ * OnAudioPassThru notification and must not block.
+ */
+public interface AudioCaptureSink {
+    /**
+     * Prepares for a new utterance, finishing any capture still in progress.
+     */
+    void start();
+
+    /**
+     * Accepts one chunk of 16-bit PCM audio.
+     * @return false if the chunk was dropped
+     */
+    boolean write(byte[] data);
+
+    /**
+     * Ends the current utterance and hands it to wherever this sink delivers audio.
+     */
+    void finish();
+
+    boolean isCapturing();
+}
@@ -0,0 +1,259 @@
+package com.ford.googlenowlink.applink.audio;
+
+import com.ford.googlenowlink.applink.log.AppLog;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streams audio pass-through chunks to a WAV file without blocking the proxy's
+ * callback thread. {@link #write} only copies the chunk into a preallocated
+ * {@link AudioRingBuffer}; a background thread drains it to disk in large
+ * blocks. If the writer falls behind, chunks that do not fit are dropped and
+ * counted rather than stalling the caller.
+ *
+ * The PCM data is written straight after a placeholder WAV header, which is
+ * patched in place with the final length when the capture finishes, so the
+ * file is playable as soon as {@link #finish} returns and no second pass over
+ * the audio is needed.
+ */
+public class AudioCaptureWriter implements AudioCaptureSink {
+    // ~4 s of 16 kHz/16-bit PCM
+    public static final int DEFAULT_BUFFER_SIZE = 128 * 1024;
+    // the writer is woken once this much audio is buffered
+    private static final int BLOCK_SIZE = 8 * 1024;
+    // otherwise it checks the buffer at this interval
+    private static final long IDLE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final int sampleRate;
+    private final int bitsPerSample;
+    private final int channels;
+    private final AudioRingBuffer ring;
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private final ByteBuffer blockBuffer = ByteBuffer.wrap(block);
+    private final ByteBuffer headerBuffer = ByteBuffer.allocate(WavHeader.SIZE);
+    private volatile Thread writerThread;
+    private volatile boolean finishing;
+    private final File file;
+
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicInteger chunksReceived = new AtomicInteger();
+    private final AtomicInteger chunksDropped = new AtomicInteger();
+    private final AtomicInteger highWatermark = new AtomicInteger();
+    private volatile IOException failure;
+
+    public AudioCaptureWriter(File file, int sampleRate, int bitsPerSample, int channels) {
+        this(file, sampleRate, bitsPerSample, channels, DEFAULT_BUFFER_SIZE);
+    }
+
+    public AudioCaptureWriter(File file, int sampleRate, int bitsPerSample, int channels, int bufferSize) {
+        this.file = file;
+        this.sampleRate = sampleRate;
+        this.bitsPerSample = bitsPerSample;
+        this.channels = channels;
+        ring = new AudioRingBuffer(bufferSize);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Starts a new capture into the file. Any capture in progress is finished first.
+     */
+    @Override
+    public synchronized void start() {
+        finish();
+        bytesReceived.set(0);
+        bytesWritten.set(0);
+        chunksReceived.set(0);
+        chunksDropped.set(0);
+        highWatermark.set(0);
+        failure = null;
+        finishing = false;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainLoop();
+            }
+        }, "AudioCaptureWriter");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        writerThread = thread;
+        thread.start();
+    }
+
+    @Override
+    public boolean isCapturing() {
+        return writerThread != null && !finishing;
+    }
+
+    /**
+     * Queues a chunk for writing. Never blocks; called from the proxy's callback thread.
+     * @return false if the chunk was dropped because the buffer is full, no capture is running
+     *         or the file can't be written
+     */
+    @Override
+    public boolean write(byte[] data) {
+        chunksReceived.incrementAndGet();
+        bytesReceived.addAndGet(data.length);
+        Thread thread = writerThread;
+        if (thread == null || finishing || failure != null || !ring.offer(data, 0, data.length)) {
+            chunksDropped.incrementAndGet();
+            return false;
+        }
+        int buffered = ring.size();
+        if (buffered > highWatermark.get()) {
+            highWatermark.set(buffered);
+        }
+        if (buffered >= BLOCK_SIZE) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    /**
+     * Flushes buffered audio, finalises the WAV header, closes the file and waits
+     * for the writer thread to stop.
+     */
+    @Override
+    public synchronized void finish() {
+        Thread thread = writerThread;
+        if (thread == null) {
+            return;
+        }
+        finishing = true;
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        writerThread = null;
+        if (AppLog.isLoggable(Log.INFO)) {
+            AppLog.i("Captured " + bytesWritten.get() + " of " + bytesReceived.get() + " bytes, "
+                    + chunksDropped.get() + " of " + chunksReceived.get() + " chunks dropped, peak buffer "
+                    + highWatermark.get() + "/" + ring.capacity());
+        }
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public int getChunksReceived() {
+        return chunksReceived.get();
+    }
+
+    public int getChunksDropped() {
+        return chunksDropped.get();
+    }
+
+    /**
+     * Returns the most audio that was waiting in the buffer at once during this capture.
+     * A value close to the capacity means the writer cannot keep up.
+     */
+    public int getHighWatermark() {
+        return highWatermark.get();
+    }
+
+    /**
+     * Returns the error that stopped the writer, or null.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    private void drainLoop() {
+        // chunks left over from the previous capture; only this thread reads the buffer
+        ring.clear();
+        RandomAccessFile out = null;
+        try {
+            out = new RandomAccessFile(file, "rw");
+            FileChannel channel = out.getChannel();
+            channel.truncate(0);
+            // placeholder until the data length is known
+            writeHeader(channel, 0);
+            long position = WavHeader.SIZE;
+            while (true) {
+                // read the flag before draining so the last chunks are not missed
+                boolean last = finishing;
+                int n;
+                while ((n = ring.poll(block, 0, block.length)) > 0) {
+                    blockBuffer.clear();
+                    blockBuffer.limit(n);
+                    while (blockBuffer.hasRemaining()) {
+                        position += channel.write(blockBuffer, position);
+                    }
+                    bytesWritten.addAndGet(n);
+                }
+                if (last) {
+                    break;
+                }
+                LockSupport.parkNanos(this, IDLE_POLL_NANOS);
+            }
+            writeHeader(channel, (int) (position - WavHeader.SIZE));
+        } catch (IOException e) {
+            AppLog.e("Can't write to output file {}", file, e);
+            failure = e;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    AppLog.e("Can't close output file {}", file, e);
+                }
+            }
+        }
+        if (failure != null) {
+            discardUntilFinished();
+        }
+    }
+
+    /**
+     * Keeps emptying the buffer after a write error, so a chunk the producer was
+     * still copying in is not left behind. {@link #write} drops everything once
+     * the failure is set.
+     */
+    private void discardUntilFinished() {
+        while (true) {
+            boolean last = finishing;
+            while (ring.poll(block, 0, block.length) > 0) {
+                // dropped
+            }
+            if (last) {
+                return;
+            }
+            LockSupport.parkNanos(this, IDLE_POLL_NANOS);
+        }
+    }
+
+    private void writeHeader(FileChannel channel, int dataLength) throws IOException {
+        headerBuffer.clear();
+        WavHeader.write(headerBuffer, dataLength, sampleRate, bitsPerSample, channels);
+        headerBuffer.flip();
+        long position = 0;
+        while (headerBuffer.hasRemaining()) {
+            position += channel.write(headerBuffer, position);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.ford.googlenowlink.applink.audio;
+
+/**
+ * Receives audio pass-through data as it arrives, see {@link StreamingCaptureSink}.
+ */
+public interface AudioChunkConsumer {
+    void onCaptureStarted();
+
+    /**
+     * Called on the proxy's callback thread for every chunk. The array is only
+     * valid for the duration of the call and the method must not block.
+     */
+    void onAudioChunk(byte[] data, int offset, int length);
+
+    void onCaptureFinished();
+}
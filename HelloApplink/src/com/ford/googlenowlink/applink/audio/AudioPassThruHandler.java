@@ -0,0 +1,123 @@
+package com.ford.googlenowlink.applink.audio;
+
+import com.ford.googlenowlink.applink.dispatch.EventDispatcher;
+import com.ford.googlenowlink.applink.log.AppLog;
+import com.ford.syncV4.proxy.rpc.OnAudioPassThru;
+
+/**
+ * Handles the OnAudioPassThru chunks of one recording at a time: queues them
+ * on a lane, writes them to the capture sink and runs them through a
+ * {@link VoiceActivityDetector}, so the recording can be ended as soon as
+ * the user stops talking instead of after the full maximum duration.
+ */
+public class AudioPassThruHandler {
+
+    /**
+     * Ends the recording on the head unit.
+     */
+    public interface Listener {
+        /**
+         * Called once per recording when the user stopped talking or never started.
+         * @param state {@link VoiceActivityDetector.State#ENDED} or {@link VoiceActivityDetector.State#NO_SPEECH}
+         */
+        void onEndOfUtterance(VoiceActivityDetector.State state, int frames);
+    }
+
+    private final EventDispatcher dispatcher;
+    private final EventDispatcher.Lane lane;
+    private final VoiceActivityDetector voiceActivity;
+    private final Listener listener;
+    // where the chunks go
+    private volatile AudioCaptureSink sink;
+    // set once the listener was told the current recording is over; only used on the lane
+    private boolean ending;
+
+    /**
+     * @param lane ordered lane the chunks are handled on
+     */
+    public AudioPassThruHandler(EventDispatcher dispatcher, EventDispatcher.Lane lane, int sampleRate,
+                                Listener listener) {
+        this.dispatcher = dispatcher;
+        this.lane = lane;
+        this.voiceActivity = new VoiceActivityDetector(sampleRate);
+        this.listener = listener;
+    }
+
+    /**
+     * Selects where chunks are captured, finishing the capture in progress in the previous sink.
+     */
+    public void setSink(AudioCaptureSink sink) {
+        AudioCaptureSink previous = this.sink;
+        this.sink = sink;
+        if (previous != null && previous != sink) {
+            previous.finish();
+        }
+    }
+
+    public AudioCaptureSink getSink() {
+        return sink;
+    }
+
+    /**
+     * Starts a new recording, before PerformAudioPassThru is sent, so the
+     * sink is ready before the first chunk. The detector is reset on the lane,
+     * after any chunks of the previous recording still queued there.
+     */
+    public void start() {
+        sink.start();
+        dispatcher.dispatch(lane, "StartAPT", new Runnable() {
+            @Override
+            public void run() {
+                voiceActivity.reset();
+                ending = false;
+            }
+        });
+    }
+
+    /**
+     * Queues a notification from the proxy's thread.
+     */
+    public void onOnAudioPassThru(final OnAudioPassThru notification) {
+        dispatcher.dispatch(lane, "OnAudioPassThru", new Runnable() {
+            @Override
+            public void run() {
+                handle(notification);
+            }
+        });
+    }
+
+    public void handle(OnAudioPassThru notification) {
+        byte[] aptData = notification.getAPTData();
+        if (aptData == null) {
+            AppLog.w("onAudioPassThru aptData is null");
+            return;
+        }
+        write(aptData);
+    }
+
+    /**
+     * Hands a chunk to the sink. None of the sinks block on disk I/O. Called on the lane.
+     */
+    public void write(byte[] aptData) {
+        AudioCaptureSink sink = this.sink;
+        if (!sink.isCapturing()) {
+            // audio arrived without start(), e.g. after a retry from the head unit
+            sink.start();
+        }
+        AppLog.v("Audio pass-through chunk, {} bytes", aptData.length);
+        sink.write(aptData);
+        VoiceActivityDetector.State state = voiceActivity.process(aptData, 0, aptData.length);
+        if ((state == VoiceActivityDetector.State.ENDED || state == VoiceActivityDetector.State.NO_SPEECH)
+                && !ending) {
+            ending = true;
+            listener.onEndOfUtterance(state, voiceActivity.getFrameCount());
+        }
+    }
+
+    /**
+     * Ends the recording in the sink.
+     */
+    public void finish() {
+        sink.finish();
+    }
+}
@@ -0,0 +1,85 @@
+package com.ford.googlenowlink.applink.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Preallocated single-producer/single-consumer byte ring buffer.
+ * The producer copies whole chunks in with {@link #offer}, which never blocks
+ * and never allocates; the consumer drains them in large blocks with {@link #poll}.
+ */
+public class AudioRingBuffer {
+    private final byte[] buffer;
+    private final int mask;
+    // total bytes ever written / read; only the producer advances writePosition
+    // and only the consumer advances readPosition
+    private final AtomicLong writePosition = new AtomicLong();
+    private final AtomicLong readPosition = new AtomicLong();
+
+    /**
+     * @param capacity size of the buffer in bytes, must be a power of two
+     */
+    public AudioRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        buffer = new byte[capacity];
+        mask = capacity - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Returns the number of bytes waiting to be read.
+     */
+    public int size() {
+        return (int) (writePosition.get() - readPosition.get());
+    }
+
+    /**
+     * Copies the chunk into the buffer if it fits as a whole.
+     * @return false if there is not enough free space; nothing is copied in that case
+     */
+    public boolean offer(byte[] data, int offset, int length) {
+        long write = writePosition.get();
+        if (length > buffer.length - (int) (write - readPosition.get())) {
+            return false;
+        }
+        int index = (int) (write & mask);
+        int first = Math.min(length, buffer.length - index);
+        System.arraycopy(data, offset, buffer, index, first);
+        if (first < length) {
+            System.arraycopy(data, offset + first, buffer, 0, length - first);
+        }
+        writePosition.set(write + length);
+        return true;
+    }
+
+    /**
+     * Moves up to maxLength buffered bytes into dest.
+     * @return the number of bytes copied, 0 if the buffer is empty
+     */
+    public int poll(byte[] dest, int offset, int maxLength) {
+        long read = readPosition.get();
+        int length = Math.min(maxLength, (int) (writePosition.get() - read));
+        if (length <= 0) {
+            return 0;
+        }
+        int index = (int) (read & mask);
+        int first = Math.min(length, buffer.length - index);
+        System.arraycopy(buffer, index, dest, offset, first);
+        if (first < length) {
+            System.arraycopy(buffer, 0, dest, offset + first, length - first);
+        }
+        readPosition.set(read + length);
+        return length;
+    }
+
+    /**
+     * Discards everything in the buffer. Like {@link #poll}, only call from the consumer's thread.
+     */
+    public void clear() {
+        readPosition.set(writePosition.get());
+    }
+}
@@ -0,0 +1,112 @@
+package com.ford.googlenowlink.applink.audio;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Collects each utterance in memory, in a direct ByteBuffer taken from a small
+ * pool. Buffers are allocated up front for the longest possible utterance and
+ * returned with {@link #recycle}, so steady-state capture allocates nothing.
+ * When every buffer is still held, the utterance is dropped as a whole: the
+ * sink keeps capturing into nothing until {@link #finish}, which reports it
+ * with {@link Listener#onUtteranceDropped}.
+ */
+public class BufferPoolCaptureSink implements AudioCaptureSink {
+
+    /**
+     * Receives a completed utterance.
+     */
+    public interface Listener {
+        /**
+         * @param audio the PCM data between position and limit; pass it to
+         *              {@link BufferPoolCaptureSink#recycle} when done with it
+         */
+        void onUtterance(ByteBuffer audio, int droppedChunks);
+
+        /**
+         * Called instead of {@link #onUtterance} for an utterance that had no buffer.
+         * @param droppedChunks the chunks written during the utterance
+         */
+        void onUtteranceDropped(int droppedChunks);
+    }
+
+    private final ArrayBlockingQueue<ByteBuffer> pool;
+    private final Listener listener;
+    private volatile ByteBuffer current;
+    // an utterance without a buffer is in progress
+    private volatile boolean dropping;
+    // only written by the thread calling write()
+    private volatile int droppedChunks;
+
+    /**
+     * @param bufferSize size of each buffer, i.e. the longest utterance in bytes
+     * @param poolSize   number of utterances that can be held at the same time
+     */
+    public BufferPoolCaptureSink(int bufferSize, int poolSize, Listener listener) {
+        this.listener = listener;
+        pool = new ArrayBlockingQueue<ByteBuffer>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            pool.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+    }
+
+    /**
+     * Returns the size in bytes of an utterance of the given length and format.
+     */
+    public static int bufferSizeFor(int maxDurationMs, int sampleRate, int bitsPerSample) {
+        return (int) ((long) maxDurationMs * sampleRate / 1000) * (bitsPerSample / 8);
+    }
+
+    @Override
+    public synchronized void start() {
+        finish();
+        ByteBuffer buffer = pool.poll();
+        if (buffer == null) {
+            // every buffer is still held by a listener; drop this utterance
+            droppedChunks = 0;
+            dropping = true;
+            return;
+        }
+        buffer.clear();
+        droppedChunks = 0;
+        current = buffer;
+    }
+
+    @Override
+    public boolean write(byte[] data) {
+        ByteBuffer buffer = current;
+        if (buffer == null || buffer.remaining() < data.length) {
+            droppedChunks++;
+            return false;
+        }
+        buffer.put(data);
+        return true;
+    }
+
+    @Override
+    public synchronized void finish() {
+        ByteBuffer buffer = current;
+        if (buffer == null) {
+            if (dropping) {
+                dropping = false;
+                listener.onUtteranceDropped(droppedChunks);
+            }
+            return;
+        }
+        current = null;
+        buffer.flip();
+        listener.onUtterance(buffer, droppedChunks);
+    }
+
+    @Override
+    public boolean isCapturing() {
+        return current != null || dropping;
+    }
+
+    /**
+     * Returns a buffer handed out by {@link Listener#onUtterance} to the pool.
+     */
+    public void recycle(ByteBuffer buffer) {
+        pool.offer(buffer);
+    }
+}
@@ -0,0 +1,44 @@
+package com.ford.googlenowlink.applink.audio;
+
+/**
+ * Passes every chunk straight to an {@link AudioChunkConsumer}, e.g. a
+ * recognizer that processes the utterance while it is being spoken.
+ * Nothing is buffered or copied.
+ */
+public class StreamingCaptureSink implements AudioCaptureSink {
+    private final AudioChunkConsumer consumer;
+    private volatile boolean capturing;
+
+    public StreamingCaptureSink(AudioChunkConsumer consumer) {
+        this.consumer = consumer;
+    }
+
+    @Override
+    public void start() {
+        finish();
+        capturing = true;
+        consumer.onCaptureStarted();
+    }
+
+    @Override
+    public boolean write(byte[] data) {
+        if (!capturing) {
+            return false;
+        }
+        consumer.onAudioChunk(data, 0, data.length);
+        return true;
+    }
+
+    @Override
+    public void finish() {
+        if (capturing) {
+            capturing = false;
+            consumer.onCaptureFinished();
+        }
+    }
+
+    @Override
+    public boolean isCapturing() {
+        return capturing;
+    }
+}
@@ -0,0 +1,180 @@
+package com.ford.googlenowlink.applink.audio;
+
+/**
+ * Incremental end-of-utterance detector for 16-bit little-endian mono PCM.
+ *
+ * Audio is fed chunk by chunk as it arrives and split into fixed frames
+ * (20 ms by default). Each frame is classified as speech or silence from its
+ * energy against an adaptive noise floor, with the zero-crossing rate letting
+ * quiet fricatives (s, f, sh) count as speech. The floor starts from the
+ * quietest of the first frames, so a user who talks right away doesn't make
+ * their own voice the noise, and only quiet frames move it afterwards. Once
+ * speech has been heard, a run of trailing silence longer than the hangover
+ * ends the utterance.
+ * Frames are accumulated on the fly, so processing never allocates.
+ */
+public class VoiceActivityDetector {
+
+    public enum State {
+        /** No speech heard yet. */
+        WAITING,
+        /** Speech heard; waiting for trailing silence. */
+        SPEECH,
+        /** Speech followed by enough silence; the utterance is over. */
+        ENDED,
+        /** Nothing resembling speech within the no-speech timeout. */
+        NO_SPEECH
+    }
+
+    private static final int DEFAULT_FRAME_MS = 20;
+    private static final int DEFAULT_HANGOVER_MS = 700;
+    private static final int DEFAULT_NO_SPEECH_TIMEOUT_MS = 5000;
+    // frames used to estimate the initial noise floor, from the quietest of them
+    private static final int CALIBRATION_FRAMES = 10;
+    // consecutive speech frames needed before the utterance counts as started
+    private static final int SPEECH_START_FRAMES = 3;
+    // speech must be this many times louder than the noise floor (~6 dB)
+    private static final double SPEECH_ENERGY_RATIO = 4.0;
+    // floor for the mean square energy threshold, about -50 dBFS; the noise floor never exceeds it
+    private static final double MIN_SPEECH_ENERGY = 10000.0;
+    // zero crossings per sample above which a quieter frame is taken as a fricative
+    private static final double FRICATIVE_ZCR = 0.25;
+    private static final double NOISE_ADAPT_RATE = 0.05;
+
+    private final int samplesPerFrame;
+    private final int hangoverFrames;
+    private final int noSpeechTimeoutFrames;
+
+    private State state;
+    private int frameSamples;
+    private double frameEnergy;
+    private int frameCrossings;
+    private int lastSample;
+    private int pendingLowByte = -1;
+    private int frames;
+    private int speechRun;
+    private int silenceRun;
+    private double noiseFloor;
+
+    public VoiceActivityDetector(int sampleRate) {
+        this(sampleRate, DEFAULT_FRAME_MS, DEFAULT_HANGOVER_MS, DEFAULT_NO_SPEECH_TIMEOUT_MS);
+    }
+
+    /**
+     * @param hangoverMs         trailing silence that ends an utterance
+     * @param noSpeechTimeoutMs  time to wait for speech to start, 0 to wait forever
+     */
+    public VoiceActivityDetector(int sampleRate, int frameMs, int hangoverMs, int noSpeechTimeoutMs) {
+        samplesPerFrame = sampleRate * frameMs / 1000;
+        hangoverFrames = Math.max(1, hangoverMs / frameMs);
+        noSpeechTimeoutFrames = noSpeechTimeoutMs > 0 ? noSpeechTimeoutMs / frameMs : Integer.MAX_VALUE;
+        reset();
+    }
+
+    /**
+     * Prepares for a new utterance.
+     */
+    public void reset() {
+        state = State.WAITING;
+        frameSamples = 0;
+        frameEnergy = 0;
+        frameCrossings = 0;
+        lastSample = 0;
+        pendingLowByte = -1;
+        frames = 0;
+        speechRun = 0;
+        silenceRun = 0;
+        noiseFloor = MIN_SPEECH_ENERGY;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the audio processed so far, in frames.
+     */
+    public int getFrameCount() {
+        return frames;
+    }
+
+    /**
+     * Feeds the next chunk of PCM. Chunks may split a sample across calls.
+     * @return the state after this chunk
+     */
+    public State process(byte[] pcm, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        if (pendingLowByte >= 0 && i < end) {
+            addSample((short) (pendingLowByte | (pcm[i++] << 8)));
+            pendingLowByte = -1;
+        }
+        for (; i + 1 < end; i += 2) {
+            addSample((short) ((pcm[i] & 0xff) | (pcm[i + 1] << 8)));
+        }
+        if (i < end) {
+            pendingLowByte = pcm[i] & 0xff;
+        }
+        return state;
+    }
+
+    /**
+     * Feeds the next chunk of samples.
+     * @return the state after this chunk
+     */
+    public State process(short[] samples, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            addSample(samples[i]);
+        }
+        return state;
+    }
+
+    private void addSample(int sample) {
+        frameEnergy += (double) sample * sample;
+        if ((sample ^ lastSample) < 0) {
+            frameCrossings++;
+        }
+        lastSample = sample;
+        if (++frameSamples == samplesPerFrame) {
+            endFrame();
+        }
+    }
+
+    private void endFrame() {
+        double energy = frameEnergy / frameSamples;
+        double zcr = (double) frameCrossings / frameSamples;
+        frameSamples = 0;
+        frameEnergy = 0;
+        frameCrossings = 0;
+        frames++;
+        if (state == State.ENDED || state == State.NO_SPEECH) {
+            return;
+        }
+        if (frames <= CALIBRATION_FRAMES) {
+            // the minimum: speech in some of these frames must not raise the floor
+            noiseFloor = Math.min(noiseFloor, energy);
+            return;
+        }
+
+        double threshold = Math.max(MIN_SPEECH_ENERGY, noiseFloor * SPEECH_ENERGY_RATIO);
+        boolean speech = energy > threshold || (energy > threshold / 2 && zcr > FRICATIVE_ZCR);
+        if (speech) {
+            speechRun++;
+            silenceRun = 0;
+            if (state == State.WAITING && speechRun >= SPEECH_START_FRAMES) {
+                state = State.SPEECH;
+            }
+        } else {
+            speechRun = 0;
+            silenceRun++;
+            if (energy <= MIN_SPEECH_ENERGY) {
+                noiseFloor += (energy - noiseFloor) * NOISE_ADAPT_RATE;
+            }
+            if (state == State.SPEECH && silenceRun >= hangoverFrames) {
+                state = State.ENDED;
+            } else if (state == State.WAITING && frames >= noSpeechTimeoutFrames) {
+                state = State.NO_SPEECH;
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.ford.googlenowlink.applink.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Canonical 44-byte RIFF/WAVE header for uncompressed PCM audio.
+ */
+public class WavHeader {
+    public static final int SIZE = 44;
+
+    private WavHeader() {
+    }
+
+    /**
+     * Writes a header describing dataLength bytes of PCM audio at the buffer's position.
+     */
+    public static void write(ByteBuffer out, int dataLength, int sampleRate, int bitsPerSample, int channels) {
+        ByteOrder order = out.order();
+        out.order(ByteOrder.LITTLE_ENDIAN);
+        int blockAlign = channels * bitsPerSample / 8;
+        out.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+        out.putInt(36 + dataLength);
+        out.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+        out.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');
+        out.putInt(16);                         // fmt chunk size
+        out.putShort((short) 1);                // PCM
+        out.putShort((short) channels);
+        out.putInt(sampleRate);
+        out.putInt(sampleRate * blockAlign);    // byte rate
+        out.putShort((short) blockAlign);
+        out.putShort((short) bitsPerSample);
+        out.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');
+        out.putInt(dataLength);
+        out.order(order);
+    }
+}
@@ -0,0 +1,30 @@
+package com.ford.googlenowlink.applink.connection;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * {@link TaskScheduler} that runs tasks on a Handler's thread.
+ */
+public class HandlerTaskScheduler implements TaskScheduler {
+    private final Handler handler;
+
+    public HandlerTaskScheduler(Handler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public long now() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayMs) {
+        handler.postDelayed(task, delayMs);
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        handler.removeCallbacks(task);
+    }
+}
@@ -0,0 +1,139 @@
+package com.ford.googlenowlink.applink.connection;
+
+import com.ford.googlenowlink.applink.dispatch.EventDispatcher;
+import com.ford.googlenowlink.applink.display.DisplayCoalescer;
+import com.ford.googlenowlink.applink.log.AppLog;
+import com.ford.googlenowlink.applink.metrics.ConnectionTracer;
+import com.ford.syncV4.proxy.rpc.OnHMIStatus;
+import com.ford.syncV4.proxy.rpc.enums.HMILevel;
+import com.ford.syncV4.proxy.rpc.enums.TextAlignment;
+
+/**
+ * Handles OnHMIStatus: traces the connection until the app first reaches
+ * HMI_FULL, tells the reconnect logic the app is registered again and greets
+ * the user on the display. Setting the app up on SYNC is left to the
+ * {@link Listener}.
+ */
+public class HmiStatusHandler {
+
+    /**
+     * Called on the lane the notifications are handled on.
+     */
+    public interface Listener {
+        void onHmiLevel(HMILevel hmiLevel);
+
+        /**
+         * Called on the first HMI_FULL of a traced connection.
+         * @param timeline the connection's timeline, see {@link ConnectionTracer#finishConnection()}
+         */
+        void onActivated(String timeline);
+
+        /**
+         * Called on the first HMI_FULL after the app registered, to set the app up on SYNC.
+         */
+        void onFirstRun();
+    }
+
+    private final EventDispatcher dispatcher;
+    private final EventDispatcher.Lane lane;
+    private final ConnectionTracer tracer;
+    private final ReconnectScheduler reconnectScheduler;
+    private final DisplayCoalescer display;
+    private final Listener listener;
+
+    /**
+     * @param lane ordered lane the notifications are handled on
+     */
+    public HmiStatusHandler(EventDispatcher dispatcher, EventDispatcher.Lane lane, ConnectionTracer tracer,
+                            ReconnectScheduler reconnectScheduler, DisplayCoalescer display, Listener listener) {
+        this.dispatcher = dispatcher;
+        this.lane = lane;
+        this.tracer = tracer;
+        this.reconnectScheduler = reconnectScheduler;
+        this.display = display;
+        this.listener = listener;
+    }
+
+    /**
+     * Called on the proxy's thread by the first notification after the app registered.
+     */
+    public void onRegistered() {
+        tracer.end(ConnectionTracer.Phase.REGISTRATION);
+        tracer.begin(ConnectionTracer.Phase.ACTIVATION);
+    }
+
+    /**
+     * Queues a notification from the proxy's thread.
+     */
+    public void onOnHMIStatus(final OnHMIStatus notification) {
+        // traced on the proxy's thread, before any queueing
+        onRegistered();
+        if (notification.getHmiLevel() == HMILevel.HMI_FULL) {
+            tracer.end(ConnectionTracer.Phase.ACTIVATION);
+        }
+        dispatcher.dispatch(lane, "OnHMIStatus", new Runnable() {
+            @Override
+            public void run() {
+                handle(notification);
+            }
+        });
+    }
+
+    public void handle(OnHMIStatus notification) {
+        // registered with SYNC again
+        reconnectScheduler.onConnected();
+        listener.onHmiLevel(notification.getHmiLevel());
+        if (notification.getHmiLevel() == HMILevel.HMI_FULL) {
+            String timeline = tracer.finishConnection();
+            if (timeline != null) {
+                listener.onActivated(timeline);
+            }
+        }
+
+        switch (notification.getSystemContext()) {
+            case SYSCTXT_MAIN:
+                break;
+            case SYSCTXT_VRSESSION:
+                break;
+            case SYSCTXT_MENU:
+                break;
+            default:
+                return;
+        }
+
+        switch (notification.getAudioStreamingState()) {
+            case AUDIBLE:
+                // play audio if applicable
+                break;
+            case NOT_AUDIBLE:
+                // pause/stop/mute audio if applicable
+                break;
+            default:
+                return;
+        }
+
+        switch (notification.getHmiLevel()) {
+            case HMI_FULL:
+                AppLog.i("HMI_FULL");
+                if (notification.getFirstRun()) {
+                    // send welcome message if applicable
+                    display.update("Welcome to", "Google Now Link", TextAlignment.CENTERED);
+                    listener.onFirstRun();
+                } else {
+                    display.update("SyncProxy is", "Alive", TextAlignment.CENTERED);
+                }
+                break;
+            case HMI_LIMITED:
+                AppLog.i("HMI_LIMITED");
+                break;
+            case HMI_BACKGROUND:
+                AppLog.i("HMI_BACKGROUND");
+                break;
+            case HMI_NONE:
+                AppLog.i("HMI_NONE");
+                break;
+            default:
+                return;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.ford.googlenowlink.applink.connection;
+
+import com.ford.syncV4.exception.SyncExceptionCause;
+
+import java.util.Random;
+
+/**
+ * Paces reconnection attempts after the proxy closes.
+ *
+ * Attempts are spaced with exponential backoff and jitter so a flapping
+ * Bluetooth link does not turn into a tight reset loop. After too many failed
+ * attempts in a row the circuit opens and nothing is tried for a cool-down
+ * period; then a single probe attempt is allowed (half-open), and only a
+ * successful connection closes the circuit again.
+ */
+public class ReconnectScheduler {
+
+    public enum State {
+        /** Connected, or nothing to do. */
+        IDLE,
+        /** Waiting for the next attempt. */
+        BACKOFF,
+        /** Too many failures; waiting for the cool-down to end. */
+        OPEN,
+        /** Cool-down over; one probe attempt in progress. */
+        HALF_OPEN
+    }
+
+    public static final long DEFAULT_BASE_DELAY_MS = 1000;
+    public static final long DEFAULT_MAX_DELAY_MS = 60000;
+    public static final int DEFAULT_MAX_ATTEMPTS = 8;
+    public static final long DEFAULT_OPEN_DURATION_MS = 5 * 60 * 1000;
+    // an attempt that neither connects nor closes the proxy again within this time has failed
+    private static final long ATTEMPT_TIMEOUT_MS = 30000;
+
+    private final TaskScheduler scheduler;
+    private final Runnable reconnectAction;
+    private final Random random;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final int maxAttempts;
+    private final long openDurationMs;
+
+    private State state = State.IDLE;
+    private int failedAttempts;
+    // time the connection was lost, -1 while connected
+    private long disconnectedAt = -1;
+
+    // metrics
+    private int totalAttempts;
+    private int reconnects;
+    private int circuitOpens;
+    private long lastReconnectMs;
+    private long maxReconnectMs;
+    private long totalReconnectMs;
+
+    private final Runnable attemptTask = new Runnable() {
+        @Override
+        public void run() {
+            attempt();
+        }
+    };
+
+    private final Runnable attemptTimeoutTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (ReconnectScheduler.this) {
+                attemptFailed();
+            }
+        }
+    };
+
+    public ReconnectScheduler(TaskScheduler scheduler, Runnable reconnectAction) {
+        this(scheduler, reconnectAction, new Random(), DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS,
+                DEFAULT_MAX_ATTEMPTS, DEFAULT_OPEN_DURATION_MS);
+    }
+
+    /**
+     * @param reconnectAction runs on the scheduler's thread to reconnect, e.g. reset the proxy
+     * @param maxAttempts     failed attempts in a row before the circuit opens
+     * @param openDurationMs  how long the circuit stays open before a probe attempt
+     */
+    public ReconnectScheduler(TaskScheduler scheduler, Runnable reconnectAction, Random random,
+                              long baseDelayMs, long maxDelayMs, int maxAttempts, long openDurationMs) {
+        this.scheduler = scheduler;
+        this.reconnectAction = reconnectAction;
+        this.random = random;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.maxAttempts = maxAttempts;
+        this.openDurationMs = openDurationMs;
+    }
+
+    /**
+     * Called when the proxy closes. Decides from the cause whether and when to reconnect.
+     */
+    public synchronized void onConnectionLost(SyncExceptionCause cause) {
+        if (disconnectedAt < 0) {
+            disconnectedAt = scheduler.now();
+        }
+        if (cause == SyncExceptionCause.SYNC_PROXY_CYCLED) {
+            // the proxy is already reconnecting by itself
+            return;
+        }
+        if (cause == SyncExceptionCause.BLUETOOTH_DISABLED) {
+            // nothing to reconnect to until Bluetooth comes back (ACL_CONNECTED restarts us)
+            cancel();
+            return;
+        }
+        if (isPermanent(cause)) {
+            openCircuit();
+            return;
+        }
+        if (state == State.IDLE) {
+            scheduleAttempt();
+        } else {
+            attemptFailed();
+        }
+    }
+
+    /**
+     * Called once the proxy is connected and registered again.
+     */
+    public synchronized void onConnected() {
+        cancelTasks();
+        if (disconnectedAt >= 0) {
+            long elapsed = scheduler.now() - disconnectedAt;
+            reconnects++;
+            lastReconnectMs = elapsed;
+            totalReconnectMs += elapsed;
+            maxReconnectMs = Math.max(maxReconnectMs, elapsed);
+            disconnectedAt = -1;
+        }
+        failedAttempts = 0;
+        state = State.IDLE;
+    }
+
+    /**
+     * Stops any pending attempt and forgets the failure history.
+     */
+    public synchronized void cancel() {
+        cancelTasks();
+        failedAttempts = 0;
+        state = State.IDLE;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the delay before attempt number {@code attempt} (0-based): exponential
+     * backoff capped at the maximum, with the upper half randomised ("equal jitter").
+     */
+    long backoffDelay(int attempt) {
+        long ceiling = baseDelayMs << Math.min(attempt, 30);
+        if (ceiling <= 0 || ceiling > maxDelayMs) {
+            ceiling = maxDelayMs;
+        }
+        long half = ceiling / 2;
+        return half + (long) (random.nextDouble() * (ceiling - half));
+    }
+
+    private void attemptFailed() {
+        switch (state) {
+            case HALF_OPEN:
+                // the probe failed
+                openCircuit();
+                break;
+            case BACKOFF:
+                failedAttempts++;
+                if (failedAttempts >= maxAttempts) {
+                    openCircuit();
+                } else {
+                    scheduleAttempt();
+                }
+                break;
+            default:
+                // idle, or already waiting for the cool-down
+                break;
+        }
+    }
+
+    private void scheduleAttempt() {
+        state = State.BACKOFF;
+        cancelTasks();
+        scheduler.postDelayed(attemptTask, backoffDelay(failedAttempts));
+    }
+
+    private void openCircuit() {
+        state = State.OPEN;
+        circuitOpens++;
+        cancelTasks();
+        scheduler.postDelayed(attemptTask, openDurationMs);
+    }
+
+    private void cancelTasks() {
+        scheduler.cancel(attemptTask);
+        scheduler.cancel(attemptTimeoutTask);
+    }
+
+    private void attempt() {
+        synchronized (this) {
+            if (state == State.IDLE) {
+                return;
+            }
+            if (state == State.OPEN) {
+                state = State.HALF_OPEN;
+            }
+            totalAttempts++;
+            scheduler.postDelayed(attemptTimeoutTask, ATTEMPT_TIMEOUT_MS);
+        }
+        reconnectAction.run();
+    }
+
+    private static boolean isPermanent(SyncExceptionCause cause) {
+        return cause == SyncExceptionCause.SYNC_REGISTRATION_ERROR
+                || cause == SyncExceptionCause.PERMISSION_DENIED
+                || cause == SyncExceptionCause.INCORRECT_LIFECYCLE_MODEL;
+    }
+
+    public synchronized int getTotalAttempts() {
+        return totalAttempts;
+    }
+
+    public synchronized int getReconnectCount() {
+        return reconnects;
+    }
+
+    public synchronized int getCircuitOpenCount() {
+        return circuitOpens;
+    }
+
+    public synchronized long getLastReconnectMs() {
+        return lastReconnectMs;
+    }
+
+    public synchronized long getMaxReconnectMs() {
+        return maxReconnectMs;
+    }
+
+    public synchronized long getAverageReconnectMs() {
+        return reconnects == 0 ? 0 : totalReconnectMs / reconnects;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ReconnectScheduler{state=" + state + ", failedAttempts=" + failedAttempts
+                + ", attempts=" + totalAttempts + ", reconnects=" + reconnects
+                + ", circuitOpens=" + circuitOpens + ", lastReconnectMs=" + lastReconnectMs
+                + ", avgReconnectMs=" + getAverageReconnectMs() + ", maxReconnectMs=" + maxReconnectMs + "}";
+    }
+}
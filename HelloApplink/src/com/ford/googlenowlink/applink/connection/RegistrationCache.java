@@ -0,0 +1,156 @@
+package com.ford.googlenowlink.applink.connection;
+
+import com.ford.googlenowlink.applink.rpc.AsyncRpcClient;
+import com.ford.googlenowlink.applink.rpc.RpcCallback;
+import com.ford.syncV4.proxy.RPCRequest;
+import com.ford.syncV4.proxy.RPCResponse;
+import com.ford.syncV4.proxy.rpc.enums.Result;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Remembers the requests that set the app up on SYNC (submenus, commands,
+ * subscriptions, ...) so they can be replayed after a short disconnect
+ * without rebuilding them.
+ *
+ * Entries are replayed in the order they were recorded, all in one pipelined
+ * burst. SYNC normally handles an app's requests in order, so dependent
+ * entries (a command after its submenu) succeed in the same round; any entry
+ * that is rejected anyway is sent once more after the burst has been answered.
+ */
+public class RegistrationCache {
+
+    /**
+     * Notified when a replay has been fully answered.
+     */
+    public interface Listener {
+        void onReplayed(int replayed, int failures, long elapsedMs);
+    }
+
+    private static class Entry {
+        final RPCRequest request;
+        final Class<? extends RPCResponse> responseType;
+
+        Entry(RPCRequest request, Class<? extends RPCResponse> responseType) {
+            this.request = request;
+            this.responseType = responseType;
+        }
+    }
+
+    // guarded by this; keeps recording order
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    /**
+     * Records a request that SYNC accepted, replacing an earlier one with the same key.
+     */
+    public synchronized void record(String key, RPCRequest request, Class<? extends RPCResponse> responseType) {
+        entries.remove(key);
+        entries.put(key, new Entry(request, responseType));
+    }
+
+    public synchronized void forget(String key) {
+        entries.remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Sends every recorded request again.
+     * @param listener notified when every request has been answered, may be null
+     * @return the number of requests sent
+     */
+    public int replay(AsyncRpcClient rpcClient, Listener listener) {
+        List<Entry> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<Entry>(entries.values());
+        }
+        new Replay(rpcClient, snapshot, listener).send(snapshot, true);
+        return snapshot.size();
+    }
+
+    private static class Replay {
+        private final AsyncRpcClient rpcClient;
+        private final Listener listener;
+        private final int total;
+        private final long startTime = System.nanoTime();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        // guarded by this
+        private final List<Entry> rejected = new ArrayList<Entry>();
+        private int failures;
+
+        Replay(AsyncRpcClient rpcClient, List<Entry> entries, Listener listener) {
+            this.rpcClient = rpcClient;
+            this.listener = listener;
+            this.total = entries.size();
+        }
+
+        void send(List<Entry> batch, final boolean firstRound) {
+            if (batch.isEmpty()) {
+                finish();
+                return;
+            }
+            outstanding.set(batch.size());
+            for (final Entry entry : batch) {
+                rpcClient.send(entry.request, entry.responseType).addCallback(new RpcCallback<RPCResponse>() {
+                    @Override
+                    public void onResponse(RPCResponse response) {
+                        boolean rejectedByHeadUnit = response.getResultCode() != Result.SUCCESS;
+                        done(entry, rejectedByHeadUnit && firstRound, rejectedByHeadUnit);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable cause) {
+                        // the connection went away; retrying now would fail too
+                        done(entry, false, true);
+                    }
+                });
+            }
+        }
+
+        private void done(Entry entry, boolean retry, boolean failed) {
+            List<Entry> retries = null;
+            synchronized (this) {
+                if (retry) {
+                    rejected.add(entry);
+                } else if (failed) {
+                    failures++;
+                }
+                if (outstanding.decrementAndGet() > 0) {
+                    return;
+                }
+                if (!rejected.isEmpty()) {
+                    retries = new ArrayList<Entry>(rejected);
+                    rejected.clear();
+                }
+            }
+            if (retries != null) {
+                send(retries, false);
+            } else {
+                finish();
+            }
+        }
+
+        private void finish() {
+            if (listener != null) {
+                int failed;
+                synchronized (this) {
+                    failed = failures;
+                }
+                listener.onReplayed(total, failed, (System.nanoTime() - startTime) / 1000000);
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.ford.googlenowlink.applink.connection;
+
+import com.ford.googlenowlink.applink.menu.MenuModel;
+
+import android.content.SharedPreferences;
+
+import java.util.Collection;
+
+/**
+ * Persists the hash ID SYNC sends in OnHashChange, together with a compact
+ * snapshot of what the app had registered when the hash was issued.
+ *
+ * The hash is handed back on the next registration so SYNC can restore the
+ * app's menu, subscriptions and files itself. It is only handed back while
+ * the snapshot still matches what the app would register now; after an
+ * update that changes the menu the app registers from scratch instead.
+ */
+public class ResumptionStore {
+    public static final String PREFERENCES = "resumption";
+
+    private static final String KEY_HASH_ID = "hashId";
+    private static final String KEY_SNAPSHOT = "snapshot";
+
+    private final SharedPreferences preferences;
+
+    public ResumptionStore(SharedPreferences preferences) {
+        this.preferences = preferences;
+    }
+
+    /**
+     * @param snapshot what the app would register now, see {@link #snapshot}
+     * @return the stored hash ID, or null if there is none or it was issued for something else
+     */
+    public String getHashId(String snapshot) {
+        String hashId = preferences.getString(KEY_HASH_ID, null);
+        if (hashId == null || !snapshot.equals(preferences.getString(KEY_SNAPSHOT, null))) {
+            return null;
+        }
+        return hashId;
+    }
+
+    // commit() rather than apply(), which needs API 9 (minSdkVersion is 8)
+    public void save(String hashId, String snapshot) {
+        preferences.edit()
+                .putString(KEY_HASH_ID, hashId)
+                .putString(KEY_SNAPSHOT, snapshot)
+                .commit();
+    }
+
+    public void clear() {
+        preferences.edit()
+                .remove(KEY_HASH_ID)
+                .remove(KEY_SNAPSHOT)
+                .commit();
+    }
+
+    /**
+     * Describes a menu and a set of uploaded files in one line per item:
+     * submenus ("S"), commands with their VR synonyms ("C") and file names ("F").
+     */
+    public static String snapshot(MenuModel menu, Collection<String> fileNames) {
+        StringBuilder sb = new StringBuilder();
+        for (MenuModel.SubMenuItem subMenu : menu.getSubMenus()) {
+            sb.append("S|").append(subMenu.menuId)
+                    .append('|').append(subMenu.position)
+                    .append('|').append(subMenu.menuName).append('\n');
+        }
+        for (MenuModel.CommandItem command : menu.getCommands()) {
+            sb.append("C|").append(command.cmdId)
+                    .append('|').append(command.parentId)
+                    .append('|').append(command.menuName);
+            for (String vr : command.vrCommands) {
+                sb.append('|').append(vr);
+            }
+            sb.append('\n');
+        }
+        for (String fileName : fileNames) {
+            sb.append("F|").append(fileName).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,16 @@
+package com.ford.googlenowlink.applink.connection;
+
+/**
+ * Clock and delayed execution used by the connection logic. The app uses a
+ * {@link HandlerTaskScheduler}; tests can drive a virtual clock instead.
+ */
+public interface TaskScheduler {
+    /**
+     * Returns a monotonic time in milliseconds.
+     */
+    long now();
+
+    void postDelayed(Runnable task, long delayMs);
+
+    void cancel(Runnable task);
+}
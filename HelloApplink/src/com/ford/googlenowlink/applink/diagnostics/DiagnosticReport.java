@@ -0,0 +1,184 @@
+package com.ford.googlenowlink.applink.diagnostics;
+
+import com.ford.syncV4.proxy.rpc.DIDResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Result of a {@link DiagnosticScan}, per ECU, with timing.
+ */
+public class DiagnosticReport {
+
+    /**
+     * What was read from one ECU.
+     */
+    public static class EcuReport {
+        private final int ecu;
+        // null until the DTCs have been read
+        private List<String> dtcs;
+        private Integer ecuHeader;
+        private final Map<Integer, DIDResult> dids = new TreeMap<Integer, DIDResult>();
+        private final List<String> failures = new ArrayList<String>();
+        private int requestCount;
+        private int cachedCount;
+        private long firstSentMs = -1;
+        private long lastAnsweredMs = -1;
+
+        EcuReport(int ecu) {
+            this.ecu = ecu;
+        }
+
+        public int getEcu() {
+            return ecu;
+        }
+
+        /**
+         * Returns the diagnostic trouble codes, or null if they were not read.
+         */
+        public List<String> getDtcs() {
+            return dtcs == null ? null : Collections.unmodifiableList(dtcs);
+        }
+
+        public Integer getEcuHeader() {
+            return ecuHeader;
+        }
+
+        public Map<Integer, DIDResult> getDids() {
+            return Collections.unmodifiableMap(dids);
+        }
+
+        public List<String> getFailures() {
+            return Collections.unmodifiableList(failures);
+        }
+
+        /**
+         * Returns the number of requests sent to the ECU.
+         */
+        public int getRequestCount() {
+            return requestCount;
+        }
+
+        /**
+         * Returns the number of results served from the cache.
+         */
+        public int getCachedCount() {
+            return cachedCount;
+        }
+
+        /**
+         * Returns the time from the first request to the ECU to its last answer,
+         * or 0 if everything came from the cache.
+         */
+        public long getLatencyMs() {
+            return firstSentMs < 0 || lastAnsweredMs < 0 ? 0 : lastAnsweredMs - firstSentMs;
+        }
+
+        void setDtcs(List<String> dtcs, Integer ecuHeader) {
+            this.dtcs = new ArrayList<String>(dtcs);
+            this.ecuHeader = ecuHeader;
+        }
+
+        void putDid(int did, DIDResult result) {
+            dids.put(did, result);
+        }
+
+        void addFailure(String failure) {
+            failures.add(failure);
+        }
+
+        void cached(int count) {
+            cachedCount += count;
+        }
+
+        void sent(long nowMs) {
+            requestCount++;
+            if (firstSentMs < 0) {
+                firstSentMs = nowMs;
+            }
+        }
+
+        void answered(long nowMs) {
+            lastAnsweredMs = nowMs;
+        }
+
+        @Override
+        public String toString() {
+            return "ECU " + ecu + ": " + (dtcs == null ? "-" : dtcs.size()) + " DTCs, " + dids.size() + " DIDs, "
+                    + requestCount + " requests, " + cachedCount + " cached, " + getLatencyMs() + " ms"
+                    + (failures.isEmpty() ? "" : ", failures " + failures);
+        }
+    }
+
+    private final Map<Integer, EcuReport> ecus = new LinkedHashMap<Integer, EcuReport>();
+    private long elapsedMs;
+
+    EcuReport ecu(int ecu) {
+        EcuReport report = ecus.get(ecu);
+        if (report == null) {
+            report = new EcuReport(ecu);
+            ecus.put(ecu, report);
+        }
+        return report;
+    }
+
+    void setElapsedMs(long elapsedMs) {
+        this.elapsedMs = elapsedMs;
+    }
+
+    public List<EcuReport> getEcuReports() {
+        return new ArrayList<EcuReport>(ecus.values());
+    }
+
+    public EcuReport getEcuReport(int ecu) {
+        return ecus.get(ecu);
+    }
+
+    /**
+     * Returns the wall-clock time the scan took.
+     */
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    /**
+     * Returns true if any ECU reported a diagnostic trouble code.
+     */
+    public boolean hasDtcs() {
+        for (EcuReport report : ecus.values()) {
+            if (report.dtcs != null && !report.dtcs.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getRequestCount() {
+        int count = 0;
+        for (EcuReport report : ecus.values()) {
+            count += report.requestCount;
+        }
+        return count;
+    }
+
+    public int getFailureCount() {
+        int count = 0;
+        for (EcuReport report : ecus.values()) {
+            count += report.failures.size();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Diagnostic scan in ").append(elapsedMs).append(" ms");
+        for (EcuReport report : ecus.values()) {
+            sb.append("\n  ").append(report);
+        }
+        return sb.toString();
+    }
+}
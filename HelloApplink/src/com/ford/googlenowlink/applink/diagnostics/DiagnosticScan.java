@@ -0,0 +1,64 @@
+package com.ford.googlenowlink.applink.diagnostics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Declarative description of a diagnostic scan: which ECUs to read
+ * diagnostic trouble codes from, and which DIDs to read from each ECU.
+ */
+public class DiagnosticScan {
+
+    static class EcuRequest {
+        final int ecu;
+        boolean readDtcs;
+        final Set<Integer> dids = new LinkedHashSet<Integer>();
+
+        EcuRequest(int ecu) {
+            this.ecu = ecu;
+        }
+    }
+
+    private final Map<Integer, EcuRequest> ecus = new LinkedHashMap<Integer, EcuRequest>();
+
+    /**
+     * Reads the diagnostic trouble codes of an ECU.
+     */
+    public DiagnosticScan readDtcs(int ecu) {
+        ecu(ecu).readDtcs = true;
+        return this;
+    }
+
+    /**
+     * Reads data identifiers of an ECU. Duplicates are read once.
+     */
+    public DiagnosticScan readDids(int ecu, int... dids) {
+        EcuRequest request = ecu(ecu);
+        for (int did : dids) {
+            request.dids.add(did);
+        }
+        return this;
+    }
+
+    public Set<Integer> getEcus() {
+        return Collections.unmodifiableSet(ecus.keySet());
+    }
+
+    List<EcuRequest> getRequests() {
+        return new ArrayList<EcuRequest>(ecus.values());
+    }
+
+    private EcuRequest ecu(int ecu) {
+        EcuRequest request = ecus.get(ecu);
+        if (request == null) {
+            request = new EcuRequest(ecu);
+            ecus.put(ecu, request);
+        }
+        return request;
+    }
+}
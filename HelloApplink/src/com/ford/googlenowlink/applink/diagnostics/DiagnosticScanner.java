@@ -0,0 +1,294 @@
+package com.ford.googlenowlink.applink.diagnostics;
+
+import com.ford.googlenowlink.applink.connection.TaskScheduler;
+import com.ford.googlenowlink.applink.rpc.AsyncRpcClient;
+import com.ford.googlenowlink.applink.rpc.RpcCallback;
+import com.ford.syncV4.proxy.RPCRequest;
+import com.ford.syncV4.proxy.RPCResponse;
+import com.ford.syncV4.proxy.rpc.DIDResult;
+import com.ford.syncV4.proxy.rpc.GetDTCs;
+import com.ford.syncV4.proxy.rpc.GetDTCsResponse;
+import com.ford.syncV4.proxy.rpc.ReadDID;
+import com.ford.syncV4.proxy.rpc.ReadDIDResponse;
+import com.ford.syncV4.proxy.rpc.enums.Result;
+import com.ford.syncV4.proxy.rpc.enums.VehicleDataResultCode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Runs {@link DiagnosticScan}s with GetDTCs and ReadDID.
+ *
+ * DID lists are split into requests of at most {@code maxDidsPerRequest}
+ * DIDs, and up to {@code maxConcurrent} requests are in flight at a time;
+ * each response is matched to its chunk through its request's future.
+ * Results are cached with a time to live, so asking again shortly after a
+ * scan ("any engine codes?") answers without querying the ECUs.
+ */
+public class DiagnosticScanner {
+    /** ReadDID accepts at most this many DIDs per request. */
+    public static final int DEFAULT_MAX_DIDS_PER_REQUEST = 1000;
+    public static final int DEFAULT_MAX_CONCURRENT = 3;
+    public static final long DEFAULT_DTC_TTL_MS = 60000;
+    public static final long DEFAULT_DID_TTL_MS = 10000;
+
+    /**
+     * Notified when every request of a scan has been answered or has failed.
+     */
+    public interface Listener {
+        void onScanComplete(DiagnosticReport report);
+    }
+
+    private static class CacheEntry {
+        final Object value;
+        final long expiresAtMs;
+
+        CacheEntry(Object value, long expiresAtMs) {
+            this.value = value;
+            this.expiresAtMs = expiresAtMs;
+        }
+    }
+
+    private static class CachedDtcs {
+        final List<String> dtcs;
+        final Integer ecuHeader;
+
+        CachedDtcs(List<String> dtcs, Integer ecuHeader) {
+            this.dtcs = dtcs;
+            this.ecuHeader = ecuHeader;
+        }
+    }
+
+    private final AsyncRpcClient rpcClient;
+    private final TaskScheduler clock;
+    private final int maxDidsPerRequest;
+    private final int maxConcurrent;
+    private final long dtcTtlMs;
+    private final long didTtlMs;
+    // guarded by itself; keyed by ECU and DID, see key()
+    private final Map<Long, CacheEntry> cache = new HashMap<Long, CacheEntry>();
+
+    public DiagnosticScanner(AsyncRpcClient rpcClient, TaskScheduler clock) {
+        this(rpcClient, clock, DEFAULT_MAX_DIDS_PER_REQUEST, DEFAULT_MAX_CONCURRENT, DEFAULT_DTC_TTL_MS,
+                DEFAULT_DID_TTL_MS);
+    }
+
+    /**
+     * @param dtcTtlMs how long trouble codes are served from the cache, 0 to not cache them
+     * @param didTtlMs how long DID values are served from the cache, 0 to not cache them
+     */
+    public DiagnosticScanner(AsyncRpcClient rpcClient, TaskScheduler clock, int maxDidsPerRequest,
+                             int maxConcurrent, long dtcTtlMs, long didTtlMs) {
+        if (maxDidsPerRequest <= 0 || maxConcurrent <= 0) {
+            throw new IllegalArgumentException("maxDidsPerRequest and maxConcurrent must be positive");
+        }
+        this.rpcClient = rpcClient;
+        this.clock = clock;
+        this.maxDidsPerRequest = maxDidsPerRequest;
+        this.maxConcurrent = maxConcurrent;
+        this.dtcTtlMs = dtcTtlMs;
+        this.didTtlMs = didTtlMs;
+    }
+
+    /**
+     * Starts a scan. The listener may be called before this returns if
+     * everything is cached.
+     */
+    public void scan(DiagnosticScan scan, Listener listener) {
+        new Run(scan, listener).start();
+    }
+
+    /**
+     * Forgets every cached result, e.g. after the proxy was closed.
+     */
+    public void invalidate() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private static long key(int ecu, int did) {
+        return ((long) ecu << 32) | (did & 0xFFFFFFFFL);
+    }
+
+    // DIDs are 16 bit, so -1 never clashes with one
+    private static long dtcKey(int ecu) {
+        return key(ecu, -1);
+    }
+
+    private Object cached(long key, long nowMs) {
+        synchronized (cache) {
+            CacheEntry entry = cache.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (nowMs >= entry.expiresAtMs) {
+                cache.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    private void cache(long key, Object value, long ttlMs, long nowMs) {
+        if (ttlMs <= 0) {
+            return;
+        }
+        synchronized (cache) {
+            cache.put(key, new CacheEntry(value, nowMs + ttlMs));
+        }
+    }
+
+    /**
+     * One request of a scan: the DTCs of an ECU, or one chunk of its DIDs.
+     */
+    private static class Work {
+        final int ecu;
+        final RPCRequest request;
+        final Class<? extends RPCResponse> responseType;
+
+        Work(int ecu, RPCRequest request, Class<? extends RPCResponse> responseType) {
+            this.ecu = ecu;
+            this.request = request;
+            this.responseType = responseType;
+        }
+    }
+
+    private class Run {
+        private final DiagnosticScan scan;
+        private final Listener listener;
+        private final DiagnosticReport report = new DiagnosticReport();
+        private final long startMs = clock.now();
+        // guarded by this
+        private final LinkedList<Work> queue = new LinkedList<Work>();
+        private int inFlight;
+        private boolean finished;
+
+        Run(DiagnosticScan scan, Listener listener) {
+            this.scan = scan;
+            this.listener = listener;
+        }
+
+        void start() {
+            synchronized (this) {
+                for (DiagnosticScan.EcuRequest ecu : scan.getRequests()) {
+                    plan(ecu);
+                }
+            }
+            pump();
+        }
+
+        private void plan(DiagnosticScan.EcuRequest ecu) {
+            DiagnosticReport.EcuReport ecuReport = report.ecu(ecu.ecu);
+            if (ecu.readDtcs) {
+                CachedDtcs dtcs = (CachedDtcs) cached(dtcKey(ecu.ecu), startMs);
+                if (dtcs != null) {
+                    ecuReport.setDtcs(dtcs.dtcs, dtcs.ecuHeader);
+                    ecuReport.cached(1);
+                } else {
+                    GetDTCs request = new GetDTCs();
+                    request.setEcuName(ecu.ecu);
+                    queue.add(new Work(ecu.ecu, request, GetDTCsResponse.class));
+                }
+            }
+            Vector<Integer> chunk = null;
+            for (int did : ecu.dids) {
+                DIDResult result = (DIDResult) cached(key(ecu.ecu, did), startMs);
+                if (result != null) {
+                    ecuReport.putDid(did, result);
+                    ecuReport.cached(1);
+                    continue;
+                }
+                if (chunk == null || chunk.size() == maxDidsPerRequest) {
+                    chunk = new Vector<Integer>();
+                    ReadDID request = new ReadDID();
+                    request.setEcuName(ecu.ecu);
+                    request.setDidLocation(chunk);
+                    queue.add(new Work(ecu.ecu, request, ReadDIDResponse.class));
+                }
+                chunk.add(did);
+            }
+        }
+
+        /**
+         * Sends queued requests until maxConcurrent are in flight, or completes the scan.
+         */
+        private void pump() {
+            while (true) {
+                Work work;
+                synchronized (this) {
+                    if (queue.isEmpty() || inFlight >= maxConcurrent) {
+                        if (queue.isEmpty() && inFlight == 0 && !finished) {
+                            finished = true;
+                            report.setElapsedMs(clock.now() - startMs);
+                            break;
+                        }
+                        return;
+                    }
+                    work = queue.removeFirst();
+                    inFlight++;
+                    report.ecu(work.ecu).sent(clock.now());
+                }
+                send(work);
+            }
+            if (listener != null) {
+                listener.onScanComplete(report);
+            }
+        }
+
+        private void send(final Work work) {
+            rpcClient.send(work.request, work.responseType).addCallback(new RpcCallback<RPCResponse>() {
+                @Override
+                public void onResponse(RPCResponse response) {
+                    done(work, response, null);
+                }
+
+                @Override
+                public void onFailure(Throwable cause) {
+                    done(work, null, cause);
+                }
+            });
+        }
+
+        private void done(Work work, RPCResponse response, Throwable cause) {
+            long now = clock.now();
+            synchronized (this) {
+                inFlight--;
+                DiagnosticReport.EcuReport ecuReport = report.ecu(work.ecu);
+                ecuReport.answered(now);
+                if (response == null) {
+                    ecuReport.addFailure(work.request.getFunctionName() + ": " + cause);
+                } else if (response.getResultCode() != Result.SUCCESS) {
+                    ecuReport.addFailure(work.request.getFunctionName() + ": " + response.getResultCode()
+                            + " " + response.getInfo());
+                } else if (response instanceof GetDTCsResponse) {
+                    GetDTCsResponse dtcResponse = (GetDTCsResponse) response;
+                    List<String> dtcs = dtcResponse.getDtc() != null
+                            ? new ArrayList<String>(dtcResponse.getDtc()) : Collections.<String>emptyList();
+                    ecuReport.setDtcs(dtcs, dtcResponse.getEcuHeader());
+                    cache(dtcKey(work.ecu), new CachedDtcs(dtcs, dtcResponse.getEcuHeader()), dtcTtlMs, now);
+                } else {
+                    Vector<DIDResult> results = ((ReadDIDResponse) response).getDidResult();
+                    if (results != null) {
+                        for (DIDResult result : results) {
+                            Integer did = result.getDidLocation();
+                            if (did == null) {
+                                continue;
+                            }
+                            ecuReport.putDid(did, result);
+                            if (result.getResultCode() == VehicleDataResultCode.SUCCESS) {
+                                cache(key(work.ecu, did), result, didTtlMs, now);
+                            }
+                        }
+                    }
+                }
+            }
+            pump();
+        }
+    }
+}
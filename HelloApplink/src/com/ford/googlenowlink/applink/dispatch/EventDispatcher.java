@@ -0,0 +1,234 @@
+package com.ford.googlenowlink.applink.dispatch;
+
+import com.ford.googlenowlink.applink.log.AppLog;
+import com.ford.googlenowlink.applink.metrics.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves proxy callbacks off the proxy's threads. Callbacks are handed to
+ * lanes: bounded queues drained on a shared pool, either one task at a time
+ * (callbacks whose order matters) or several at once (independent responses).
+ *
+ * A full lane blocks the proxy thread that dispatches to it rather than
+ * dropping or reordering callbacks. How long each callback takes to handle is
+ * recorded per callback name, and how long it waited per lane.
+ */
+public class EventDispatcher {
+
+    /**
+     * A bounded queue of callbacks with a limit on how many run at the same time.
+     */
+    public final class Lane {
+        private final String name;
+        private final int capacity;
+        private final int concurrency;
+        private final BlockingQueue<Task> queue;
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicLong dispatched = new AtomicLong();
+        private final AtomicLong saturated = new AtomicLong();
+        private final LatencyHistogram waitTimes = new LatencyHistogram();
+        private final Runnable drainer = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Task task;
+                    while ((task = queue.poll()) != null) {
+                        execute(task);
+                    }
+                } finally {
+                    running.decrementAndGet();
+                    schedule();
+                }
+            }
+        };
+
+        Lane(String name, int capacity, int concurrency) {
+            this.name = name;
+            this.capacity = capacity;
+            this.concurrency = concurrency;
+            this.queue = new ArrayBlockingQueue<Task>(capacity);
+        }
+
+        void submit(Task task) {
+            dispatched.incrementAndGet();
+            if (!queue.offer(task)) {
+                saturated.incrementAndGet();
+                boolean interrupted = false;
+                while (true) {
+                    try {
+                        queue.put(task);
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            while (!queue.isEmpty()) {
+                int current = running.get();
+                if (current >= concurrency) {
+                    // a running drainer picks the task up, or reschedules when it stops
+                    return;
+                }
+                if (running.compareAndSet(current, current + 1)) {
+                    pool.execute(drainer);
+                    return;
+                }
+            }
+        }
+
+        private void execute(Task task) {
+            long start = System.nanoTime();
+            waitTimes.record(start - task.enqueuedAt);
+            try {
+                task.runnable.run();
+            } catch (RuntimeException e) {
+                AppLog.e("Callback {} failed on lane {}", task.callback, name, e);
+            }
+            histogram(task.callback).record(System.nanoTime() - start);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getDepth() {
+            return queue.size();
+        }
+
+        public long getDispatchedCount() {
+            return dispatched.get();
+        }
+
+        /**
+         * Returns how often a dispatch had to wait because the lane was full.
+         */
+        public long getSaturatedCount() {
+            return saturated.get();
+        }
+
+        public LatencyHistogram getWaitTimes() {
+            return waitTimes;
+        }
+
+        @Override
+        public String toString() {
+            return name + "[capacity=" + capacity + ", concurrency=" + concurrency + ", depth=" + getDepth()
+                    + ", dispatched=" + dispatched.get() + ", saturated=" + saturated.get()
+                    + ", wait " + waitTimes + "]";
+        }
+    }
+
+    private static class Task {
+        final String callback;
+        final Runnable runnable;
+        final long enqueuedAt = System.nanoTime();
+
+        Task(String callback, Runnable runnable) {
+            this.callback = callback;
+            this.runnable = runnable;
+        }
+    }
+
+    private final ExecutorService pool;
+    private final List<Lane> lanes = Collections.synchronizedList(new ArrayList<Lane>());
+    private final ConcurrentHashMap<String, LatencyHistogram> handleTimes =
+            new ConcurrentHashMap<String, LatencyHistogram>();
+
+    public EventDispatcher() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        pool = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "EventDispatch-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Adds a lane.
+     * @param capacity    callbacks that may wait before dispatching blocks
+     * @param concurrency callbacks handled at the same time, 1 to keep them in order
+     */
+    public Lane addLane(String name, int capacity, int concurrency) {
+        if (capacity <= 0 || concurrency <= 0) {
+            throw new IllegalArgumentException("capacity and concurrency must be positive");
+        }
+        Lane lane = new Lane(name, capacity, concurrency);
+        lanes.add(lane);
+        return lane;
+    }
+
+    /**
+     * Queues a callback on a lane.
+     * @param callback name the handling time is recorded under
+     */
+    public void dispatch(Lane lane, String callback, Runnable runnable) {
+        lane.submit(new Task(callback, runnable));
+    }
+
+    /**
+     * Returns the handling time histogram of every callback seen so far, by name.
+     */
+    public Map<String, LatencyHistogram> getHandleTimes() {
+        return new TreeMap<String, LatencyHistogram>(handleTimes);
+    }
+
+    public List<Lane> getLanes() {
+        synchronized (lanes) {
+            return new ArrayList<Lane>(lanes);
+        }
+    }
+
+    /**
+     * Stops the dispatch threads; callbacks still queued are not handled.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private LatencyHistogram histogram(String callback) {
+        LatencyHistogram histogram = handleTimes.get(callback);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = handleTimes.putIfAbsent(callback, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("EventDispatcher");
+        for (Lane lane : getLanes()) {
+            sb.append("\n  ").append(lane);
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : getHandleTimes().entrySet()) {
+            sb.append("\n  ").append(entry.getKey()).append(": ").append(entry.getValue());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.ford.googlenowlink.applink.dispatch;
+
+import com.ford.googlenowlink.applink.connection.TaskScheduler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link TaskScheduler} whose tasks run on a lane, in order with the lane's
+ * callbacks: another scheduler keeps the time and the task is queued on the
+ * lane once it is due. Meant for a few long-lived tasks, each is wrapped once.
+ * A task that was already queued on the lane can't be cancelled.
+ */
+public class LaneTaskScheduler implements TaskScheduler {
+    private final EventDispatcher dispatcher;
+    private final EventDispatcher.Lane lane;
+    private final TaskScheduler timer;
+    // what the timer runs for each task; guarded by itself
+    private final Map<Runnable, Runnable> queuers = new HashMap<Runnable, Runnable>();
+
+    /**
+     * @param timer keeps the time and runs the delays, e.g. a HandlerTaskScheduler
+     */
+    public LaneTaskScheduler(EventDispatcher dispatcher, EventDispatcher.Lane lane, TaskScheduler timer) {
+        this.dispatcher = dispatcher;
+        this.lane = lane;
+        this.timer = timer;
+    }
+
+    @Override
+    public long now() {
+        return timer.now();
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayMs) {
+        timer.postDelayed(queuer(task), delayMs);
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        timer.cancel(queuer(task));
+    }
+
+    private Runnable queuer(final Runnable task) {
+        synchronized (queuers) {
+            Runnable queuer = queuers.get(task);
+            if (queuer == null) {
+                queuer = new Runnable() {
+                    @Override
+                    public void run() {
+                        dispatcher.dispatch(lane, "ScheduledTask", task);
+                    }
+                };
+                queuers.put(task, queuer);
+            }
+            return queuer;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.ford.googlenowlink.applink.dispatch;
+
+import com.ford.googlenowlink.applink.log.AppLog;
+import com.ford.googlenowlink.applink.rpc.AsyncRpcClient;
+import com.ford.syncV4.proxy.RPCResponse;
+import com.ford.syncV4.proxy.rpc.AddCommandResponse;
+import com.ford.syncV4.proxy.rpc.AddSubMenuResponse;
+import com.ford.syncV4.proxy.rpc.enums.Result;
+
+/**
+ * Completes requests from the proxy's response callbacks: each response is
+ * queued on the response lane and handed to the {@link AsyncRpcClient} there,
+ * which runs the request's callbacks.
+ */
+public class ResponseDispatcher {
+    private final EventDispatcher dispatcher;
+    private final EventDispatcher.Lane lane;
+    private final AsyncRpcClient rpcClient;
+
+    public ResponseDispatcher(EventDispatcher dispatcher, EventDispatcher.Lane lane, AsyncRpcClient rpcClient) {
+        this.dispatcher = dispatcher;
+        this.lane = lane;
+        this.rpcClient = rpcClient;
+    }
+
+    /**
+     * Completes the request matching this response on the response lane.
+     */
+    public void dispatch(final RPCResponse response) {
+        dispatcher.dispatch(lane, response.getClass().getSimpleName(), new Runnable() {
+            @Override
+            public void run() {
+                rpcClient.onResponse(response);
+            }
+        });
+    }
+
+    /**
+     * Completes an AddSubMenu; the menu registrar sends the submenu's commands from its callback.
+     */
+    public void onAddSubMenuResponse(AddSubMenuResponse response) {
+        dispatch(response);
+    }
+
+    public void onAddCommandResponse(final AddCommandResponse response) {
+        dispatcher.dispatch(lane, "AddCommandResponse", new Runnable() {
+            @Override
+            public void run() {
+                rpcClient.onResponse(response);
+                if (response.getResultCode() != Result.SUCCESS) {
+                    AppLog.w("AddCommand failed: {} {}", response.getResultCode(), response.getInfo());
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,199 @@
+package com.ford.googlenowlink.applink.display;
+
+import com.ford.googlenowlink.applink.connection.TaskScheduler;
+import com.ford.googlenowlink.applink.log.AppLog;
+import com.ford.googlenowlink.applink.rpc.AsyncRpcClient;
+import com.ford.googlenowlink.applink.rpc.RpcCallback;
+import com.ford.syncV4.proxy.rpc.Show;
+import com.ford.syncV4.proxy.rpc.ShowResponse;
+import com.ford.syncV4.proxy.rpc.enums.Result;
+import com.ford.syncV4.proxy.rpc.enums.TextAlignment;
+
+
+/**
+ * Keeps what the head unit's display shows and turns text updates into as
+ * few Show RPCs as possible.
+ *
+ * Updates issued within one frame window are collapsed into a single Show
+ * that carries only the fields that differ from what SYNC last acknowledged.
+ * At most one Show is in flight; updates that arrive meanwhile are sent
+ * once its ShowResponse confirms the previous state.
+ */
+public class DisplayCoalescer {
+    /** Default time updates are collected before a Show is sent. */
+    public static final long DEFAULT_FRAME_WINDOW_MS = 50;
+
+    private static class Fields {
+        static final Fields UNKNOWN = new Fields(null, null, null);
+
+        final String mainField1;
+        final String mainField2;
+        final TextAlignment alignment;
+
+        Fields(String mainField1, String mainField2, TextAlignment alignment) {
+            this.mainField1 = mainField1;
+            this.mainField2 = mainField2;
+            this.alignment = alignment;
+        }
+
+        /**
+         * Returns these fields with the non-null arguments applied.
+         */
+        Fields with(String mainField1, String mainField2, TextAlignment alignment) {
+            return new Fields(mainField1 != null ? mainField1 : this.mainField1,
+                    mainField2 != null ? mainField2 : this.mainField2,
+                    alignment != null ? alignment : this.alignment);
+        }
+
+        /**
+         * Returns a Show that changes the display from shown to these fields,
+         * or null if nothing differs.
+         */
+        Show diff(Fields shown) {
+            Show show = new Show();
+            boolean changed = false;
+            if (mainField1 != null && !mainField1.equals(shown.mainField1)) {
+                show.setMainField1(mainField1);
+                changed = true;
+            }
+            if (mainField2 != null && !mainField2.equals(shown.mainField2)) {
+                show.setMainField2(mainField2);
+                changed = true;
+            }
+            if (alignment != null && alignment != shown.alignment) {
+                show.setAlignment(alignment);
+                changed = true;
+            }
+            return changed ? show : null;
+        }
+    }
+
+    private final AsyncRpcClient rpcClient;
+    private final TaskScheduler scheduler;
+    private final long frameWindowMs;
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    // guarded by this
+    private Fields acknowledged = Fields.UNKNOWN;
+    private Fields desired = Fields.UNKNOWN;
+    private Fields inFlight;
+    private boolean flushScheduled;
+    private long updateCount;
+    private long sentCount;
+    private long skippedCount;
+
+    public DisplayCoalescer(AsyncRpcClient rpcClient, TaskScheduler scheduler) {
+        this(rpcClient, scheduler, DEFAULT_FRAME_WINDOW_MS);
+    }
+
+    /**
+     * @param frameWindowMs time updates are collected before a Show is sent
+     */
+    public DisplayCoalescer(AsyncRpcClient rpcClient, TaskScheduler scheduler, long frameWindowMs) {
+        this.rpcClient = rpcClient;
+        this.scheduler = scheduler;
+        this.frameWindowMs = frameWindowMs;
+    }
+
+    /**
+     * Sets the display text. Null arguments leave that field as it is.
+     */
+    public synchronized void update(String mainField1, String mainField2, TextAlignment alignment) {
+        updateCount++;
+        desired = desired.with(mainField1, mainField2, alignment);
+        // with a Show in flight, its response sends the next one
+        if (!flushScheduled && inFlight == null) {
+            flushScheduled = true;
+            scheduler.postDelayed(flushTask, frameWindowMs);
+        }
+    }
+
+    /**
+     * Forgets what the display shows, e.g. because the proxy was closed and the
+     * head unit clears it on the next registration. Pending updates are dropped.
+     */
+    public synchronized void reset() {
+        scheduler.cancel(flushTask);
+        flushScheduled = false;
+        acknowledged = Fields.UNKNOWN;
+        desired = Fields.UNKNOWN;
+        inFlight = null;
+    }
+
+    private void flush() {
+        final Fields sending;
+        Show show;
+        synchronized (this) {
+            flushScheduled = false;
+            if (inFlight != null) {
+                return;
+            }
+            show = desired.diff(acknowledged);
+            if (show == null) {
+                skippedCount++;
+                return;
+            }
+            sending = desired;
+            inFlight = sending;
+            sentCount++;
+        }
+        rpcClient.send(show).addCallback(new RpcCallback<ShowResponse>() {
+            @Override
+            public void onResponse(ShowResponse response) {
+                boolean success = response.getResultCode() == Result.SUCCESS;
+                if (!success) {
+                    AppLog.w("Show rejected: {} {}", response.getResultCode(), response.getInfo());
+                }
+                confirmed(sending, success);
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                AppLog.w("Show failed", cause);
+                confirmed(sending, false);
+            }
+        });
+    }
+
+    private synchronized void confirmed(Fields sent, boolean success) {
+        if (inFlight != sent) {
+            // reset since it was sent
+            return;
+        }
+        inFlight = null;
+        if (success) {
+            acknowledged = sent;
+        }
+        // send what changed meanwhile; a rejected state is not retried on its own
+        if (desired != sent && !flushScheduled) {
+            flushScheduled = true;
+            scheduler.postDelayed(flushTask, frameWindowMs);
+        }
+    }
+
+    public synchronized long getUpdateCount() {
+        return updateCount;
+    }
+
+    public synchronized long getSentCount() {
+        return sentCount;
+    }
+
+    /**
+     * Returns how often a frame ended without anything to send.
+     */
+    public synchronized long getSkippedCount() {
+        return skippedCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DisplayCoalescer[updates=" + updateCount + ", sent=" + sentCount
+                + ", skipped=" + skippedCount + "]";
+    }
+}
@@ -0,0 +1,438 @@
+package com.ford.googlenowlink.applink.files;
+
+import com.ford.googlenowlink.applink.connection.TaskScheduler;
+import com.ford.googlenowlink.applink.log.AppLog;
+import com.ford.googlenowlink.applink.rpc.AsyncRpcClient;
+import com.ford.googlenowlink.applink.rpc.RpcCallback;
+import com.ford.syncV4.proxy.rpc.ListFiles;
+import com.ford.syncV4.proxy.rpc.ListFilesResponse;
+import com.ford.syncV4.proxy.rpc.PutFile;
+import com.ford.syncV4.proxy.rpc.PutFileResponse;
+import com.ford.syncV4.proxy.rpc.enums.Result;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the app's {@link UploadAsset}s on the head unit, uploading only what
+ * is missing or changed.
+ *
+ * The first sync of a session asks for the head unit's files with ListFiles.
+ * A file is skipped if it is listed and the digest stored when it was last
+ * uploaded matches the local content. Everything else is sent with PutFile,
+ * large files in offset/length chunks; up to {@code window} chunks, across
+ * files, are outstanding at a time. Acknowledged progress is stored, so an
+ * upload cut off by a disconnect resumes where it stopped once the head
+ * unit still lists the partial file.
+ */
+public class FileUploadManager {
+    public static final String PREFERENCES = "uploads";
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+    public static final int DEFAULT_WINDOW = 4;
+
+    private static final String KEY_DIGEST = "digest.";
+    // digest and acknowledged length of an interrupted upload, "<digest>:<offset>"
+    private static final String KEY_PARTIAL = "partial.";
+
+    /**
+     * Notified when a sync has uploaded or skipped every asset.
+     */
+    public interface Listener {
+        void onFilesSynced(int uploaded, int upToDate, int failures, long bytesSent, long elapsedMs);
+    }
+
+    private final AsyncRpcClient rpcClient;
+    private final SharedPreferences preferences;
+    private final TaskScheduler clock;
+    private final int chunkSize;
+    private final int window;
+    private final Map<String, UploadAsset> assets = new LinkedHashMap<String, UploadAsset>();
+
+    // guarded by this
+    private Set<String> remoteFiles;
+    private Integer spaceAvailable;
+    private Sync sync;
+
+    public FileUploadManager(AsyncRpcClient rpcClient, SharedPreferences preferences, TaskScheduler clock) {
+        this(rpcClient, preferences, clock, DEFAULT_CHUNK_SIZE, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param chunkSize largest PutFile payload in bytes
+     * @param window    PutFile requests outstanding at a time
+     */
+    public FileUploadManager(AsyncRpcClient rpcClient, SharedPreferences preferences, TaskScheduler clock,
+                             int chunkSize, int window) {
+        if (chunkSize <= 0 || window <= 0) {
+            throw new IllegalArgumentException("chunkSize and window must be positive");
+        }
+        this.rpcClient = rpcClient;
+        this.preferences = preferences;
+        this.clock = clock;
+        this.chunkSize = chunkSize;
+        this.window = window;
+    }
+
+    public synchronized FileUploadManager add(UploadAsset asset) {
+        assets.put(asset.getSyncFileName(), asset);
+        return this;
+    }
+
+    /**
+     * Returns the names of the assets uploaded in this or an earlier session,
+     * for the registration snapshot.
+     */
+    public synchronized List<String> getUploadedFileNames() {
+        List<String> names = new ArrayList<String>();
+        for (String name : assets.keySet()) {
+            if (preferences.getString(KEY_DIGEST + name, null) != null) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Returns true if the head unit is known to hold the current version of the file.
+     */
+    public synchronized boolean isOnHeadUnit(String syncFileName) {
+        return remoteFiles != null && remoteFiles.contains(syncFileName)
+                && preferences.getString(KEY_DIGEST + syncFileName, null) != null;
+    }
+
+    /**
+     * Returns the free space the head unit reported in ListFiles, or null.
+     */
+    public synchronized Integer getSpaceAvailable() {
+        return spaceAvailable;
+    }
+
+    /**
+     * Brings the head unit's files up to date. Does nothing but return false
+     * while a sync is already running.
+     */
+    public boolean sync(Listener listener) {
+        final Sync next;
+        final boolean listFiles;
+        synchronized (this) {
+            if (sync != null) {
+                return false;
+            }
+            next = sync = new Sync(listener);
+            // ListFiles once per session, later syncs trust what they uploaded
+            listFiles = remoteFiles == null;
+            if (!listFiles) {
+                next.plan();
+            }
+        }
+        if (listFiles) {
+            listFiles(next);
+        } else {
+            next.pump();
+        }
+        return true;
+    }
+
+    /**
+     * Forgets what the head unit holds, e.g. after the proxy was closed; the
+     * next sync lists its files again. A running sync fails its outstanding
+     * chunks through the RPC client.
+     */
+    public synchronized void reset() {
+        remoteFiles = null;
+        spaceAvailable = null;
+    }
+
+    private void listFiles(final Sync next) {
+        rpcClient.send(new ListFiles(), ListFilesResponse.class).addCallback(new RpcCallback<ListFilesResponse>() {
+            @Override
+            public void onResponse(ListFilesResponse response) {
+                synchronized (FileUploadManager.this) {
+                    remoteFiles = new HashSet<String>();
+                    if (response.getResultCode() == Result.SUCCESS) {
+                        if (response.getFilenames() != null) {
+                            remoteFiles.addAll(response.getFilenames());
+                        }
+                        spaceAvailable = response.getSpaceAvailable();
+                    } else {
+                        // nothing is known to be there, so everything is sent
+                        AppLog.w("ListFiles failed: {} {}", response.getResultCode(), response.getInfo());
+                    }
+                    next.plan();
+                }
+                next.pump();
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                AppLog.w("ListFiles failed", cause);
+                synchronized (FileUploadManager.this) {
+                    next.failures = assets.size();
+                }
+                next.pump();
+            }
+        });
+    }
+
+    // commit() rather than apply(), which needs API 9 (minSdkVersion is 8); runs on the response lane
+    private void savePartial(Upload upload) {
+        if (upload.ackedOffset > 0) {
+            preferences.edit()
+                    .putString(KEY_PARTIAL + upload.asset.getSyncFileName(), upload.digest + ":" + upload.ackedOffset)
+                    .commit();
+        }
+    }
+
+    private void saveComplete(Upload upload) {
+        preferences.edit()
+                .putString(KEY_DIGEST + upload.asset.getSyncFileName(), upload.digest)
+                .remove(KEY_PARTIAL + upload.asset.getSyncFileName())
+                .commit();
+    }
+
+    /**
+     * Returns the length of an interrupted upload of this content to resume from, or 0.
+     */
+    private int resumeOffset(String name, String digest, int length) {
+        String partial = preferences.getString(KEY_PARTIAL + name, null);
+        if (partial == null || !remoteFiles.contains(name)) {
+            return 0;
+        }
+        int separator = partial.lastIndexOf(':');
+        if (separator < 0 || !partial.substring(0, separator).equals(digest)) {
+            return 0;
+        }
+        try {
+            int offset = Integer.parseInt(partial.substring(separator + 1));
+            // chunks are aligned, anything else was written with another chunk size
+            return offset > 0 && offset < length && offset % chunkSize == 0 ? offset : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * One file being sent, chunk by chunk.
+     */
+    private class Upload {
+        final UploadAsset asset;
+        final byte[] data;
+        final String digest;
+        final int startOffset;
+        // acknowledged chunks, indexed by offset / chunkSize
+        final boolean[] acked;
+        int nextOffset;
+        int ackedOffset;
+        int outstanding;
+        boolean failed;
+
+        Upload(UploadAsset asset, byte[] data, String digest, int startOffset) {
+            this.asset = asset;
+            this.data = data;
+            this.digest = digest;
+            this.startOffset = startOffset;
+            acked = new boolean[(data.length + chunkSize - 1) / chunkSize];
+            nextOffset = startOffset;
+            ackedOffset = startOffset;
+        }
+
+        boolean hasMoreChunks() {
+            return !failed && nextOffset < data.length;
+        }
+
+        boolean isDone() {
+            return outstanding == 0 && (failed || ackedOffset >= data.length);
+        }
+
+        PutFile nextChunk() {
+            int offset = nextOffset;
+            int length = Math.min(chunkSize, data.length - offset);
+            nextOffset += length;
+            PutFile putFile = new PutFile();
+            putFile.setSyncFileName(asset.getSyncFileName());
+            putFile.setFileType(asset.getFileType());
+            putFile.setPersistentFile(asset.isPersistent());
+            if (length == data.length) {
+                putFile.setBulkData(data);
+            } else {
+                // Arrays.copyOfRange needs API 9
+                byte[] chunk = new byte[length];
+                System.arraycopy(data, offset, chunk, 0, length);
+                putFile.setBulkData(chunk);
+                putFile.setOffset(offset);
+                // the first chunk announces the size of the whole file
+                putFile.setLength(offset == 0 ? data.length : length);
+            }
+            outstanding++;
+            return putFile;
+        }
+
+        void onAcked(int offset) {
+            outstanding--;
+            acked[offset / chunkSize] = true;
+            while (ackedOffset < data.length && acked[ackedOffset / chunkSize]) {
+                ackedOffset = Math.min(ackedOffset + chunkSize, data.length);
+            }
+        }
+    }
+
+    private class Sync {
+        final Listener listener;
+        final long startMs = clock.now();
+        // guarded by FileUploadManager.this
+        final LinkedList<Upload> uploads = new LinkedList<Upload>();
+        int outstanding;
+        int uploaded;
+        int upToDate;
+        int failures;
+        long bytesSent;
+
+        Sync(Listener listener) {
+            this.listener = listener;
+        }
+
+        void plan() {
+            for (UploadAsset asset : assets.values()) {
+                String name = asset.getSyncFileName();
+                byte[] data;
+                try {
+                    data = asset.load();
+                } catch (IOException e) {
+                    AppLog.w("Can't read {}", name, e);
+                    failures++;
+                    continue;
+                }
+                String digest = UploadAsset.digest(data);
+                if (remoteFiles.contains(name) && digest.equals(preferences.getString(KEY_DIGEST + name, null))) {
+                    upToDate++;
+                    continue;
+                }
+                int offset = resumeOffset(name, digest, data.length);
+                if (offset > 0) {
+                    AppLog.i("Resuming upload of {} at {} of {} bytes", name, offset, data.length);
+                }
+                uploads.add(new Upload(asset, data, digest, offset));
+            }
+            if (spaceAvailable != null) {
+                long needed = 0;
+                for (Upload upload : uploads) {
+                    needed += upload.data.length - upload.startOffset;
+                }
+                if (needed > spaceAvailable) {
+                    AppLog.w("Uploading {} bytes, head unit has {} free", needed, spaceAvailable.longValue());
+                }
+            }
+        }
+
+        /**
+         * Sends chunks until the window is full, or completes the sync.
+         */
+        void pump() {
+            while (true) {
+                final Upload upload;
+                final PutFile chunk;
+                final int offset;
+                synchronized (FileUploadManager.this) {
+                    Upload next = null;
+                    if (outstanding < window) {
+                        for (Upload candidate : uploads) {
+                            if (candidate.hasMoreChunks()) {
+                                next = candidate;
+                                break;
+                            }
+                        }
+                    }
+                    if (next == null) {
+                        if (outstanding > 0 || sync != this) {
+                            return;
+                        }
+                        sync = null;
+                        break;
+                    }
+                    upload = next;
+                    offset = upload.nextOffset;
+                    chunk = upload.nextChunk();
+                    outstanding++;
+                }
+                send(upload, chunk, offset, upload.nextOffset - offset);
+            }
+            long elapsedMs = clock.now() - startMs;
+            if (AppLog.isLoggable(Log.INFO)) {
+                AppLog.i("Files synced in " + elapsedMs + " ms: " + uploaded + " uploaded, "
+                        + upToDate + " up to date, " + failures + " failed, " + bytesSent + " bytes sent");
+            }
+            if (listener != null) {
+                listener.onFilesSynced(uploaded, upToDate, failures, bytesSent, elapsedMs);
+            }
+        }
+
+        private void send(final Upload upload, PutFile chunk, final int offset, final int length) {
+            rpcClient.send(chunk, PutFileResponse.class).addCallback(new RpcCallback<PutFileResponse>() {
+                @Override
+                public void onResponse(PutFileResponse response) {
+                    if (response.getResultCode() == Result.SUCCESS) {
+                        acked(upload, offset, length);
+                    } else {
+                        failed(upload, response.getResultCode() + " " + response.getInfo(), null);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable cause) {
+                    failed(upload, null, cause);
+                }
+            });
+        }
+
+        private void acked(Upload upload, int offset, int length) {
+            synchronized (FileUploadManager.this) {
+                outstanding--;
+                bytesSent += length;
+                upload.onAcked(offset);
+                if (upload.isDone()) {
+                    finish(upload);
+                }
+            }
+            pump();
+        }
+
+        private void failed(Upload upload, String info, Throwable cause) {
+            synchronized (FileUploadManager.this) {
+                outstanding--;
+                upload.outstanding--;
+                if (!upload.failed) {
+                    upload.failed = true;
+                    AppLog.w("PutFile {} failed: {}", upload.asset.getSyncFileName(), info != null ? info : cause);
+                }
+                if (upload.isDone()) {
+                    finish(upload);
+                }
+            }
+            pump();
+        }
+
+        private void finish(Upload upload) {
+            uploads.remove(upload);
+            String name = upload.asset.getSyncFileName();
+            if (upload.failed) {
+                failures++;
+                savePartial(upload);
+                return;
+            }
+            uploaded++;
+            saveComplete(upload);
+            if (remoteFiles != null) {
+                remoteFiles.add(name);
+            }
+        }
+    }
+}
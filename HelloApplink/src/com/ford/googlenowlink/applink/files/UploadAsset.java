@@ -0,0 +1,120 @@
+package com.ford.googlenowlink.applink.files;
+
+import com.ford.syncV4.proxy.rpc.enums.FileType;
+
+import android.content.res.Resources;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A local file the app keeps on the head unit, such as its icon.
+ *
+ * The content is loaded and hashed on demand; the SHA-1 digest identifies
+ * the version that was uploaded, so a file is only sent again after it
+ * changed.
+ */
+public class UploadAsset {
+
+    /**
+     * Supplies the content of an asset.
+     */
+    public interface Source {
+        byte[] load() throws IOException;
+    }
+
+    private final String syncFileName;
+    private final FileType fileType;
+    private final boolean persistent;
+    private final Source source;
+
+    public UploadAsset(String syncFileName, FileType fileType, boolean persistent, Source source) {
+        this.syncFileName = syncFileName;
+        this.fileType = fileType;
+        this.persistent = persistent;
+        this.source = source;
+    }
+
+    /**
+     * An asset read from a raw or drawable resource, e.g. {@code R.drawable.ic_launcher}.
+     */
+    public static UploadAsset fromResource(final Resources resources, final int id, String syncFileName,
+                                           FileType fileType) {
+        return new UploadAsset(syncFileName, fileType, true, new Source() {
+            @Override
+            public byte[] load() throws IOException {
+                InputStream in = resources.openRawResource(id);
+                if (in == null) {
+                    throw new IOException("No resource " + id);
+                }
+                return readFully(in);
+            }
+        });
+    }
+
+    public static UploadAsset fromFile(final File file, String syncFileName, FileType fileType, boolean persistent) {
+        return new UploadAsset(syncFileName, fileType, persistent, new Source() {
+            @Override
+            public byte[] load() throws IOException {
+                return readFully(new FileInputStream(file));
+            }
+        });
+    }
+
+    public String getSyncFileName() {
+        return syncFileName;
+    }
+
+    public FileType getFileType() {
+        return fileType;
+    }
+
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    public byte[] load() throws IOException {
+        return source.load();
+    }
+
+    /**
+     * Returns the hex SHA-1 digest of the content.
+     */
+    static String digest(byte[] data) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(data);
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return syncFileName;
+    }
+}
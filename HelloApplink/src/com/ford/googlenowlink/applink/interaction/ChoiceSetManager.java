@@ -0,0 +1,403 @@
+package com.ford.googlenowlink.applink.interaction;
+
+import com.ford.googlenowlink.applink.log.AppLog;
+import com.ford.googlenowlink.applink.rpc.AsyncRpcClient;
+import com.ford.googlenowlink.applink.rpc.RpcCallback;
+import com.ford.syncV4.proxy.rpc.CreateInteractionChoiceSet;
+import com.ford.syncV4.proxy.rpc.CreateInteractionChoiceSetResponse;
+import com.ford.syncV4.proxy.rpc.DeleteInteractionChoiceSet;
+import com.ford.syncV4.proxy.rpc.DeleteInteractionChoiceSetResponse;
+import com.ford.syncV4.proxy.rpc.PerformInteraction;
+import com.ford.syncV4.proxy.rpc.PerformInteractionResponse;
+import com.ford.syncV4.proxy.rpc.enums.Result;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Keeps the app's interaction choice sets on the head unit, so that an
+ * interaction costs a single PerformInteraction round trip.
+ *
+ * Sets defined for preloading are created in the background once the app is
+ * set up. A set that is not on the head unit when an interaction needs it is
+ * created first, and the PerformInteraction follows its response: the send
+ * queue sends choice sets at a lower priority, so the two can't be pipelined.
+ * Sets stay on the head unit across interactions until the connection is
+ * lost. When a new set would exceed the head unit budget, the least recently
+ * used sets that no interaction is using are deleted to make room.
+ *
+ * A CreateInteractionChoiceSet answered with INVALID_ID means the head unit
+ * already holds a set with that ID, e.g. one restored by resumption, and
+ * counts as created.
+ */
+public class ChoiceSetManager {
+    /** Choice sets kept on the head unit at a time. */
+    public static final int DEFAULT_MAX_CHOICE_SETS = 16;
+    /** Choices kept on the head unit at a time, across all sets. */
+    public static final int DEFAULT_MAX_CHOICES = 100;
+    // the response to PerformInteraction arrives after the user chose or the interaction timed out
+    private static final long RESPONSE_MARGIN_MS = 5000;
+
+    /**
+     * A CreateInteractionChoiceSet in flight, with the interactions waiting for it.
+     */
+    private static class Creation {
+        final Entry entry;
+        final List<Interaction> waiters = new ArrayList<Interaction>(2);
+
+        Creation(Entry entry) {
+            this.entry = entry;
+        }
+    }
+
+    private static class Entry {
+        final ChoiceSetModel model;
+        final boolean preload;
+        // guarded by the manager
+        boolean created;
+        Creation creation;
+        // interactions in flight that use the set, which is not evicted meanwhile
+        int inUse;
+
+        Entry(ChoiceSetModel model, boolean preload) {
+            this.model = model;
+            this.preload = preload;
+        }
+
+        int size() {
+            return model.getChoices().size();
+        }
+    }
+
+    private final AsyncRpcClient rpcClient;
+    private final int maxChoiceSets;
+    private final int maxChoices;
+
+    // guarded by this
+    private final Map<Integer, Entry> entries = new LinkedHashMap<Integer, Entry>();
+    // sets created or being created, least recently used first
+    private final LinkedHashMap<Integer, Entry> resident = new LinkedHashMap<Integer, Entry>(16, 0.75f, true);
+    private int residentChoices;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ChoiceSetManager(AsyncRpcClient rpcClient) {
+        this(rpcClient, DEFAULT_MAX_CHOICE_SETS, DEFAULT_MAX_CHOICES);
+    }
+
+    /**
+     * @param maxChoiceSets choice sets kept on the head unit at a time
+     * @param maxChoices    choices kept on the head unit at a time, across all sets
+     */
+    public ChoiceSetManager(AsyncRpcClient rpcClient, int maxChoiceSets, int maxChoices) {
+        if (maxChoiceSets <= 0 || maxChoices <= 0) {
+            throw new IllegalArgumentException("maxChoiceSets and maxChoices must be positive");
+        }
+        this.rpcClient = rpcClient;
+        this.maxChoiceSets = maxChoiceSets;
+        this.maxChoices = maxChoices;
+    }
+
+    /**
+     * Adds a choice set the app's interactions can use.
+     * @param preload create the set in the background by {@link #preload()}
+     */
+    public synchronized ChoiceSetManager define(ChoiceSetModel model, boolean preload) {
+        if (entries.containsKey(model.getChoiceSetId())) {
+            throw new IllegalArgumentException("Duplicate choice set " + model.getChoiceSetId());
+        }
+        if (model.getChoices().size() > maxChoices) {
+            throw new IllegalArgumentException("Choice set " + model.getChoiceSetId() + " has more than "
+                    + maxChoices + " choices");
+        }
+        for (ChoiceSetModel.ChoiceItem choice : model.getChoices()) {
+            for (Entry entry : entries.values()) {
+                for (ChoiceSetModel.ChoiceItem other : entry.model.getChoices()) {
+                    if (other.choiceId == choice.choiceId) {
+                        throw new IllegalArgumentException("Choice " + choice.choiceId + " is already in choice set "
+                                + entry.model.getChoiceSetId());
+                    }
+                }
+            }
+        }
+        entries.put(model.getChoiceSetId(), new Entry(model, preload));
+        return this;
+    }
+
+    /**
+     * Creates the sets defined for preloading that are not on the head unit,
+     * as far as they fit without evicting anything.
+     * @return the number of sets being created
+     */
+    public int preload() {
+        List<Creation> creates = new ArrayList<Creation>();
+        synchronized (this) {
+            for (Entry entry : entries.values()) {
+                if (entry.preload && !entry.created && entry.creation == null
+                        && resident.size() < maxChoiceSets && residentChoices + entry.size() <= maxChoices) {
+                    creates.add(startCreation(entry));
+                }
+            }
+        }
+        sendCreations(creates);
+        return creates.size();
+    }
+
+    /**
+     * Performs an interaction over the given choice sets, creating those the
+     * head unit does not hold first. The choice set ID list and the timeout
+     * of the request are set here.
+     * @param timeoutMs how long the head unit waits for the user
+     */
+    public void performInteraction(PerformInteraction request, int timeoutMs,
+                                   RpcCallback<PerformInteractionResponse> callback, int... choiceSetIds) {
+        Interaction interaction;
+        boolean hit;
+        List<Entry> deletes = new ArrayList<Entry>();
+        List<Creation> creates = new ArrayList<Creation>();
+        synchronized (this) {
+            List<Entry> used = new ArrayList<Entry>(choiceSetIds.length);
+            for (int choiceSetId : choiceSetIds) {
+                Entry entry = entries.get(choiceSetId);
+                if (entry == null) {
+                    throw new IllegalArgumentException("Unknown choice set " + choiceSetId);
+                }
+                used.add(entry);
+            }
+            interaction = new Interaction(request, timeoutMs, callback, used);
+            for (Entry entry : used) {
+                entry.inUse++;
+                // a lookup makes the set the most recently used
+                resident.get(entry.model.getChoiceSetId());
+            }
+            for (Entry entry : used) {
+                if (entry.created) {
+                    continue;
+                }
+                if (entry.creation == null) {
+                    makeRoom(entry, deletes);
+                    creates.add(startCreation(entry));
+                }
+                entry.creation.waiters.add(interaction);
+                interaction.pending++;
+            }
+            hit = interaction.pending == 0;
+            if (hit) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        sendDeletions(deletes);
+        sendCreations(creates);
+        if (hit) {
+            interaction.send();
+        }
+    }
+
+    /**
+     * Forgets which sets the head unit holds, e.g. after the proxy was closed.
+     * Interactions waiting for a set fail once its request fails.
+     */
+    public synchronized void reset() {
+        for (Entry entry : entries.values()) {
+            entry.created = false;
+            entry.creation = null;
+        }
+        resident.clear();
+        residentChoices = 0;
+    }
+
+    /**
+     * Returns true if the head unit is known to hold the choice set.
+     */
+    public synchronized boolean isOnHeadUnit(int choiceSetId) {
+        Entry entry = entries.get(choiceSetId);
+        return entry != null && entry.created;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Deletes least recently used sets that no interaction is using until the
+     * entry fits the budget, or nothing more can be deleted.
+     */
+    private void makeRoom(Entry incoming, List<Entry> deletes) {
+        Iterator<Entry> it = resident.values().iterator();
+        while ((resident.size() >= maxChoiceSets || residentChoices + incoming.size() > maxChoices) && it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.created && entry.inUse == 0) {
+                it.remove();
+                residentChoices -= entry.size();
+                entry.created = false;
+                evictions++;
+                deletes.add(entry);
+            }
+        }
+        if (resident.size() >= maxChoiceSets || residentChoices + incoming.size() > maxChoices) {
+            AppLog.w("Choice set budget exceeded by choice set {}, all sets are in use",
+                    incoming.model.getChoiceSetId());
+        }
+    }
+
+    private Creation startCreation(Entry entry) {
+        entry.creation = new Creation(entry);
+        resident.put(entry.model.getChoiceSetId(), entry);
+        residentChoices += entry.size();
+        return entry.creation;
+    }
+
+    private void sendDeletions(List<Entry> deletes) {
+        for (Entry entry : deletes) {
+            final int choiceSetId = entry.model.getChoiceSetId();
+            DeleteInteractionChoiceSet msg = new DeleteInteractionChoiceSet();
+            msg.setInteractionChoiceSetID(choiceSetId);
+            rpcClient.send(msg, DeleteInteractionChoiceSetResponse.class).addCallback(
+                    new RpcCallback<DeleteInteractionChoiceSetResponse>() {
+                @Override
+                public void onResponse(DeleteInteractionChoiceSetResponse response) {
+                    if (response.getResultCode() != Result.SUCCESS) {
+                        AppLog.w("DeleteInteractionChoiceSet {} failed: {}", choiceSetId, response.getResultCode());
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable cause) {
+                    AppLog.w("DeleteInteractionChoiceSet {} failed", choiceSetId, cause);
+                }
+            });
+        }
+    }
+
+    private void sendCreations(List<Creation> creates) {
+        for (final Creation creation : creates) {
+            final Entry entry = creation.entry;
+            CreateInteractionChoiceSet msg = new CreateInteractionChoiceSet();
+            msg.setInteractionChoiceSetID(entry.model.getChoiceSetId());
+            msg.setChoiceSet(entry.model.toChoices());
+            rpcClient.send(msg, CreateInteractionChoiceSetResponse.class).addCallback(
+                    new RpcCallback<CreateInteractionChoiceSetResponse>() {
+                @Override
+                public void onResponse(CreateInteractionChoiceSetResponse response) {
+                    Result result = response.getResultCode();
+                    if (result != Result.SUCCESS && result != Result.INVALID_ID) {
+                        AppLog.w("CreateInteractionChoiceSet {} failed: {} {}", entry.model.getChoiceSetId(),
+                                result, response.getInfo());
+                    }
+                    onCreated(creation, result == Result.SUCCESS || result == Result.INVALID_ID);
+                }
+
+                @Override
+                public void onFailure(Throwable cause) {
+                    AppLog.w("CreateInteractionChoiceSet {} failed", entry.model.getChoiceSetId(), cause);
+                    onCreated(creation, false);
+                }
+            });
+        }
+    }
+
+    private void onCreated(Creation creation, boolean created) {
+        Entry entry = creation.entry;
+        List<Interaction> ready = new ArrayList<Interaction>(creation.waiters.size());
+        synchronized (this) {
+            // a reset in the meantime has forgotten this request
+            if (entry.creation == creation) {
+                entry.creation = null;
+                if (created) {
+                    entry.created = true;
+                } else if (resident.remove(entry.model.getChoiceSetId()) != null) {
+                    residentChoices -= entry.size();
+                }
+            }
+            for (Interaction interaction : creation.waiters) {
+                if (--interaction.pending == 0) {
+                    ready.add(interaction);
+                }
+            }
+        }
+        for (Interaction interaction : ready) {
+            interaction.send();
+        }
+    }
+
+    private class Interaction {
+        final PerformInteraction request;
+        final int timeoutMs;
+        final RpcCallback<PerformInteractionResponse> callback;
+        final List<Entry> used;
+        // sets still being created, guarded by the manager
+        int pending;
+
+        Interaction(PerformInteraction request, int timeoutMs, RpcCallback<PerformInteractionResponse> callback,
+                    List<Entry> used) {
+            this.request = request;
+            this.timeoutMs = timeoutMs;
+            this.callback = callback;
+            this.used = used;
+        }
+
+        /**
+         * Sends the PerformInteraction over the sets the head unit holds.
+         */
+        void send() {
+            Vector<Integer> choiceSetIds = new Vector<Integer>(used.size());
+            synchronized (ChoiceSetManager.this) {
+                for (Entry entry : used) {
+                    if (entry.created) {
+                        choiceSetIds.add(entry.model.getChoiceSetId());
+                    }
+                }
+            }
+            if (choiceSetIds.isEmpty() && !used.isEmpty()) {
+                release();
+                callback.onFailure(new IllegalStateException("None of the interaction's choice sets was created"));
+                return;
+            }
+            request.setInteractionChoiceSetIDList(choiceSetIds);
+            request.setTimeout(timeoutMs);
+            rpcClient.send(request, PerformInteractionResponse.class, timeoutMs + RESPONSE_MARGIN_MS).addCallback(
+                    new RpcCallback<PerformInteractionResponse>() {
+                @Override
+                public void onResponse(PerformInteractionResponse response) {
+                    release();
+                    callback.onResponse(response);
+                }
+
+                @Override
+                public void onFailure(Throwable cause) {
+                    release();
+                    callback.onFailure(cause);
+                }
+            });
+        }
+
+        void release() {
+            synchronized (ChoiceSetManager.this) {
+                for (Entry entry : used) {
+                    entry.inUse--;
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ChoiceSetManager[sets=" + resident.size() + "/" + maxChoiceSets + ", choices=" + residentChoices
+                + "/" + maxChoices + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+}
@@ -0,0 +1,72 @@
+package com.ford.googlenowlink.applink.interaction;
+
+import com.ford.syncV4.proxy.rpc.Choice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Declarative description of an interaction choice set: the choices a
+ * PerformInteraction offers, with their voice recognition synonyms.
+ */
+public class ChoiceSetModel {
+    private final int choiceSetId;
+    private final List<ChoiceItem> choices = new ArrayList<ChoiceItem>();
+
+    public ChoiceSetModel(int choiceSetId) {
+        this.choiceSetId = choiceSetId;
+    }
+
+    /**
+     * Adds a choice. Choice IDs must be unique across all of the app's choice sets.
+     * @param vrCommands voice recognition synonyms that select the choice
+     */
+    public ChoiceSetModel addChoice(int choiceId, String menuName, String... vrCommands) {
+        for (ChoiceItem choice : choices) {
+            if (choice.choiceId == choiceId) {
+                throw new IllegalArgumentException("Duplicate choice " + choiceId);
+            }
+        }
+        Vector<String> vr = new Vector<String>(vrCommands.length);
+        Collections.addAll(vr, vrCommands);
+        choices.add(new ChoiceItem(choiceId, menuName, vr));
+        return this;
+    }
+
+    public int getChoiceSetId() {
+        return choiceSetId;
+    }
+
+    public List<ChoiceItem> getChoices() {
+        return Collections.unmodifiableList(choices);
+    }
+
+    /**
+     * Returns the choices as sent in CreateInteractionChoiceSet.
+     */
+    Vector<Choice> toChoices() {
+        Vector<Choice> result = new Vector<Choice>(choices.size());
+        for (ChoiceItem item : choices) {
+            Choice choice = new Choice();
+            choice.setChoiceID(item.choiceId);
+            choice.setMenuName(item.menuName);
+            choice.setVrCommands(item.vrCommands);
+            result.add(choice);
+        }
+        return result;
+    }
+
+    public static class ChoiceItem {
+        public final int choiceId;
+        public final String menuName;
+        public final Vector<String> vrCommands;
+
+        ChoiceItem(int choiceId, String menuName, Vector<String> vrCommands) {
+            this.choiceId = choiceId;
+            this.menuName = menuName;
+            this.vrCommands = vrCommands;
+        }
+    }
+}
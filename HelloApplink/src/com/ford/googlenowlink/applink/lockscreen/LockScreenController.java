@@ -0,0 +1,214 @@
+package com.ford.googlenowlink.applink.lockscreen;
+
+import com.ford.googlenowlink.applink.connection.TaskScheduler;
+import com.ford.googlenowlink.applink.metrics.LatencyHistogram;
+import com.ford.syncV4.proxy.rpc.enums.LockScreenStatus;
+
+/**
+ * Decides when the lock screen is shown, independent of how it is drawn.
+ *
+ * REQUIRED shows the lock screen at once. OFF and OPTIONAL only hide it
+ * after it stayed unrequired for {@code clearDelayMs}, so a driver
+ * distraction state that flaps while driving doesn't tear the lock screen
+ * down and bring it back again. While connected but unlocked the surface is
+ * asked to prepare itself, so the first REQUIRED only has to make it visible.
+ *
+ * All methods may be called from any thread; the {@link Surface} is called
+ * with the controller's lock held and must hand the work to the UI thread.
+ */
+public class LockScreenController {
+    public static final long DEFAULT_CLEAR_DELAY_MS = 1500;
+
+    /**
+     * Draws the lock screen.
+     */
+    public interface Surface {
+        /**
+         * Builds the lock screen without showing it, if there is somewhere to show it.
+         */
+        void prepare();
+
+        /**
+         * Shows the lock screen, or does nothing if the app is not in the
+         * foreground; {@link LockScreenController#onSurfaceAvailable()} then
+         * shows it later. Calls {@link LockScreenController#onFrameShown()}
+         * once the lock screen is drawn.
+         */
+        void show();
+
+        void hide();
+    }
+
+    /**
+     * Notified, with the controller's lock held, when the lock screen goes up or away.
+     */
+    public interface Listener {
+        void onLockChanged(boolean locked);
+    }
+
+    private final TaskScheduler scheduler;
+    private final long clearDelayMs;
+    private final LatencyHistogram showLatency = new LatencyHistogram();
+    private Surface surface;
+    private Listener listener;
+
+    // guarded by this
+    private boolean locked;
+    private boolean connected;
+    private boolean hidePending;
+    private long showRequestedNanos;
+    private long showCount;
+    private long flapCount;
+
+    private final Runnable hideRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (LockScreenController.this) {
+                if (!hidePending) {
+                    return;
+                }
+                hidePending = false;
+                setLocked(false);
+                showRequestedNanos = 0;
+                if (surface != null) {
+                    surface.hide();
+                }
+            }
+        }
+    };
+
+    public LockScreenController(TaskScheduler scheduler) {
+        this(scheduler, DEFAULT_CLEAR_DELAY_MS);
+    }
+
+    /**
+     * @param clearDelayMs how long the lock screen must stay unrequired before it is hidden
+     */
+    public LockScreenController(TaskScheduler scheduler, long clearDelayMs) {
+        this.scheduler = scheduler;
+        this.clearDelayMs = clearDelayMs;
+    }
+
+    public synchronized void setSurface(Surface surface) {
+        this.surface = surface;
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Applies an OnLockScreenStatus notification.
+     */
+    public synchronized void onStatus(LockScreenStatus status) {
+        connected = true;
+        if (status == LockScreenStatus.REQUIRED) {
+            if (hidePending) {
+                // back to REQUIRED before the lock screen went away: keep it
+                hidePending = false;
+                scheduler.cancel(hideRunnable);
+                flapCount++;
+                return;
+            }
+            if (locked) {
+                return;
+            }
+            setLocked(true);
+            showCount++;
+            showRequestedNanos = System.nanoTime();
+            if (surface != null) {
+                surface.show();
+            }
+        } else if (locked) {
+            if (!hidePending) {
+                hidePending = true;
+                scheduler.postDelayed(hideRunnable, clearDelayMs);
+            }
+        } else if (surface != null) {
+            surface.prepare();
+        }
+    }
+
+    /**
+     * Hides the lock screen at once, e.g. when the proxy is closed.
+     */
+    public synchronized void clear() {
+        if (hidePending) {
+            hidePending = false;
+            scheduler.cancel(hideRunnable);
+        }
+        connected = false;
+        showRequestedNanos = 0;
+        if (locked) {
+            setLocked(false);
+            if (surface != null) {
+                surface.hide();
+            }
+        }
+    }
+
+    private void setLocked(boolean locked) {
+        this.locked = locked;
+        if (listener != null) {
+            listener.onLockChanged(locked);
+        }
+    }
+
+    /**
+     * Called when one of the app's activities came to the foreground.
+     */
+    public synchronized void onSurfaceAvailable() {
+        if (surface == null) {
+            return;
+        }
+        if (locked) {
+            // measured from here, the time in the background is not the lock screen's
+            showRequestedNanos = System.nanoTime();
+            surface.show();
+        } else if (connected) {
+            surface.prepare();
+        }
+    }
+
+    /**
+     * Called by the surface when the lock screen was drawn after {@link Surface#show()}.
+     */
+    public synchronized void onFrameShown() {
+        if (showRequestedNanos != 0) {
+            showLatency.record(System.nanoTime() - showRequestedNanos);
+            showRequestedNanos = 0;
+        }
+    }
+
+    /**
+     * Returns true while the lock screen should be up.
+     */
+    public synchronized boolean isLocked() {
+        return locked;
+    }
+
+    /**
+     * Returns how long it took from REQUIRED to the lock screen being drawn.
+     */
+    public LatencyHistogram getShowLatency() {
+        return showLatency;
+    }
+
+    public synchronized long getShowCount() {
+        return showCount;
+    }
+
+    /**
+     * Returns how often the lock screen was kept up because it was required
+     * again within the clear delay.
+     */
+    public synchronized long getFlapCount() {
+        return flapCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LockScreenController[locked=" + locked + ", shows=" + showCount + ", flaps=" + flapCount
+                + ", showLatency " + showLatency + "]";
+    }
+}
@@ -0,0 +1,142 @@
+package com.ford.googlenowlink.applink.lockscreen;
+
+import com.ford.googlenowlink.R;
+import com.ford.googlenowlink.applink.AppLinkActivity;
+import com.ford.googlenowlink.applink.AppLinkApplication;
+import com.ford.googlenowlink.applink.AppLinkService;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+
+/**
+ * Draws the lock screen as a full-screen view on top of the app's foreground activity.
+ *
+ * The layout is inflated once per activity, the first time the lock screen
+ * may be needed, and afterwards only toggled between visible and gone, so
+ * showing it costs no activity start and no inflation. All view work runs on
+ * the handler's (main) thread.
+ */
+public class LockScreenOverlay implements LockScreenController.Surface {
+    private final LockScreenController controller;
+    private final Handler handler;
+
+    // touched on the main thread only
+    private AppLinkActivity host;
+    private View view;
+
+    private final Runnable prepareRunnable = new Runnable() {
+        @Override
+        public void run() {
+            AppLinkActivity activity = foregroundActivity();
+            if (activity != null) {
+                attach(activity);
+            }
+        }
+    };
+
+    private final Runnable showRunnable = new Runnable() {
+        @Override
+        public void run() {
+            AppLinkActivity activity = foregroundActivity();
+            if (activity == null) {
+                // shown when an activity of the app resumes
+                return;
+            }
+            attach(activity);
+            final ViewTreeObserver observer = view.getViewTreeObserver();
+            observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+                @Override
+                public boolean onPreDraw() {
+                    observer.removeOnPreDrawListener(this);
+                    controller.onFrameShown();
+                    return true;
+                }
+            });
+            view.setVisibility(View.VISIBLE);
+            view.bringToFront();
+        }
+    };
+
+    private final Runnable hideRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (view != null) {
+                view.setVisibility(View.GONE);
+            }
+        }
+    };
+
+    /**
+     * @param handler handler of the main thread
+     */
+    public LockScreenOverlay(LockScreenController controller, Handler handler) {
+        this.controller = controller;
+        this.handler = handler;
+    }
+
+    @Override
+    public void prepare() {
+        handler.post(prepareRunnable);
+    }
+
+    @Override
+    public void show() {
+        handler.post(showRunnable);
+    }
+
+    @Override
+    public void hide() {
+        handler.post(hideRunnable);
+    }
+
+    /**
+     * Drops the view of an activity that is being destroyed. Main thread only.
+     */
+    public void detach(AppLinkActivity activity) {
+        if (host == activity) {
+            host = null;
+            view = null;
+        }
+    }
+
+    private static AppLinkActivity foregroundActivity() {
+        Activity activity = AppLinkApplication.getCurrentActivity();
+        // only lock the app while it is on top, not other apps the user switched to
+        if (activity instanceof AppLinkActivity && ((AppLinkActivity) activity).isActivityonTop()) {
+            return (AppLinkActivity) activity;
+        }
+        return null;
+    }
+
+    private void attach(AppLinkActivity activity) {
+        if (host == activity && view != null) {
+            return;
+        }
+        View lockScreen = activity.getLayoutInflater().inflate(R.layout.lockscreen, null);
+        // swallow touches meant for the activity below
+        lockScreen.setClickable(true);
+        lockScreen.setVisibility(View.GONE);
+        // Optional button on the lockscreen to reset the SYNC proxy
+        lockScreen.findViewById(R.id.lockreset).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                // Reset proxy; do not shut down service
+                AppLinkService serviceInstance = AppLinkService.getInstance();
+                if (serviceInstance != null) {
+                    if (serviceInstance.getProxy() != null) {
+                        serviceInstance.reset();
+                    } else {
+                        serviceInstance.startProxy();
+                    }
+                }
+            }
+        });
+        activity.addContentView(lockScreen, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        host = activity;
+        view = lockScreen;
+    }
+}
@@ -0,0 +1,218 @@
+package com.ford.googlenowlink.applink.log;
+
+import com.ford.googlenowlink.applink.AppLinkApplication;
+
+import android.util.Log;
+
+/**
+ * The app's log, written to logcat under {@link AppLinkApplication#TAG} by an
+ * {@link AsyncLogger}.
+ *
+ * Use it like {@link Log}, but with {@code {}} placeholders instead of
+ * string concatenation: {@code AppLog.d("Sent {} in {} ms", request, elapsedMs)}.
+ * Arguments are only formatted if the level is enabled, RPC arguments are
+ * logged as their JSON, and numeric arguments of the one- and two-argument
+ * forms are not boxed, so a disabled or accepted record allocates nothing.
+ */
+public final class AppLog {
+    private static final AsyncLogger LOGGER =
+            new AsyncLogger(AppLinkApplication.TAG, AsyncLogger.DEFAULT_CAPACITY, AsyncLogger.LOGCAT);
+
+    private AppLog() {
+    }
+
+    public static AsyncLogger getLogger() {
+        return LOGGER;
+    }
+
+    /**
+     * Sets the lowest level that is logged, one of the {@link Log} priorities. INFO by default.
+     */
+    public static void setLevel(int level) {
+        LOGGER.setLevel(level);
+    }
+
+    public static boolean isLoggable(int level) {
+        return LOGGER.isLoggable(level);
+    }
+
+    public static void v(String message) {
+        LOGGER.log(Log.VERBOSE, message, 0, null, null, null, null);
+    }
+
+    public static void v(String format, Object arg) {
+        LOGGER.log(Log.VERBOSE, format, 1, arg, null, null, null);
+    }
+
+    public static void v(String format, Object arg1, Object arg2) {
+        LOGGER.log(Log.VERBOSE, format, 2, arg1, arg2, null, null);
+    }
+
+    public static void v(String format, Object arg1, Object arg2, Object arg3) {
+        LOGGER.log(Log.VERBOSE, format, 3, arg1, arg2, arg3, null);
+    }
+
+    public static void v(String format, long arg) {
+        LOGGER.log(Log.VERBOSE, format, 1, arg, 0);
+    }
+
+    public static void v(String format, long arg1, long arg2) {
+        LOGGER.log(Log.VERBOSE, format, 2, arg1, arg2);
+    }
+
+    public static void v(String message, Throwable throwable) {
+        LOGGER.log(Log.VERBOSE, message, 0, null, null, null, throwable);
+    }
+
+    public static void v(String format, Object arg, Throwable throwable) {
+        LOGGER.log(Log.VERBOSE, format, 1, arg, null, null, throwable);
+    }
+
+    public static void v(String format, Object arg1, Object arg2, Throwable throwable) {
+        LOGGER.log(Log.VERBOSE, format, 2, arg1, arg2, null, throwable);
+    }
+
+    public static void d(String message) {
+        LOGGER.log(Log.DEBUG, message, 0, null, null, null, null);
+    }
+
+    public static void d(String format, Object arg) {
+        LOGGER.log(Log.DEBUG, format, 1, arg, null, null, null);
+    }
+
+    public static void d(String format, Object arg1, Object arg2) {
+        LOGGER.log(Log.DEBUG, format, 2, arg1, arg2, null, null);
+    }
+
+    public static void d(String format, Object arg1, Object arg2, Object arg3) {
+        LOGGER.log(Log.DEBUG, format, 3, arg1, arg2, arg3, null);
+    }
+
+    public static void d(String format, long arg) {
+        LOGGER.log(Log.DEBUG, format, 1, arg, 0);
+    }
+
+    public static void d(String format, long arg1, long arg2) {
+        LOGGER.log(Log.DEBUG, format, 2, arg1, arg2);
+    }
+
+    public static void d(String message, Throwable throwable) {
+        LOGGER.log(Log.DEBUG, message, 0, null, null, null, throwable);
+    }
+
+    public static void d(String format, Object arg, Throwable throwable) {
+        LOGGER.log(Log.DEBUG, format, 1, arg, null, null, throwable);
+    }
+
+    public static void d(String format, Object arg1, Object arg2, Throwable throwable) {
+        LOGGER.log(Log.DEBUG, format, 2, arg1, arg2, null, throwable);
+    }
+
+    public static void i(String message) {
+        LOGGER.log(Log.INFO, message, 0, null, null, null, null);
+    }
+
+    public static void i(String format, Object arg) {
+        LOGGER.log(Log.INFO, format, 1, arg, null, null, null);
+    }
+
+    public static void i(String format, Object arg1, Object arg2) {
+        LOGGER.log(Log.INFO, format, 2, arg1, arg2, null, null);
+    }
+
+    public static void i(String format, Object arg1, Object arg2, Object arg3) {
+        LOGGER.log(Log.INFO, format, 3, arg1, arg2, arg3, null);
+    }
+
+    public static void i(String format, long arg) {
+        LOGGER.log(Log.INFO, format, 1, arg, 0);
+    }
+
+    public static void i(String format, long arg1, long arg2) {
+        LOGGER.log(Log.INFO, format, 2, arg1, arg2);
+    }
+
+    public static void i(String message, Throwable throwable) {
+        LOGGER.log(Log.INFO, message, 0, null, null, null, throwable);
+    }
+
+    public static void i(String format, Object arg, Throwable throwable) {
+        LOGGER.log(Log.INFO, format, 1, arg, null, null, throwable);
+    }
+
+    public static void i(String format, Object arg1, Object arg2, Throwable throwable) {
+        LOGGER.log(Log.INFO, format, 2, arg1, arg2, null, throwable);
+    }
+
+    public static void w(String message) {
+        LOGGER.log(Log.WARN, message, 0, null, null, null, null);
+    }
+
+    public static void w(String format, Object arg) {
+        LOGGER.log(Log.WARN, format, 1, arg, null, null, null);
+    }
+
+    public static void w(String format, Object arg1, Object arg2) {
+        LOGGER.log(Log.WARN, format, 2, arg1, arg2, null, null);
+    }
+
+    public static void w(String format, Object arg1, Object arg2, Object arg3) {
+        LOGGER.log(Log.WARN, format, 3, arg1, arg2, arg3, null);
+    }
+
+    public static void w(String format, long arg) {
+        LOGGER.log(Log.WARN, format, 1, arg, 0);
+    }
+
+    public static void w(String format, long arg1, long arg2) {
+        LOGGER.log(Log.WARN, format, 2, arg1, arg2);
+    }
+
+    public static void w(String message, Throwable throwable) {
+        LOGGER.log(Log.WARN, message, 0, null, null, null, throwable);
+    }
+
+    public static void w(String format, Object arg, Throwable throwable) {
+        LOGGER.log(Log.WARN, format, 1, arg, null, null, throwable);
+    }
+
+    public static void w(String format, Object arg1, Object arg2, Throwable throwable) {
+        LOGGER.log(Log.WARN, format, 2, arg1, arg2, null, throwable);
+    }
+
+    public static void e(String message) {
+        LOGGER.log(Log.ERROR, message, 0, null, null, null, null);
+    }
+
+    public static void e(String format, Object arg) {
+        LOGGER.log(Log.ERROR, format, 1, arg, null, null, null);
+    }
+
+    public static void e(String format, Object arg1, Object arg2) {
+        LOGGER.log(Log.ERROR, format, 2, arg1, arg2, null, null);
+    }
+
+    public static void e(String format, Object arg1, Object arg2, Object arg3) {
+        LOGGER.log(Log.ERROR, format, 3, arg1, arg2, arg3, null);
+    }
+
+    public static void e(String format, long arg) {
+        LOGGER.log(Log.ERROR, format, 1, arg, 0);
+    }
+
+    public static void e(String format, long arg1, long arg2) {
+        LOGGER.log(Log.ERROR, format, 2, arg1, arg2);
+    }
+
+    public static void e(String message, Throwable throwable) {
+        LOGGER.log(Log.ERROR, message, 0, null, null, null, throwable);
+    }
+
+    public static void e(String format, Object arg, Throwable throwable) {
+        LOGGER.log(Log.ERROR, format, 1, arg, null, null, throwable);
+    }
+
+    public static void e(String format, Object arg1, Object arg2, Throwable throwable) {
+        LOGGER.log(Log.ERROR, format, 2, arg1, arg2, null, throwable);
+    }
+}
@@ -0,0 +1,301 @@
+package com.ford.googlenowlink.applink.log;
+
+import com.ford.syncV4.proxy.RPCStruct;
+
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Logs from hot paths without formatting or blocking on the calling thread.
+ *
+ * A record below the level is rejected with one volatile read, before any
+ * argument is formatted. Accepted records are copied into a preallocated ring
+ * of slots, claimed with a compare-and-set, so logging allocates nothing and
+ * takes no lock; a single background thread formats them and hands them to the
+ * {@link Sink}. When the ring is full records are dropped and counted, and the
+ * count is logged once the drain thread catches up.
+ *
+ * Messages are formats with {@code {}} placeholders, filled with the
+ * arguments in order. RPC arguments are serialized to JSON by the drain
+ * thread, so payloads are only serialized for records that are logged.
+ */
+public class AsyncLogger {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    // how long the drain thread sleeps when there is nothing to log
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /**
+     * Writes formatted records, on the drain thread.
+     */
+    public interface Sink {
+        void write(int level, String tag, String message, Throwable throwable);
+    }
+
+    /**
+     * Writes to logcat.
+     */
+    public static final Sink LOGCAT = new Sink() {
+        @Override
+        public void write(int level, String tag, String message, Throwable throwable) {
+            if (throwable != null) {
+                message = message + '\n' + Log.getStackTraceString(throwable);
+            }
+            Log.println(level, tag, message);
+        }
+    };
+
+    private static final class Record {
+        // index of the record in this slot, set last when it is published
+        volatile long sequence = -1;
+        int level;
+        String format;
+        int argCount;
+        boolean longArgs;
+        Object arg1;
+        Object arg2;
+        Object arg3;
+        long long1;
+        long long2;
+        Throwable throwable;
+
+        void clear() {
+            format = null;
+            arg1 = null;
+            arg2 = null;
+            arg3 = null;
+            throwable = null;
+        }
+    }
+
+    private final String tag;
+    private final Sink sink;
+    private final Record[] ring;
+    private final int mask;
+    // next index to claim
+    private final AtomicLong head = new AtomicLong();
+    // next index to drain; slots below it are free
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong loggedCount = new AtomicLong();
+    private final Thread drainThread;
+    private volatile int level = Log.INFO;
+
+    // drain thread only
+    private final StringBuilder text = new StringBuilder(256);
+    private long reportedDropped;
+
+    /**
+     * @param capacity records buffered before records are dropped, rounded up to a power of two
+     */
+    public AsyncLogger(String tag, int capacity, Sink sink) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.tag = tag;
+        this.sink = sink;
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        ring = new Record[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Record();
+        }
+        mask = size - 1;
+        drainThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "AsyncLogger-" + tag);
+        drainThread.setDaemon(true);
+        drainThread.setPriority(Thread.MIN_PRIORITY);
+        drainThread.start();
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * Sets the lowest level that is logged, one of the {@link Log} priorities.
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public boolean isLoggable(int level) {
+        return level >= this.level;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getLoggedCount() {
+        return loggedCount.get();
+    }
+
+    /**
+     * Queues a record with up to three object arguments.
+     */
+    public void log(int level, String format, int argCount, Object arg1, Object arg2, Object arg3,
+                    Throwable throwable) {
+        if (level < this.level) {
+            return;
+        }
+        long index = claim();
+        if (index < 0) {
+            return;
+        }
+        Record record = ring[(int) (index & mask)];
+        record.level = level;
+        record.format = format;
+        record.argCount = argCount;
+        record.longArgs = false;
+        record.arg1 = arg1;
+        record.arg2 = arg2;
+        record.arg3 = arg3;
+        record.throwable = throwable;
+        publish(record, index, level);
+    }
+
+    /**
+     * Queues a record with up to two numeric arguments, without boxing them.
+     */
+    public void log(int level, String format, int argCount, long arg1, long arg2) {
+        if (level < this.level) {
+            return;
+        }
+        long index = claim();
+        if (index < 0) {
+            return;
+        }
+        Record record = ring[(int) (index & mask)];
+        record.level = level;
+        record.format = format;
+        record.argCount = argCount;
+        record.longArgs = true;
+        record.long1 = arg1;
+        record.long2 = arg2;
+        publish(record, index, level);
+    }
+
+    /**
+     * Waits until every record queued so far has been written.
+     * @return false if that took longer than the timeout
+     */
+    public boolean flush(long timeoutMs) {
+        long target = head.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (tail.get() < target) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.unpark(drainThread);
+            Thread.yield();
+        }
+        return true;
+    }
+
+    /**
+     * Claims the next slot, or returns -1 and counts a dropped record if the ring is full.
+     */
+    private long claim() {
+        while (true) {
+            long index = head.get();
+            if (index - tail.get() >= ring.length) {
+                droppedCount.incrementAndGet();
+                return -1;
+            }
+            if (head.compareAndSet(index, index + 1)) {
+                return index;
+            }
+        }
+    }
+
+    private void publish(Record record, long index, int level) {
+        record.sequence = index;
+        // warnings and errors are written at once, the rest in batches
+        if (level >= Log.WARN || index - tail.get() >= ring.length / 2) {
+            LockSupport.unpark(drainThread);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            long index = tail.get();
+            Record record = ring[(int) (index & mask)];
+            if (record.sequence != index) {
+                reportDropped();
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            try {
+                sink.write(record.level, tag, format(record), record.throwable);
+                loggedCount.incrementAndGet();
+            } catch (RuntimeException e) {
+                // a broken argument must not stop the logging
+                droppedCount.incrementAndGet();
+            }
+            record.clear();
+            tail.set(index + 1);
+        }
+    }
+
+    private void reportDropped() {
+        long dropped = droppedCount.get();
+        if (dropped != reportedDropped) {
+            sink.write(Log.WARN, tag, (dropped - reportedDropped) + " log records dropped", null);
+            reportedDropped = dropped;
+        }
+    }
+
+    private String format(Record record) {
+        text.setLength(0);
+        String format = record.format;
+        int arg = 0;
+        int start = 0;
+        int placeholder;
+        while (arg < record.argCount && (placeholder = format.indexOf("{}", start)) >= 0) {
+            text.append(format, start, placeholder);
+            if (record.longArgs) {
+                text.append(arg == 0 ? record.long1 : record.long2);
+            } else {
+                appendArg(text, arg == 0 ? record.arg1 : arg == 1 ? record.arg2 : record.arg3);
+            }
+            arg++;
+            start = placeholder + 2;
+        }
+        text.append(format, start, format.length());
+        return text.toString();
+    }
+
+    private static void appendArg(StringBuilder text, Object arg) {
+        if (arg instanceof RPCStruct) {
+            try {
+                text.append(((RPCStruct) arg).serializeJSON().toString());
+                return;
+            } catch (JSONException e) {
+                // fall back to toString
+            }
+        }
+        text.append(arg);
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncLogger[" + tag + ", logged=" + loggedCount.get() + ", dropped=" + droppedCount.get()
+                + ", queued=" + (head.get() - tail.get()) + "]";
+    }
+}
@@ -0,0 +1,86 @@
+package com.ford.googlenowlink.applink.menu;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Declarative description of the app's menu on SYNC: submenus and the
+ * commands (with their voice recognition synonyms) that live in them.
+ */
+public class MenuModel {
+    /** Parent ID of commands that live in the top-level menu. */
+    public static final int ROOT = 0;
+
+    private final List<SubMenuItem> subMenus = new ArrayList<SubMenuItem>();
+    private final List<CommandItem> commands = new ArrayList<CommandItem>();
+
+    /**
+     * Adds a submenu at the next position of the top-level menu.
+     */
+    public MenuModel addSubMenu(int menuId, String menuName) {
+        if (menuId == ROOT) {
+            throw new IllegalArgumentException("Menu ID " + ROOT + " is reserved for the top-level menu");
+        }
+        subMenus.add(new SubMenuItem(menuId, menuName, subMenus.size()));
+        return this;
+    }
+
+    /**
+     * Adds a command to a submenu, or to the top-level menu if parentId is {@link #ROOT}.
+     * @param vrCommands voice recognition synonyms that trigger the command
+     */
+    public MenuModel addCommand(int cmdId, String menuName, int parentId, String... vrCommands) {
+        if (parentId != ROOT && getSubMenu(parentId) == null) {
+            throw new IllegalArgumentException("Unknown submenu " + parentId);
+        }
+        Vector<String> vr = new Vector<String>(vrCommands.length);
+        Collections.addAll(vr, vrCommands);
+        commands.add(new CommandItem(cmdId, menuName, parentId, vr));
+        return this;
+    }
+
+    public List<SubMenuItem> getSubMenus() {
+        return Collections.unmodifiableList(subMenus);
+    }
+
+    public List<CommandItem> getCommands() {
+        return Collections.unmodifiableList(commands);
+    }
+
+    public SubMenuItem getSubMenu(int menuId) {
+        for (SubMenuItem subMenu : subMenus) {
+            if (subMenu.menuId == menuId) {
+                return subMenu;
+            }
+        }
+        return null;
+    }
+
+    public static class SubMenuItem {
+        public final int menuId;
+        public final String menuName;
+        public final int position;
+
+        SubMenuItem(int menuId, String menuName, int position) {
+            this.menuId = menuId;
+            this.menuName = menuName;
+            this.position = position;
+        }
+    }
+
+    public static class CommandItem {
+        public final int cmdId;
+        public final String menuName;
+        public final int parentId;
+        public final Vector<String> vrCommands;
+
+        CommandItem(int cmdId, String menuName, int parentId, Vector<String> vrCommands) {
+            this.cmdId = cmdId;
+            this.menuName = menuName;
+            this.parentId = parentId;
+            this.vrCommands = vrCommands;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.ford.googlenowlink.applink.menu;
+
+import com.ford.googlenowlink.applink.connection.RegistrationCache;
+import com.ford.googlenowlink.applink.rpc.AsyncRpcClient;
+import com.ford.googlenowlink.applink.rpc.RpcCallback;
+import com.ford.syncV4.proxy.RPCRequest;
+import com.ford.syncV4.proxy.RPCResponse;
+import com.ford.syncV4.proxy.rpc.AddCommand;
+import com.ford.syncV4.proxy.rpc.AddCommandResponse;
+import com.ford.syncV4.proxy.rpc.AddSubMenu;
+import com.ford.syncV4.proxy.rpc.AddSubMenuResponse;
+import com.ford.syncV4.proxy.rpc.MenuParams;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends a {@link MenuModel} to SYNC as one pipelined batch. All submenus and
+ * top-level commands go out immediately; the commands of a submenu are sent
+ * as soon as that submenu is acknowledged. Registering the whole menu therefore
+ * takes about as many round trips as the menu is deep, not one per item.
+ */
+public class MenuRegistrar {
+
+    /**
+     * Notified once every request of a registration has been answered.
+     */
+    public interface Listener {
+        /**
+         * @param failures number of submenus and commands SYNC did not accept
+         */
+        void onMenuRegistered(MenuModel menu, int failures, long elapsedMs);
+    }
+
+    private final AsyncRpcClient rpcClient;
+    private final RegistrationCache registrationCache;
+
+    /**
+     * @param registrationCache records every accepted submenu and command so the
+     *                          menu can be replayed after a reconnect, may be null
+     */
+    public MenuRegistrar(AsyncRpcClient rpcClient, RegistrationCache registrationCache) {
+        this.rpcClient = rpcClient;
+        this.registrationCache = registrationCache;
+    }
+
+    /**
+     * Starts registering the menu. Commands whose submenu is rejected fall back
+     * to the top-level menu so they stay reachable.
+     * @param listener notified when registration finishes, may be null
+     */
+    public void register(MenuModel menu, Listener listener) {
+        Registration registration = new Registration(menu, listener);
+        for (final MenuModel.SubMenuItem subMenu : menu.getSubMenus()) {
+            AddSubMenu msg = new AddSubMenu();
+            msg.setMenuID(subMenu.menuId);
+            msg.setMenuName(subMenu.menuName);
+            msg.setPosition(subMenu.position);
+            rpcClient.send(msg).addCallback(registration.new SubMenuCallback(msg));
+        }
+        for (MenuModel.CommandItem command : menu.getCommands()) {
+            if (command.parentId == MenuModel.ROOT) {
+                registration.sendCommand(command, MenuModel.ROOT);
+            }
+        }
+    }
+
+    private class Registration {
+        private final MenuModel menu;
+        private final Listener listener;
+        private final long startTime = System.nanoTime();
+        private final AtomicInteger outstanding;
+        private final AtomicInteger failures = new AtomicInteger();
+
+        Registration(MenuModel menu, Listener listener) {
+            this.menu = menu;
+            this.listener = listener;
+            outstanding = new AtomicInteger(menu.getSubMenus().size() + menu.getCommands().size());
+            if (outstanding.get() == 0) {
+                finish();
+            }
+        }
+
+        void sendCommand(MenuModel.CommandItem command, int parentId) {
+            MenuParams menuParams = new MenuParams();
+            menuParams.setMenuName(command.menuName);
+            if (parentId != MenuModel.ROOT) {
+                menuParams.setParentID(parentId);
+            }
+            AddCommand msg = new AddCommand();
+            msg.setCmdID(command.cmdId);
+            msg.setMenuParams(menuParams);
+            msg.setVrCommands(command.vrCommands);
+            rpcClient.send(msg).addCallback(new ItemCallback<AddCommandResponse>(
+                    "AddCommand:" + command.cmdId, msg, AddCommandResponse.class));
+        }
+
+        void itemDone(boolean success) {
+            if (!success) {
+                failures.incrementAndGet();
+            }
+            if (outstanding.decrementAndGet() == 0) {
+                finish();
+            }
+        }
+
+        private void finish() {
+            if (listener != null) {
+                listener.onMenuRegistered(menu, failures.get(), (System.nanoTime() - startTime) / 1000000);
+            }
+        }
+
+        private class ItemCallback<T extends RPCResponse> implements RpcCallback<T> {
+            private final String key;
+            private final RPCRequest request;
+            private final Class<T> responseType;
+
+            ItemCallback(String key, RPCRequest request, Class<T> responseType) {
+                this.key = key;
+                this.request = request;
+                this.responseType = responseType;
+            }
+
+            @Override
+            public void onResponse(T response) {
+                boolean success = Boolean.TRUE.equals(response.getSuccess());
+                if (success && registrationCache != null) {
+                    registrationCache.record(key, request, responseType);
+                }
+                itemDone(success);
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                itemDone(false);
+            }
+        }
+
+        private class SubMenuCallback extends ItemCallback<AddSubMenuResponse> {
+            private final int menuId;
+
+            SubMenuCallback(AddSubMenu msg) {
+                super("AddSubMenu:" + msg.getMenuID(), msg, AddSubMenuResponse.class);
+                this.menuId = msg.getMenuID();
+            }
+
+            @Override
+            public void onResponse(AddSubMenuResponse response) {
+                sendChildren(Boolean.TRUE.equals(response.getSuccess()));
+                super.onResponse(response);
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                sendChildren(false);
+                super.onFailure(cause);
+            }
+
+            private void sendChildren(boolean parentAdded) {
+                for (MenuModel.CommandItem command : menu.getCommands()) {
+                    if (command.parentId == menuId) {
+                        sendCommand(command, parentAdded ? menuId : MenuModel.ROOT);
+                    }
+                }
+            }
+        }
+    }
+}
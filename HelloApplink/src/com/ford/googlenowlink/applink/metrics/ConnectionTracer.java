@@ -0,0 +1,210 @@
+package com.ford.googlenowlink.applink.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Traces where the time goes between the phone connecting to SYNC and the
+ * app being usable on the head unit.
+ *
+ * Each connection gets a timeline of span begin/end events on the monotonic
+ * clock. Events go into preallocated arrays, claimed with one atomic
+ * increment, so tracing allocates nothing and takes no lock on the threads
+ * being traced; events past the capacity are dropped and counted. An event
+ * is stored after its time, which publishes the slot to the thread finishing
+ * the connection; a slot claimed but not yet written is left out. When the
+ * connection is finished the duration of every phase goes into a
+ * {@link LatencyHistogram}, and the timeline is kept as text.
+ */
+public class ConnectionTracer {
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Phases of a connection, roughly in the order they run.
+     */
+    public enum Phase {
+        /** ACL_CONNECTED or app start until HMI_FULL. */
+        CONNECTION,
+        /** startService until AppLinkService.onStartCommand. */
+        SERVICE_START,
+        /** startProxy, including the proxy constructor. */
+        PROXY_START,
+        /** The SyncProxyALM constructor. */
+        PROXY_CONSTRUCTION,
+        /** Proxy constructed until the first notification: Bluetooth transport and app registration. */
+        REGISTRATION,
+        /** Registered until the app first reaches HMI_FULL. */
+        ACTIVATION
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    // event of a slot that is not written yet
+    private static final int NO_EVENT = -1;
+
+    private final int capacity;
+    private final AtomicLongArray eventNanos;
+    // phase ordinal << 1, plus 1 for an end event
+    private final AtomicIntegerArray events;
+    private final AtomicInteger eventCount = new AtomicInteger();
+    private final LatencyHistogram[] durations = new LatencyHistogram[PHASES.length];
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong connectionCount = new AtomicLong();
+    // start of the traced connection, 0 while none is traced
+    private volatile long originNanos;
+    private volatile String timeline;
+
+    public ConnectionTracer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity events kept per connection
+     */
+    public ConnectionTracer(int capacity) {
+        this.capacity = capacity;
+        eventNanos = new AtomicLongArray(capacity);
+        events = new AtomicIntegerArray(capacity);
+        clearEvents();
+        for (int i = 0; i < durations.length; i++) {
+            durations[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Starts tracing a new connection, discarding an unfinished one.
+     */
+    public void startConnection() {
+        clearEvents();
+        eventCount.set(0);
+        originNanos = System.nanoTime();
+        begin(Phase.CONNECTION);
+    }
+
+    public boolean isTracing() {
+        return originNanos != 0;
+    }
+
+    public void begin(Phase phase) {
+        record(phase.ordinal() << 1);
+    }
+
+    public void end(Phase phase) {
+        record(phase.ordinal() << 1 | 1);
+    }
+
+    private void record(int event) {
+        if (originNanos == 0) {
+            return;
+        }
+        int index = eventCount.getAndIncrement();
+        if (index >= capacity) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        eventNanos.set(index, System.nanoTime());
+        events.set(index, event);
+    }
+
+    private void clearEvents() {
+        for (int i = 0; i < capacity; i++) {
+            events.set(i, NO_EVENT);
+        }
+    }
+
+    /**
+     * Ends the connection span and adds the connection's phase durations to
+     * the histograms. Does nothing unless a connection is traced.
+     * @return the connection's timeline, or null
+     */
+    public synchronized String finishConnection() {
+        if (originNanos == 0) {
+            return null;
+        }
+        end(Phase.CONNECTION);
+        long origin = originNanos;
+        originNanos = 0;
+        int claimed = Math.min(eventCount.get(), capacity);
+        int[] connectionEvents = new int[claimed];
+        long[] connectionNanos = new long[claimed];
+        int count = 0;
+        for (int i = 0; i < claimed; i++) {
+            // the event first: once it is written, so is its time
+            int event = events.get(i);
+            if (event != NO_EVENT) {
+                connectionEvents[count] = event;
+                connectionNanos[count] = eventNanos.get(i);
+                count++;
+            }
+        }
+
+        StringBuilder text = new StringBuilder();
+        long connection = connectionCount.incrementAndGet();
+        text.append("Connection ").append(connection).append(" timeline, ms since start:\n");
+        for (int i = 0; i < count; i++) {
+            text.append(String.format(Locale.US, "%10.1f %s %s%n", (connectionNanos[i] - origin) / 1e6,
+                    (connectionEvents[i] & 1) == 0 ? "begin" : "end  ", PHASES[connectionEvents[i] >> 1]));
+        }
+        for (Phase phase : PHASES) {
+            long duration = duration(phase, connectionEvents, connectionNanos, count);
+            if (duration >= 0) {
+                durations[phase.ordinal()].record(duration);
+                text.append(String.format(Locale.US, "%-18s %10.1f ms%n", phase, duration / 1e6));
+            }
+        }
+        timeline = text.toString();
+        return timeline;
+    }
+
+    /**
+     * Returns the time from the first begin of the phase to the first end after it, or -1.
+     */
+    private static long duration(Phase phase, int[] events, long[] eventNanos, int count) {
+        int begin = phase.ordinal() << 1;
+        long beginNanos = 0;
+        boolean begun = false;
+        for (int i = 0; i < count; i++) {
+            if (!begun && events[i] == begin) {
+                beginNanos = eventNanos[i];
+                begun = true;
+            } else if (begun && events[i] == (begin | 1)) {
+                return eventNanos[i] - beginNanos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the timeline of the last finished connection, or null.
+     */
+    public String getTimeline() {
+        return timeline;
+    }
+
+    public LatencyHistogram getDurations(Phase phase) {
+        return durations[phase.ordinal()];
+    }
+
+    public long getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Returns the phase duration percentiles over all finished connections.
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("ConnectionTracer[connections=").append(connectionCount.get())
+                .append(", dropped=").append(droppedCount.get()).append("]");
+        for (Phase phase : PHASES) {
+            text.append("\n  ").append(phase).append(": ").append(durations[phase.ordinal()]);
+        }
+        return text.toString();
+    }
+}
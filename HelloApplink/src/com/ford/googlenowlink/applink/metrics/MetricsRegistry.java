@@ -0,0 +1,220 @@
+package com.ford.googlenowlink.applink.metrics;
+
+import com.ford.syncV4.proxy.rpc.enums.Result;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The app's metrics: named counters, named latency histograms and the RPC
+ * statistics, dumped on demand as text or as a compact binary snapshot.
+ *
+ * Metrics are looked up or created once, typically into a field, and then
+ * updated without locks or allocation. A dump reads the live values, so
+ * metrics updated meanwhile may be off by the updates made during the dump.
+ */
+public class MetricsRegistry {
+    /** First int of a binary snapshot. */
+    public static final int MAGIC = 0x414c4d54; // "ALMT"
+    public static final int VERSION = 1;
+
+    private final ConcurrentHashMap<String, StripedCounter> counters =
+            new ConcurrentHashMap<String, StripedCounter>();
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms =
+            new ConcurrentHashMap<String, LatencyHistogram>();
+    private final RpcMetrics rpcMetrics = new RpcMetrics();
+
+    /**
+     * Returns the counter with this name, creating it the first time.
+     */
+    public StripedCounter counter(String name) {
+        StripedCounter counter = counters.get(name);
+        if (counter == null) {
+            StripedCounter created = new StripedCounter();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Returns the histogram with this name, creating it the first time.
+     */
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Adds a histogram kept by someone else to the dumps, replacing one of the same name.
+     */
+    public void register(String name, LatencyHistogram histogram) {
+        histograms.put(name, histogram);
+    }
+
+    public RpcMetrics getRpcMetrics() {
+        return rpcMetrics;
+    }
+
+    /**
+     * Writes every metric as a line of text, sorted by name.
+     */
+    public void writeText(PrintWriter out) {
+        for (Map.Entry<String, StripedCounter> entry : new TreeMap<String, StripedCounter>(counters).entrySet()) {
+            out.print("counter ");
+            out.print(entry.getKey());
+            out.print(' ');
+            out.println(entry.getValue().sum());
+        }
+        for (Map.Entry<String, LatencyHistogram> entry
+                : new TreeMap<String, LatencyHistogram>(histograms).entrySet()) {
+            out.print("histogram ");
+            out.print(entry.getKey());
+            out.print(' ');
+            out.println(entry.getValue());
+        }
+        for (RpcMetrics.Stats stats : rpcMetrics.getAll().values()) {
+            out.print("rpc ");
+            out.println(stats);
+        }
+        out.print("rpc abandoned=");
+        out.println(rpcMetrics.getAbandonedCount());
+        out.flush();
+    }
+
+    /**
+     * Writes a binary snapshot:
+     * <pre>
+     * int magic, int version, long wall clock ms
+     * int counters, then per counter: UTF name, long value
+     * int histograms, then per histogram: UTF name, histogram
+     * int RPC types, then per type: UTF name, long sent, long timeouts, long send failures,
+     *     int result codes, then per result code: UTF result or "", long count; histogram
+     * long abandoned RPCs
+     * histogram: long count, long total ns, long max ns, int non-empty buckets,
+     *     then per bucket: short index, long count (limits from LatencyHistogram.getBucketLimitMicros)
+     * </pre>
+     */
+    public void writeBinary(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(System.currentTimeMillis());
+
+        Map<String, StripedCounter> counterSnapshot = new TreeMap<String, StripedCounter>(counters);
+        out.writeInt(counterSnapshot.size());
+        for (Map.Entry<String, StripedCounter> entry : counterSnapshot.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().sum());
+        }
+
+        Map<String, LatencyHistogram> histogramSnapshot = new TreeMap<String, LatencyHistogram>(histograms);
+        out.writeInt(histogramSnapshot.size());
+        for (Map.Entry<String, LatencyHistogram> entry : histogramSnapshot.entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeHistogram(out, entry.getValue());
+        }
+
+        Map<String, RpcMetrics.Stats> rpcSnapshot = rpcMetrics.getAll();
+        out.writeInt(rpcSnapshot.size());
+        Result[] results = Result.values();
+        for (RpcMetrics.Stats stats : rpcSnapshot.values()) {
+            out.writeUTF(stats.getFunctionName());
+            out.writeLong(stats.getSentCount());
+            out.writeLong(stats.getTimeoutCount());
+            out.writeLong(stats.getSendFailureCount());
+            int nonZero = stats.getResultCount(null) != 0 ? 1 : 0;
+            for (Result result : results) {
+                if (stats.getResultCount(result) != 0) {
+                    nonZero++;
+                }
+            }
+            out.writeInt(nonZero);
+            for (Result result : results) {
+                long count = stats.getResultCount(result);
+                if (count != 0) {
+                    out.writeUTF(result.name());
+                    out.writeLong(count);
+                }
+            }
+            if (stats.getResultCount(null) != 0) {
+                out.writeUTF("");
+                out.writeLong(stats.getResultCount(null));
+            }
+            writeHistogram(out, stats.getRoundTrips());
+        }
+        out.writeLong(rpcMetrics.getAbandonedCount());
+        out.flush();
+    }
+
+    private static void writeHistogram(DataOutputStream out, LatencyHistogram histogram) throws IOException {
+        out.writeLong(histogram.getCount());
+        out.writeLong(histogram.getTotalNanos());
+        out.writeLong(histogram.getMaxNanos());
+        int buckets = LatencyHistogram.getBucketCount();
+        int nonEmpty = 0;
+        long[] counts = new long[buckets];
+        for (int i = 0; i < buckets; i++) {
+            counts[i] = histogram.getBucket(i);
+            if (counts[i] != 0) {
+                nonEmpty++;
+            }
+        }
+        out.writeInt(nonEmpty);
+        for (int i = 0; i < buckets; i++) {
+            if (counts[i] != 0) {
+                out.writeShort(i);
+                out.writeLong(counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Writes a binary snapshot to a file, replacing it only once the snapshot is complete.
+     */
+    public void writeTo(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            writeBinary(out);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Can't rename " + temp + " to " + file);
+        }
+    }
+
+    public void reset() {
+        for (StripedCounter counter : counters.values()) {
+            counter.reset();
+        }
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        rpcMetrics.reset();
+    }
+
+    @Override
+    public String toString() {
+        StringWriter text = new StringWriter();
+        writeText(new PrintWriter(text));
+        return text.toString();
+    }
+}
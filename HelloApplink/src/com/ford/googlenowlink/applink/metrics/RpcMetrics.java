@@ -0,0 +1,156 @@
+package com.ford.googlenowlink.applink.metrics;
+
+import com.ford.syncV4.proxy.rpc.enums.Result;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts RPCs by type and outcome and records their round trip, from sending
+ * the request to the response with its correlation ID arriving.
+ *
+ * The statistics of an RPC type are created the first time it is sent;
+ * after that recording allocates nothing.
+ */
+public class RpcMetrics {
+    private static final Result[] RESULTS = Result.values();
+    private static final String UNKNOWN = "unknown";
+
+    /**
+     * Statistics of one RPC type.
+     */
+    public static final class Stats {
+        private final String functionName;
+        private final StripedCounter sent = new StripedCounter();
+        private final StripedCounter timeouts = new StripedCounter();
+        private final StripedCounter sendFailures = new StripedCounter();
+        // responses by result code, the last one counts responses without a result code
+        private final AtomicLongArray results = new AtomicLongArray(RESULTS.length + 1);
+        private final LatencyHistogram roundTrips = new LatencyHistogram();
+
+        Stats(String functionName) {
+            this.functionName = functionName;
+        }
+
+        public String getFunctionName() {
+            return functionName;
+        }
+
+        public long getSentCount() {
+            return sent.sum();
+        }
+
+        public long getTimeoutCount() {
+            return timeouts.sum();
+        }
+
+        public long getSendFailureCount() {
+            return sendFailures.sum();
+        }
+
+        /**
+         * @param result the result code, or null for responses without one
+         */
+        public long getResultCount(Result result) {
+            return results.get(result != null ? result.ordinal() : RESULTS.length);
+        }
+
+        public LatencyHistogram getRoundTrips() {
+            return roundTrips;
+        }
+
+        void reset() {
+            sent.reset();
+            timeouts.reset();
+            sendFailures.reset();
+            for (int i = 0; i < results.length(); i++) {
+                results.set(i, 0);
+            }
+            roundTrips.reset();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(functionName).append(" sent=").append(sent.sum());
+            for (int i = 0; i <= RESULTS.length; i++) {
+                long count = results.get(i);
+                if (count != 0) {
+                    text.append(' ').append(i < RESULTS.length ? RESULTS[i].name() : "NO_RESULT")
+                            .append('=').append(count);
+                }
+            }
+            return text.append(" timeouts=").append(timeouts.sum())
+                    .append(" sendFailures=").append(sendFailures.sum())
+                    .append(" roundTrip ").append(roundTrips).toString();
+        }
+    }
+
+    private final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+    private final StripedCounter abandoned = new StripedCounter();
+
+    /**
+     * Returns the statistics of an RPC type, creating them the first time.
+     */
+    public Stats get(String functionName) {
+        if (functionName == null) {
+            functionName = UNKNOWN;
+        }
+        Stats existing = stats.get(functionName);
+        if (existing == null) {
+            Stats created = new Stats(functionName);
+            existing = stats.putIfAbsent(functionName, created);
+            if (existing == null) {
+                existing = created;
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * Returns the statistics of every RPC type seen so far, by name.
+     */
+    public Map<String, Stats> getAll() {
+        return new TreeMap<String, Stats>(stats);
+    }
+
+    public void onSent(String functionName) {
+        get(functionName).sent.increment();
+    }
+
+    public void onResponse(String functionName, Result result, long roundTripNanos) {
+        Stats stats = get(functionName);
+        stats.results.incrementAndGet(result != null ? result.ordinal() : RESULTS.length);
+        stats.roundTrips.record(roundTripNanos);
+    }
+
+    public void onTimeout(String functionName) {
+        get(functionName).timeouts.increment();
+    }
+
+    /**
+     * Counts a request the transport failed to send.
+     */
+    public void onSendFailed(String functionName) {
+        get(functionName).sendFailures.increment();
+    }
+
+    /**
+     * Counts requests failed without a response because the connection was closed.
+     */
+    public void onAbandoned(int count) {
+        abandoned.add(count);
+    }
+
+    public long getAbandonedCount() {
+        return abandoned.sum();
+    }
+
+    public void reset() {
+        for (Stats s : stats.values()) {
+            s.reset();
+        }
+        abandoned.reset();
+    }
+}
@@ -0,0 +1,50 @@
+package com.ford.googlenowlink.applink.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter that threads can increment at the same time without contending on
+ * one memory location, like Java 8's LongAdder (not available on Android).
+ *
+ * Each thread adds to one of a fixed set of stripes, chosen by its thread ID
+ * and padded to a cache line each; reading sums the stripes. Adding is one
+ * atomic add and allocates nothing.
+ */
+public class StripedCounter {
+    private static final int STRIPES = 8;
+    // longs per stripe, so that stripes don't share a 64 byte cache line
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        cells.getAndAdd(stripe * PADDING, delta);
+    }
+
+    /**
+     * Returns the total. Not a snapshot: adds made while summing may be missed.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * PADDING, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+}
@@ -0,0 +1,244 @@
+package com.ford.googlenowlink.applink.rpc;
+
+import com.ford.googlenowlink.applink.metrics.RpcMetrics;
+import com.ford.syncV4.exception.SyncException;
+import com.ford.syncV4.proxy.RPCRequest;
+import com.ford.syncV4.proxy.RPCResponse;
+import com.ford.syncV4.proxy.rpc.AddCommand;
+import com.ford.syncV4.proxy.rpc.AddCommandResponse;
+import com.ford.syncV4.proxy.rpc.AddSubMenu;
+import com.ford.syncV4.proxy.rpc.AddSubMenuResponse;
+import com.ford.syncV4.proxy.rpc.EndAudioPassThru;
+import com.ford.syncV4.proxy.rpc.EndAudioPassThruResponse;
+import com.ford.syncV4.proxy.rpc.PerformAudioPassThru;
+import com.ford.syncV4.proxy.rpc.PerformAudioPassThruResponse;
+import com.ford.syncV4.proxy.rpc.Show;
+import com.ford.syncV4.proxy.rpc.ShowResponse;
+import com.ford.syncV4.proxy.rpc.Speak;
+import com.ford.syncV4.proxy.rpc.SpeakResponse;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Asynchronous facade over an {@link RpcTransport}. Every request gets a
+ * correlation ID and an {@link RpcFuture} that completes when the matching
+ * response is passed to {@link #onResponse(RPCResponse)}, or fails when the
+ * send fails, the request times out or the connection is closed.
+ */
+public class AsyncRpcClient {
+    /** Default time to wait for a response before failing the request. */
+    public static final long DEFAULT_TIMEOUT_MS = 10000;
+
+    private final RpcTransport transport;
+    private final Executor callbackExecutor;
+    private final CorrelationIdGenerator correlationIds = new CorrelationIdGenerator();
+    private final PendingRequestTable pendingRequests = new PendingRequestTable();
+    private final long defaultTimeoutMs;
+    private volatile RpcMetrics metrics;
+    private ScheduledExecutorService timeoutScheduler;
+
+    public AsyncRpcClient(RpcTransport transport) {
+        this(transport, null, DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * @param callbackExecutor executor that runs {@link RpcCallback}s, or null to run
+     *                         them on the thread that delivers the response
+     * @param defaultTimeoutMs response timeout used when none is given, 0 for no timeout
+     */
+    public AsyncRpcClient(RpcTransport transport, Executor callbackExecutor, long defaultTimeoutMs) {
+        this.transport = transport;
+        this.callbackExecutor = callbackExecutor;
+        this.defaultTimeoutMs = defaultTimeoutMs;
+    }
+
+    /**
+     * Records every request's outcome and round trip from now on.
+     * @param metrics the metrics, or null to stop recording
+     */
+    public void setMetrics(RpcMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns a new correlation ID, for RPCs sent through the proxy's convenience methods.
+     */
+    public int nextCorrelationId() {
+        return correlationIds.next();
+    }
+
+    public RpcFuture<AddSubMenuResponse> send(AddSubMenu request) {
+        return send(request, AddSubMenuResponse.class);
+    }
+
+    public RpcFuture<AddCommandResponse> send(AddCommand request) {
+        return send(request, AddCommandResponse.class);
+    }
+
+    public RpcFuture<ShowResponse> send(Show request) {
+        return send(request, ShowResponse.class);
+    }
+
+    public RpcFuture<SpeakResponse> send(Speak request) {
+        return send(request, SpeakResponse.class);
+    }
+
+    public RpcFuture<PerformAudioPassThruResponse> send(PerformAudioPassThru request, long timeoutMs) {
+        return send(request, PerformAudioPassThruResponse.class, timeoutMs);
+    }
+
+    public RpcFuture<EndAudioPassThruResponse> send(EndAudioPassThru request) {
+        return send(request, EndAudioPassThruResponse.class);
+    }
+
+    public <T extends RPCResponse> RpcFuture<T> send(RPCRequest request, Class<T> responseType) {
+        return send(request, responseType, defaultTimeoutMs);
+    }
+
+    /**
+     * Assigns a correlation ID to the request, registers it as in flight and sends it.
+     * @param timeoutMs time to wait for the response, 0 to wait until the connection closes
+     */
+    public <T extends RPCResponse> RpcFuture<T> send(RPCRequest request, Class<T> responseType, long timeoutMs) {
+        final int correlationId = correlationIds.next();
+        request.setCorrelationID(correlationId);
+        final RpcFuture<T> future = new RpcFuture<T>(correlationId, responseType, callbackExecutor);
+        future.setSent(request.getFunctionName(), System.nanoTime());
+        pendingRequests.register(future);
+        RpcMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.onSent(future.getFunctionName());
+        }
+        try {
+            transport.sendRPCRequest(request);
+        } catch (SyncException e) {
+            pendingRequests.remove(correlationId);
+            if (metrics != null) {
+                metrics.onSendFailed(future.getFunctionName());
+            }
+            future.fail(e);
+            return future;
+        }
+        ScheduledFuture<?> timeout = null;
+        if (timeoutMs > 0 && !future.isDone()) {
+            timeout = scheduleTimeout(future, timeoutMs);
+        }
+        cleanUpOnCompletion(future, timeout);
+        return future;
+    }
+
+    /**
+     * Completes the request matching this response. Call from every *Response callback.
+     * @return false if no request was waiting for this response
+     */
+    public boolean onResponse(RPCResponse response) {
+        RpcFuture<?> future = pendingRequests.take(response);
+        if (future == null) {
+            return false;
+        }
+        RpcMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.onResponse(future.getFunctionName(), response.getResultCode(),
+                    System.nanoTime() - future.getSentAtNanos());
+        }
+        return future.deliver(response);
+    }
+
+    /**
+     * Fails a single request, e.g. one the transport accepted but could not send.
+     * @return false if the request was not waiting for a response
+     */
+    public boolean fail(int correlationId, Throwable cause) {
+        RpcFuture<?> future = pendingRequests.remove(correlationId);
+        if (future == null) {
+            return false;
+        }
+        future.fail(cause);
+        return true;
+    }
+
+    /**
+     * Fails every request still in flight, e.g. because the proxy was closed.
+     */
+    public void failAll(Throwable cause) {
+        int failed = pendingRequests.failAll(cause);
+        RpcMetrics metrics = this.metrics;
+        if (metrics != null && failed > 0) {
+            metrics.onAbandoned(failed);
+        }
+    }
+
+    /**
+     * Returns the number of requests waiting for a response.
+     */
+    public int getPendingCount() {
+        return pendingRequests.size();
+    }
+
+    /**
+     * Fails outstanding requests and stops the timeout thread.
+     */
+    public synchronized void shutdown(Throwable cause) {
+        failAll(cause);
+        if (timeoutScheduler != null) {
+            timeoutScheduler.shutdownNow();
+            timeoutScheduler = null;
+        }
+    }
+
+    private ScheduledFuture<?> scheduleTimeout(final RpcFuture<?> future, final long timeoutMs) {
+        return getTimeoutScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (pendingRequests.remove(future.getCorrelationId()) == future) {
+                    RpcMetrics metrics = AsyncRpcClient.this.metrics;
+                    if (metrics != null) {
+                        metrics.onTimeout(future.getFunctionName());
+                    }
+                    future.fail(new TimeoutException("No response for correlation ID "
+                            + future.getCorrelationId() + " within " + timeoutMs + " ms"));
+                }
+            }
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels the request's timeout once it completes. A request cancelled by the
+     * caller is also removed from the table, instead of waiting there for a
+     * response that may never come.
+     */
+    private void cleanUpOnCompletion(final RpcFuture<?> future, final ScheduledFuture<?> timeout) {
+        future.addCompletionListener(new Runnable() {
+            @Override
+            public void run() {
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+                if (future.isCancelled()) {
+                    pendingRequests.remove(future);
+                }
+            }
+        });
+    }
+
+    private synchronized ScheduledExecutorService getTimeoutScheduler() {
+        if (timeoutScheduler == null) {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "RpcTimeouts");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            timeoutScheduler = scheduler;
+        }
+        return timeoutScheduler;
+    }
+}
@@ -0,0 +1,26 @@
+package com.ford.googlenowlink.applink.rpc;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free source of correlation IDs for requests sent to SYNC.
+ * IDs are always non-negative and wrap back to zero after Integer.MAX_VALUE.
+ */
+public class CorrelationIdGenerator {
+    private final AtomicInteger counter;
+
+    public CorrelationIdGenerator() {
+        this(0);
+    }
+
+    public CorrelationIdGenerator(int initialValue) {
+        counter = new AtomicInteger(initialValue);
+    }
+
+    /**
+     * Returns the next correlation ID. Safe to call from any thread.
+     */
+    public int next() {
+        return counter.getAndIncrement() & Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,117 @@
+package com.ford.googlenowlink.applink.rpc;
+
+import com.ford.syncV4.proxy.RPCResponse;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Table of requests that have been sent to SYNC and are waiting for a response,
+ * keyed by correlation ID.
+ *
+ * Correlation IDs are handed out sequentially, so the table is a power-of-two
+ * array of slots indexed by {@code id & mask}. Registering and completing a
+ * request is a single compare-and-set on its slot. If a slot is still held by an
+ * older request (more than {@code capacity} requests in flight) the new one is
+ * parked in a small overflow map instead.
+ */
+public class PendingRequestTable {
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private final AtomicReferenceArray<RpcFuture<?>> slots;
+    private final int mask;
+    private final ConcurrentHashMap<Integer, RpcFuture<?>> overflow =
+            new ConcurrentHashMap<Integer, RpcFuture<?>>();
+
+    public PendingRequestTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PendingRequestTable(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        slots = new AtomicReferenceArray<RpcFuture<?>>(capacity);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Registers a future that will be completed when the response with the
+     * same correlation ID arrives.
+     */
+    public void register(RpcFuture<?> future) {
+        int id = future.getCorrelationId();
+        if (!slots.compareAndSet(id & mask, null, future)) {
+            overflow.put(id, future);
+        }
+    }
+
+    /**
+     * Removes and returns the future registered for the given correlation ID,
+     * or null if there is none.
+     */
+    public RpcFuture<?> remove(int correlationId) {
+        int index = correlationId & mask;
+        RpcFuture<?> future = slots.get(index);
+        if (future != null && future.getCorrelationId() == correlationId
+                && slots.compareAndSet(index, future, null)) {
+            return future;
+        }
+        return overflow.isEmpty() ? null : overflow.remove(correlationId);
+    }
+
+    /**
+     * Removes the future if it is still registered, e.g. because it was cancelled.
+     * @return false if it was already removed
+     */
+    public boolean remove(RpcFuture<?> future) {
+        int id = future.getCorrelationId();
+        return slots.compareAndSet(id & mask, future, null) || overflow.remove(id, future);
+    }
+
+    /**
+     * Removes and returns the pending request that matches the response's correlation ID.
+     * @return null if nothing was waiting for this response
+     */
+    public RpcFuture<?> take(RPCResponse response) {
+        Integer correlationId = response.getCorrelationID();
+        return correlationId != null ? remove(correlationId) : null;
+    }
+
+    /**
+     * Fails every pending request, e.g. because the proxy was closed.
+     * @return the number of requests failed
+     */
+    public int failAll(Throwable cause) {
+        int failed = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            RpcFuture<?> future = slots.getAndSet(i, null);
+            if (future != null && future.fail(cause)) {
+                failed++;
+            }
+        }
+        Iterator<RpcFuture<?>> it = overflow.values().iterator();
+        while (it.hasNext()) {
+            RpcFuture<?> future = it.next();
+            it.remove();
+            if (future.fail(cause)) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Returns the number of requests currently in flight. Intended for diagnostics only.
+     */
+    public int size() {
+        int count = overflow.size();
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.get(i) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,19 @@
+package com.ford.googlenowlink.applink.rpc;
+
+import com.ford.syncV4.proxy.RPCResponse;
+
+/**
+ * Receives the outcome of a request sent to SYNC.
+ */
+public interface RpcCallback<T extends RPCResponse> {
+    /**
+     * Called with the response matching the request's correlation ID.
+     * The response may still carry a non-SUCCESS result code.
+     */
+    void onResponse(T response);
+
+    /**
+     * Called if the request could not be sent, was cancelled or timed out.
+     */
+    void onFailure(Throwable cause);
+}
@@ -0,0 +1,232 @@
+package com.ford.googlenowlink.applink.rpc;
+
+import com.ford.syncV4.proxy.RPCResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Completion handle for a request sent to SYNC. It is completed exactly once,
+ * either with the matching response, with a failure, or by cancellation.
+ */
+public class RpcFuture<T extends RPCResponse> implements Future<T> {
+    private static final int PENDING = 0;
+    private static final int SUCCEEDED = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    private final int correlationId;
+    private final Class<T> responseType;
+    private final Executor callbackExecutor;
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+    // set by AsyncRpcClient before the request is registered
+    private String functionName;
+    private long sentAtNanos;
+    private final CountDownLatch done = new CountDownLatch(1);
+    // written before the state transition is published through the latch
+    private volatile T response;
+    private volatile Throwable failure;
+    // guarded by this
+    private List<Runnable> listeners;
+
+    public RpcFuture(int correlationId, Class<T> responseType) {
+        this(correlationId, responseType, null);
+    }
+
+    /**
+     * @param callbackExecutor executor that runs {@link RpcCallback}s, or null to run
+     *                         them on the completing thread
+     */
+    public RpcFuture(int correlationId, Class<T> responseType, Executor callbackExecutor) {
+        this.correlationId = correlationId;
+        this.responseType = responseType;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    public int getCorrelationId() {
+        return correlationId;
+    }
+
+    public Class<T> getResponseType() {
+        return responseType;
+    }
+
+    void setSent(String functionName, long sentAtNanos) {
+        this.functionName = functionName;
+        this.sentAtNanos = sentAtNanos;
+    }
+
+    /**
+     * Returns the name of the request, if it was sent through an {@link AsyncRpcClient}.
+     */
+    public String getFunctionName() {
+        return functionName;
+    }
+
+    /**
+     * Returns when the request was sent, on the {@link System#nanoTime()} clock.
+     */
+    public long getSentAtNanos() {
+        return sentAtNanos;
+    }
+
+    /**
+     * Completes this future with a response of any type. A response that is not
+     * of the expected type (e.g. a GenericResponse) fails the future instead.
+     * @return false if the future was already completed
+     */
+    public boolean deliver(RPCResponse value) {
+        if (!responseType.isInstance(value)) {
+            return fail(new UnexpectedResponseException(value));
+        }
+        return complete(responseType.cast(value));
+    }
+
+    /**
+     * Completes this future with the response from SYNC.
+     * @return false if the future was already completed
+     */
+    public boolean complete(T value) {
+        if (!state.compareAndSet(PENDING, SUCCEEDED)) {
+            return false;
+        }
+        response = value;
+        finish();
+        return true;
+    }
+
+    /**
+     * Completes this future with an error, e.g. the proxy failed to send the request.
+     * @return false if the future was already completed
+     */
+    public boolean fail(Throwable cause) {
+        if (!state.compareAndSet(PENDING, FAILED)) {
+            return false;
+        }
+        failure = cause;
+        finish();
+        return true;
+    }
+
+    /**
+     * Cancels the request. An {@link AsyncRpcClient} stops waiting for its response
+     * and cancels its timeout; a response that still arrives is ignored.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!state.compareAndSet(PENDING, CANCELLED)) {
+            return false;
+        }
+        finish();
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return state.get() == CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        done.await();
+        return report();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException("No response for correlation ID " + correlationId);
+        }
+        return report();
+    }
+
+    /**
+     * Registers a callback that runs on the callback executor once this future
+     * completes, or right away if it already has.
+     */
+    public void addCallback(final RpcCallback<? super T> callback) {
+        addCompletionListener(new Runnable() {
+            @Override
+            public void run() {
+                if (callbackExecutor == null) {
+                    notifyCallback(callback);
+                } else {
+                    callbackExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            notifyCallback(callback);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Registers a listener that runs on the completing thread once this future
+     * completes, or immediately on the calling thread if it already has.
+     * Listeners must be short and must not block.
+     */
+    public void addCompletionListener(Runnable listener) {
+        synchronized (this) {
+            if (!isDone()) {
+                if (listeners == null) {
+                    listeners = new ArrayList<Runnable>(2);
+                }
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    private T report() throws ExecutionException {
+        switch (state.get()) {
+            case SUCCEEDED:
+                return response;
+            case CANCELLED:
+                throw new CancellationException();
+            default:
+                throw new ExecutionException(failure);
+        }
+    }
+
+    private void finish() {
+        List<Runnable> toNotify;
+        synchronized (this) {
+            done.countDown();
+            toNotify = listeners;
+            listeners = null;
+        }
+        if (toNotify != null) {
+            for (Runnable listener : toNotify) {
+                listener.run();
+            }
+        }
+    }
+
+    private void notifyCallback(RpcCallback<? super T> callback) {
+        int s = state.get();
+        if (s == SUCCEEDED) {
+            callback.onResponse(response);
+        } else if (s == CANCELLED) {
+            callback.onFailure(new CancellationException());
+        } else {
+            callback.onFailure(failure);
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package com.ford.googlenowlink.applink.rpc;
+
+import com.ford.syncV4.exception.SyncException;
+import com.ford.syncV4.exception.SyncExceptionCause;
+import com.ford.syncV4.proxy.RPCRequest;
+import com.ford.syncV4.proxy.rpc.Show;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Single-writer queue in front of the proxy. Callers on any thread enqueue
+ * requests; one background thread sends them in priority order, at most as
+ * fast as a token bucket allows, so a burst of menu or file traffic can
+ * neither flood the head unit nor hold up what the driver is looking at.
+ *
+ * A Show that is still queued is replaced by a newer Show that sets at least
+ * the same fields, so only the latest text goes out. Requests that are
+ * accepted but never sent (superseded, failed to send, cleared) are reported
+ * to the {@link Listener}, which fails their futures.
+ */
+public class RpcSendQueue implements RpcTransport {
+    /** Send order; HIGH goes first. */
+    public enum Priority {
+        /** What the user sees and hears right now. */
+        HIGH,
+        NORMAL,
+        /** Setup and background traffic: menus, files, subscriptions. */
+        LOW
+    }
+
+    /**
+     * Notified of requests that were accepted but will not be sent.
+     */
+    public interface Listener {
+        void onNotSent(RPCRequest request, Throwable cause);
+    }
+
+    /** Requests that may go out back to back. */
+    public static final int DEFAULT_BURST = 20;
+    /** Sustained requests per second once the burst is used up. */
+    public static final double DEFAULT_RATE = 10;
+
+    private static final Map<String, Priority> PRIORITIES = new HashMap<String, Priority>();
+    static {
+        for (String name : new String[] {"Show", "Speak", "Alert", "PerformInteraction",
+                "PerformAudioPassThru", "EndAudioPassThru"}) {
+            PRIORITIES.put(name, Priority.HIGH);
+        }
+        for (String name : new String[] {"AddCommand", "DeleteCommand", "AddSubMenu", "DeleteSubMenu",
+                "CreateInteractionChoiceSet", "DeleteInteractionChoiceSet", "PutFile", "DeleteFile",
+                "ListFiles", "SetAppIcon", "SubscribeButton", "UnsubscribeButton",
+                "SubscribeVehicleData", "UnsubscribeVehicleData", "SetGlobalProperties"}) {
+            PRIORITIES.put(name, Priority.LOW);
+        }
+    }
+
+    private static class Pending {
+        final RPCRequest request;
+        final long enqueuedAt;
+
+        Pending(RPCRequest request, long enqueuedAt) {
+            this.request = request;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    private final RpcTransport transport;
+    private final Listener listener;
+    private final TokenBucket tokens;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    // everything below is guarded by lock
+    private final List<LinkedList<Pending>> lanes = new ArrayList<LinkedList<Pending>>();
+    private Thread writer;
+    private boolean shutdown;
+    private int depth;
+    private int maxDepth;
+    private long sentCount;
+    private long coalescedCount;
+    private long failedCount;
+    private long dequeuedCount;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+
+    public RpcSendQueue(RpcTransport transport, Listener listener) {
+        this(transport, listener, DEFAULT_BURST, DEFAULT_RATE);
+    }
+
+    /**
+     * @param burst        requests that may be sent back to back
+     * @param ratePerSecond sustained send rate once the burst is used up
+     */
+    public RpcSendQueue(RpcTransport transport, Listener listener, int burst, double ratePerSecond) {
+        this.transport = transport;
+        this.listener = listener;
+        this.tokens = new TokenBucket(burst, ratePerSecond, System.nanoTime());
+        for (int i = 0; i < Priority.values().length; i++) {
+            lanes.add(new LinkedList<Pending>());
+        }
+    }
+
+    /**
+     * Returns the lane a request goes into by default.
+     */
+    public static Priority priorityOf(RPCRequest request) {
+        Priority priority = PRIORITIES.get(request.getFunctionName());
+        return priority != null ? priority : Priority.NORMAL;
+    }
+
+    /**
+     * Queues the request in its default lane.
+     */
+    @Override
+    public void sendRPCRequest(RPCRequest request) throws SyncException {
+        enqueue(request, priorityOf(request));
+    }
+
+    /**
+     * Queues the request to be sent after everything already queued with the
+     * same or a higher priority.
+     */
+    public void enqueue(RPCRequest request, Priority priority) throws SyncException {
+        Pending superseded = null;
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new SyncException("Send queue is shut down", SyncExceptionCause.SYNC_PROXY_DISPOSED);
+            }
+            LinkedList<Pending> lane = lanes.get(priority.ordinal());
+            if (request instanceof Show) {
+                ListIterator<Pending> it = lane.listIterator();
+                while (it.hasNext()) {
+                    Pending queued = it.next();
+                    if (queued.request instanceof Show && supersedes((Show) request, (Show) queued.request)) {
+                        // the newer Show takes the older one's place in line
+                        it.set(new Pending(request, queued.enqueuedAt));
+                        superseded = queued;
+                        coalescedCount++;
+                        break;
+                    }
+                }
+            }
+            if (superseded == null) {
+                lane.addLast(new Pending(request, System.nanoTime()));
+                depth++;
+                maxDepth = Math.max(maxDepth, depth);
+            }
+            if (writer == null) {
+                writer = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        drain();
+                    }
+                }, "RpcSendQueue");
+                writer.setDaemon(true);
+                writer.start();
+            }
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (superseded != null) {
+            notSent(superseded.request, new SupersededRequestException(request));
+        }
+    }
+
+    /**
+     * Drops every queued request, e.g. because the proxy was closed.
+     */
+    public void clear(Throwable cause) {
+        List<Pending> dropped = new ArrayList<Pending>();
+        lock.lock();
+        try {
+            for (LinkedList<Pending> lane : lanes) {
+                dropped.addAll(lane);
+                lane.clear();
+            }
+            depth = 0;
+            failedCount += dropped.size();
+        } finally {
+            lock.unlock();
+        }
+        for (Pending pending : dropped) {
+            notSent(pending.request, cause);
+        }
+    }
+
+    /**
+     * Drops every queued request and stops the writer thread. Later requests are rejected.
+     */
+    public void shutdown(Throwable cause) {
+        lock.lock();
+        try {
+            shutdown = true;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+        clear(cause);
+    }
+
+    private void drain() {
+        while (true) {
+            Pending next;
+            long waitNanos;
+            lock.lock();
+            try {
+                while (true) {
+                    if (shutdown) {
+                        return;
+                    }
+                    if (depth == 0) {
+                        changed.await();
+                        continue;
+                    }
+                    long now = System.nanoTime();
+                    long delay = tokens.tryAcquire(now);
+                    if (delay > 0) {
+                        // a higher priority request may arrive meanwhile
+                        changed.awaitNanos(delay);
+                        continue;
+                    }
+                    next = poll();
+                    waitNanos = now - next.enqueuedAt;
+                    dequeuedCount++;
+                    totalWaitNanos += waitNanos;
+                    maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+                    break;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                transport.sendRPCRequest(next.request);
+                sent(true);
+            } catch (SyncException e) {
+                sent(false);
+                notSent(next.request, e);
+            } catch (RuntimeException e) {
+                // keep the writer alive for the requests behind this one
+                sent(false);
+                notSent(next.request, e);
+            }
+        }
+    }
+
+    private Pending poll() {
+        for (LinkedList<Pending> lane : lanes) {
+            if (!lane.isEmpty()) {
+                depth--;
+                return lane.removeFirst();
+            }
+        }
+        throw new IllegalStateException("Queue is empty");
+    }
+
+    private void sent(boolean success) {
+        lock.lock();
+        try {
+            if (success) {
+                sentCount++;
+            } else {
+                failedCount++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void notSent(RPCRequest request, Throwable cause) {
+        if (listener != null) {
+            listener.onNotSent(request, cause);
+        }
+    }
+
+    /**
+     * True if sending newer makes older redundant: newer sets every field older sets.
+     */
+    static boolean supersedes(Show newer, Show older) {
+        return covers(newer.getMainField1(), older.getMainField1())
+                && covers(newer.getMainField2(), older.getMainField2())
+                && covers(newer.getMainField3(), older.getMainField3())
+                && covers(newer.getMainField4(), older.getMainField4())
+                && covers(newer.getAlignment(), older.getAlignment())
+                && covers(newer.getStatusBar(), older.getStatusBar())
+                && covers(newer.getMediaClock(), older.getMediaClock())
+                && covers(newer.getMediaTrack(), older.getMediaTrack())
+                && covers(newer.getGraphic(), older.getGraphic())
+                && covers(newer.getSoftButtons(), older.getSoftButtons())
+                && covers(newer.getCustomPresets(), older.getCustomPresets());
+    }
+
+    private static boolean covers(Object newer, Object older) {
+        return older == null || newer != null;
+    }
+
+    /**
+     * Returns the number of requests waiting to be sent.
+     */
+    public int getDepth() {
+        lock.lock();
+        try {
+            return depth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getDepth(Priority priority) {
+        lock.lock();
+        try {
+            return lanes.get(priority.ordinal()).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxDepth() {
+        lock.lock();
+        try {
+            return maxDepth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSentCount() {
+        lock.lock();
+        try {
+            return sentCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of Shows dropped because a newer one replaced them.
+     */
+    public long getCoalescedCount() {
+        lock.lock();
+        try {
+            return coalescedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests that failed to send or were cleared from the queue.
+     */
+    public long getFailedCount() {
+        lock.lock();
+        try {
+            return failedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the longest time a request waited in the queue, in milliseconds.
+     */
+    public long getMaxWaitMs() {
+        lock.lock();
+        try {
+            return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the average time a request waited in the queue before it was sent, in milliseconds.
+     */
+    public double getAverageWaitMs() {
+        lock.lock();
+        try {
+            return dequeuedCount == 0 ? 0 : totalWaitNanos / 1e6 / dequeuedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return "RpcSendQueue[depth=" + depth + ", maxDepth=" + maxDepth + ", sent=" + sentCount
+                    + ", coalesced=" + coalescedCount + ", failed=" + failedCount
+                    + ", maxWaitMs=" + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + "]";
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.ford.googlenowlink.applink.rpc;
+
+import com.ford.syncV4.exception.SyncException;
+import com.ford.syncV4.proxy.RPCRequest;
+
+/**
+ * Sends RPC requests to SYNC. In the app this is backed by SyncProxyALM;
+ * in the tests a loopback stand-in lets the request/response path run on a
+ * plain JVM.
+ */
+public interface RpcTransport {
+    /**
+     * Sends the request. The correlation ID has already been assigned.
+     */
+    void sendRPCRequest(RPCRequest request) throws SyncException;
+}
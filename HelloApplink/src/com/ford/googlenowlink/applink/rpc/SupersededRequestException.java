@@ -0,0 +1,23 @@
+package com.ford.googlenowlink.applink.rpc;
+
+import com.ford.syncV4.proxy.RPCRequest;
+
+/**
+ * Fails a request that was dropped from the send queue before it was sent,
+ * because a newer request made it redundant (e.g. a later Show with the same fields).
+ */
+public class SupersededRequestException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final RPCRequest replacement;
+
+    public SupersededRequestException(RPCRequest replacement) {
+        super("Superseded by " + replacement.getFunctionName()
+                + " with correlation ID " + replacement.getCorrelationID());
+        this.replacement = replacement;
+    }
+
+    public RPCRequest getReplacement() {
+        return replacement;
+    }
+}
@@ -0,0 +1,52 @@
+package com.ford.googlenowlink.applink.rpc;
+
+/**
+ * Token bucket rate limiter: up to {@code capacity} requests go out in a burst,
+ * after that one every {@code 1 / ratePerSecond} seconds.
+ *
+ * Not thread safe; it is owned by the thread that sends the requests.
+ */
+public class TokenBucket {
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final int capacity;
+    private final long nanosPerToken;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(int capacity, double ratePerSecond, long now) {
+        if (capacity <= 0 || ratePerSecond <= 0) {
+            throw new IllegalArgumentException("capacity and rate must be positive");
+        }
+        this.capacity = capacity;
+        this.nanosPerToken = (long) (NANOS_PER_SECOND / ratePerSecond);
+        this.tokens = capacity;
+        this.lastRefill = now;
+    }
+
+    /**
+     * Takes a token if one is available.
+     * @param now current time in nanoseconds
+     * @return 0 if a token was taken, otherwise the nanoseconds until the next one is available
+     */
+    public long tryAcquire(long now) {
+        refill(now);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) ((1 - tokens) * nanosPerToken));
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefill;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + (double) elapsed / nanosPerToken);
+            lastRefill = now;
+        }
+    }
+}
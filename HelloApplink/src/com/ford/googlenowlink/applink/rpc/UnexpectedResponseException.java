@@ -0,0 +1,23 @@
+package com.ford.googlenowlink.applink.rpc;
+
+import com.ford.syncV4.proxy.RPCResponse;
+
+/**
+ * Thrown when SYNC answers a request with a response of an unexpected type,
+ * typically a GenericResponse for a request it does not support.
+ */
+public class UnexpectedResponseException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final RPCResponse response;
+
+    public UnexpectedResponseException(RPCResponse response) {
+        super("Unexpected response " + response.getFunctionName()
+                + " (" + response.getResultCode() + ")");
+        this.response = response;
+    }
+
+    public RPCResponse getResponse() {
+        return response;
+    }
+}
@@ -0,0 +1,307 @@
+package com.ford.googlenowlink.applink.speech;
+
+import com.ford.googlenowlink.applink.connection.TaskScheduler;
+import com.ford.googlenowlink.applink.log.AppLog;
+import com.ford.googlenowlink.applink.rpc.AsyncRpcClient;
+import com.ford.googlenowlink.applink.rpc.RpcCallback;
+import com.ford.syncV4.proxy.rpc.Speak;
+import com.ford.syncV4.proxy.rpc.SpeakResponse;
+import com.ford.syncV4.proxy.rpc.enums.Result;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Speaks prompts on the head unit one at a time, in priority order.
+ *
+ * Only one Speak is outstanding; the next prompt is sent once its response
+ * arrives, so prompts wait here, where they can still be reordered, replaced
+ * or dropped, and not in the head unit's queue. A prompt queued with a tag
+ * replaces a queued prompt with the same tag and takes its place in line.
+ * A prompt that waited longer than its maximum age is dropped instead of
+ * being played late. When the head unit aborts the prompt being spoken
+ * (the user pressed push-to-talk, an alert took over), the NORMAL and LOW
+ * prompts queued behind it are dropped as well.
+ *
+ * Callbacks of dropped prompts fail with a {@link CancellationException}, or
+ * a {@link TimeoutException} if they expired.
+ */
+public class SpeechQueue {
+    /** Send order; HIGH goes first. */
+    public enum Priority {
+        /** Safety and replies the user is waiting for; kept when a prompt is aborted. */
+        HIGH,
+        NORMAL,
+        /** Informational prompts that may as well not be played. */
+        LOW
+    }
+
+    public static final long DEFAULT_MAX_AGE_MS = 5000;
+    // a Speak is answered once the prompt has been spoken
+    private static final long SPEAK_TIMEOUT_MS = 30000;
+
+    private static class Utterance {
+        final TtsPrompt prompt;
+        final Priority priority;
+        final String tag;
+        final long enqueuedAtMs;
+        final long maxAgeMs;
+        final RpcCallback<SpeakResponse> callback;
+
+        Utterance(TtsPrompt prompt, Priority priority, String tag, long enqueuedAtMs, long maxAgeMs,
+                  RpcCallback<SpeakResponse> callback) {
+            this.prompt = prompt;
+            this.priority = priority;
+            this.tag = tag;
+            this.enqueuedAtMs = enqueuedAtMs;
+            this.maxAgeMs = maxAgeMs;
+            this.callback = callback;
+        }
+
+        boolean isExpired(long nowMs) {
+            return maxAgeMs > 0 && nowMs - enqueuedAtMs > maxAgeMs;
+        }
+    }
+
+    private final AsyncRpcClient rpcClient;
+    private final TaskScheduler clock;
+
+    // guarded by this
+    private final List<LinkedList<Utterance>> lanes = new ArrayList<LinkedList<Utterance>>();
+    private Utterance speaking;
+    private long spokenCount;
+    private long abortedCount;
+    private long replacedCount;
+    private long expiredCount;
+    private long droppedCount;
+
+    public SpeechQueue(AsyncRpcClient rpcClient, TaskScheduler clock) {
+        this.rpcClient = rpcClient;
+        this.clock = clock;
+        for (int i = 0; i < Priority.values().length; i++) {
+            lanes.add(new LinkedList<Utterance>());
+        }
+    }
+
+    /**
+     * Speaks the prompt at NORMAL priority, dropping it if it can't start within the default maximum age.
+     */
+    public void speak(TtsPrompt prompt) {
+        speak(prompt, Priority.NORMAL, null, DEFAULT_MAX_AGE_MS, null);
+    }
+
+    /**
+     * Queues the prompt after everything queued with the same or a higher priority.
+     * @param tag      replaces a queued prompt with the same tag, may be null
+     * @param maxAgeMs longest the prompt may wait before it starts, 0 to wait indefinitely
+     * @param callback notified with the response, or when the prompt is dropped; may be null
+     */
+    public void speak(TtsPrompt prompt, Priority priority, String tag, long maxAgeMs,
+                      RpcCallback<SpeakResponse> callback) {
+        Utterance utterance = new Utterance(prompt, priority, tag, clock.now(), maxAgeMs, callback);
+        Utterance replaced = null;
+        synchronized (this) {
+            LinkedList<Utterance> lane = lanes.get(priority.ordinal());
+            if (tag != null) {
+                for (LinkedList<Utterance> queued : lanes) {
+                    ListIterator<Utterance> it = queued.listIterator();
+                    while (it.hasNext()) {
+                        Utterance candidate = it.next();
+                        if (tag.equals(candidate.tag)) {
+                            replaced = candidate;
+                            replacedCount++;
+                            // the newer prompt takes the older one's place in line
+                            if (queued == lane) {
+                                it.set(utterance);
+                            } else {
+                                it.remove();
+                            }
+                            break;
+                        }
+                    }
+                    if (replaced != null) {
+                        break;
+                    }
+                }
+            }
+            if (replaced == null || replaced.priority != priority) {
+                lane.addLast(utterance);
+            }
+        }
+        if (replaced != null) {
+            fail(replaced, new CancellationException("Replaced by \"" + prompt + "\""));
+        }
+        pump();
+    }
+
+    /**
+     * Drops the queued prompts with this tag. A prompt being spoken can't be stopped.
+     * @return the number of prompts dropped
+     */
+    public int cancel(String tag) {
+        List<Utterance> cancelled = new ArrayList<Utterance>();
+        synchronized (this) {
+            for (LinkedList<Utterance> lane : lanes) {
+                Iterator<Utterance> it = lane.iterator();
+                while (it.hasNext()) {
+                    Utterance utterance = it.next();
+                    if (tag.equals(utterance.tag)) {
+                        it.remove();
+                        cancelled.add(utterance);
+                    }
+                }
+            }
+            droppedCount += cancelled.size();
+        }
+        for (Utterance utterance : cancelled) {
+            fail(utterance, new CancellationException("Cancelled"));
+        }
+        return cancelled.size();
+    }
+
+    /**
+     * Drops every queued prompt, e.g. because the proxy was closed; call before
+     * failing the outstanding requests so nothing queued is sent meanwhile.
+     */
+    public void reset(Throwable cause) {
+        List<Utterance> dropped = new ArrayList<Utterance>();
+        synchronized (this) {
+            for (LinkedList<Utterance> lane : lanes) {
+                dropped.addAll(lane);
+                lane.clear();
+            }
+            droppedCount += dropped.size();
+        }
+        for (Utterance utterance : dropped) {
+            fail(utterance, cause);
+        }
+    }
+
+    public synchronized boolean isSpeaking() {
+        return speaking != null;
+    }
+
+    public synchronized int getDepth() {
+        int depth = 0;
+        for (LinkedList<Utterance> lane : lanes) {
+            depth += lane.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Sends the next prompt unless one is being spoken, dropping the expired ones on the way.
+     */
+    private void pump() {
+        Utterance next = null;
+        List<Utterance> expired = null;
+        synchronized (this) {
+            if (speaking != null) {
+                return;
+            }
+            long now = clock.now();
+            for (LinkedList<Utterance> lane : lanes) {
+                while (next == null && !lane.isEmpty()) {
+                    Utterance utterance = lane.removeFirst();
+                    if (utterance.isExpired(now)) {
+                        if (expired == null) {
+                            expired = new ArrayList<Utterance>(2);
+                        }
+                        expired.add(utterance);
+                        expiredCount++;
+                    } else {
+                        next = utterance;
+                    }
+                }
+            }
+            speaking = next;
+        }
+        if (expired != null) {
+            for (Utterance utterance : expired) {
+                fail(utterance, new TimeoutException("Not spoken within " + utterance.maxAgeMs + " ms"));
+            }
+        }
+        if (next != null) {
+            send(next);
+        }
+    }
+
+    private void send(final Utterance utterance) {
+        Speak msg = new Speak();
+        msg.setTtsChunks(utterance.prompt.getChunks());
+        rpcClient.send(msg, SpeakResponse.class, SPEAK_TIMEOUT_MS).addCallback(new RpcCallback<SpeakResponse>() {
+            @Override
+            public void onResponse(SpeakResponse response) {
+                List<Utterance> dropped = null;
+                synchronized (SpeechQueue.this) {
+                    if (speaking == utterance) {
+                        speaking = null;
+                    }
+                    if (response.getResultCode() == Result.ABORTED) {
+                        abortedCount++;
+                        dropped = dropInterruptible();
+                    } else {
+                        spokenCount++;
+                    }
+                }
+                if (utterance.callback != null) {
+                    utterance.callback.onResponse(response);
+                }
+                if (dropped != null) {
+                    for (Utterance queued : dropped) {
+                        fail(queued, new CancellationException("\"" + utterance.prompt + "\" was aborted"));
+                    }
+                }
+                pump();
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                synchronized (SpeechQueue.this) {
+                    if (speaking == utterance) {
+                        speaking = null;
+                    }
+                }
+                fail(utterance, cause);
+                pump();
+            }
+        });
+    }
+
+    /**
+     * Removes the queued NORMAL and LOW prompts.
+     */
+    private List<Utterance> dropInterruptible() {
+        List<Utterance> dropped = new ArrayList<Utterance>();
+        for (Priority priority : Priority.values()) {
+            if (priority != Priority.HIGH) {
+                dropped.addAll(lanes.get(priority.ordinal()));
+                lanes.get(priority.ordinal()).clear();
+            }
+        }
+        droppedCount += dropped.size();
+        return dropped;
+    }
+
+    private static void fail(Utterance utterance, Throwable cause) {
+        if (utterance.callback != null) {
+            utterance.callback.onFailure(cause);
+        } else if (cause instanceof CancellationException || cause instanceof TimeoutException) {
+            AppLog.d("Prompt \"{}\" dropped: {}", utterance.prompt, cause.getMessage());
+        } else {
+            AppLog.w("Prompt \"{}\" failed", utterance.prompt, cause);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SpeechQueue[depth=" + getDepth() + ", speaking=" + (speaking != null) + ", spoken=" + spokenCount
+                + ", aborted=" + abortedCount + ", replaced=" + replacedCount + ", expired=" + expiredCount
+                + ", dropped=" + droppedCount + "]";
+    }
+}
@@ -0,0 +1,67 @@
+package com.ford.googlenowlink.applink.speech;
+
+import com.ford.syncV4.proxy.TTSChunkFactory;
+import com.ford.syncV4.proxy.rpc.TTSChunk;
+
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Text to speak, with its TTS chunks built once.
+ *
+ * Static prompts are interned: every {@link #intern} of the same text returns
+ * the same prompt, so its chunks are built on first use and then shared by
+ * every Speak, Alert or PerformAudioPassThru that plays it. The chunks are
+ * handed to the proxy as they are and must not be modified.
+ */
+public final class TtsPrompt {
+    private static final ConcurrentHashMap<String, TtsPrompt> INTERNED = new ConcurrentHashMap<String, TtsPrompt>();
+
+    private final String text;
+    private final Vector<TTSChunk> chunks;
+
+    private TtsPrompt(String text) {
+        this.text = text;
+        this.chunks = TTSChunkFactory.createSimpleTTSChunks(text);
+    }
+
+    /**
+     * Returns the shared prompt for this text. Meant for the app's fixed
+     * prompts, interned prompts are kept for the life of the process.
+     */
+    public static TtsPrompt intern(String text) {
+        TtsPrompt prompt = INTERNED.get(text);
+        if (prompt == null) {
+            TtsPrompt created = new TtsPrompt(text);
+            prompt = INTERNED.putIfAbsent(text, created);
+            if (prompt == null) {
+                prompt = created;
+            }
+        }
+        return prompt;
+    }
+
+    /**
+     * Returns a prompt for text that changes, e.g. an answer to a query, without interning it.
+     */
+    public static TtsPrompt of(String text) {
+        TtsPrompt prompt = INTERNED.get(text);
+        return prompt != null ? prompt : new TtsPrompt(text);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns the prompt's chunks, shared with every request that plays it; do not modify.
+     */
+    public Vector<TTSChunk> getChunks() {
+        return chunks;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
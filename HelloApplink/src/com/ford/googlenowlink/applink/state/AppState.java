@@ -0,0 +1,111 @@
+package com.ford.googlenowlink.applink.state;
+
+import com.ford.googlenowlink.applink.AppLinkApplication;
+import com.ford.googlenowlink.applink.AppLinkService;
+import com.ford.syncV4.proxy.SyncProxyALM;
+import com.ford.syncV4.proxy.rpc.enums.HMILevel;
+
+import android.app.Activity;
+
+/**
+ * Immutable snapshot of the app's process-wide state: the running
+ * application, service and proxy, the activity in the foreground, whether
+ * the lock screen is up and the app's HMI level on SYNC.
+ *
+ * Changes produce a new snapshot through the {@code with...} methods; see
+ * {@link AppStateHolder} for how they are published.
+ */
+public final class AppState {
+    public static final AppState EMPTY = new AppState(null, null, null, null, false, HMILevel.HMI_NONE);
+
+    private final AppLinkApplication application;
+    private final AppLinkService service;
+    private final SyncProxyALM proxy;
+    private final Activity currentActivity;
+    private final boolean lockScreenUp;
+    private final HMILevel hmiLevel;
+
+    private AppState(AppLinkApplication application, AppLinkService service, SyncProxyALM proxy,
+                     Activity currentActivity, boolean lockScreenUp, HMILevel hmiLevel) {
+        this.application = application;
+        this.service = service;
+        this.proxy = proxy;
+        this.currentActivity = currentActivity;
+        this.lockScreenUp = lockScreenUp;
+        this.hmiLevel = hmiLevel;
+    }
+
+    public AppLinkApplication getApplication() {
+        return application;
+    }
+
+    public AppLinkService getService() {
+        return service;
+    }
+
+    public SyncProxyALM getProxy() {
+        return proxy;
+    }
+
+    public Activity getCurrentActivity() {
+        return currentActivity;
+    }
+
+    public boolean isLockScreenUp() {
+        return lockScreenUp;
+    }
+
+    public HMILevel getHmiLevel() {
+        return hmiLevel;
+    }
+
+    public AppState withApplication(AppLinkApplication application) {
+        return application == this.application ? this
+                : new AppState(application, service, proxy, currentActivity, lockScreenUp, hmiLevel);
+    }
+
+    /**
+     * A service going away takes its proxy and HMI level with it.
+     */
+    public AppState withService(AppLinkService service) {
+        if (service == this.service) {
+            return this;
+        }
+        return service == null
+                ? new AppState(application, null, null, currentActivity, lockScreenUp, HMILevel.HMI_NONE)
+                : new AppState(application, service, proxy, currentActivity, lockScreenUp, hmiLevel);
+    }
+
+    /**
+     * A proxy going away resets the HMI level.
+     */
+    public AppState withProxy(SyncProxyALM proxy) {
+        if (proxy == this.proxy) {
+            return this;
+        }
+        return new AppState(application, service, proxy, currentActivity, lockScreenUp,
+                proxy == null ? HMILevel.HMI_NONE : hmiLevel);
+    }
+
+    public AppState withCurrentActivity(Activity currentActivity) {
+        return currentActivity == this.currentActivity ? this
+                : new AppState(application, service, proxy, currentActivity, lockScreenUp, hmiLevel);
+    }
+
+    public AppState withLockScreenUp(boolean lockScreenUp) {
+        return lockScreenUp == this.lockScreenUp ? this
+                : new AppState(application, service, proxy, currentActivity, lockScreenUp, hmiLevel);
+    }
+
+    public AppState withHmiLevel(HMILevel hmiLevel) {
+        return hmiLevel == this.hmiLevel ? this
+                : new AppState(application, service, proxy, currentActivity, lockScreenUp, hmiLevel);
+    }
+
+    @Override
+    public String toString() {
+        return "AppState[service=" + (service != null) + ", proxy=" + (proxy != null) + ", activity="
+                + (currentActivity != null ? currentActivity.getClass().getSimpleName() : null)
+                + ", lockScreenUp=" + lockScreenUp + ", hmiLevel=" + hmiLevel + "]";
+    }
+}
@@ -0,0 +1,163 @@
+package com.ford.googlenowlink.applink.state;
+
+import com.ford.googlenowlink.applink.AppLinkApplication;
+import com.ford.googlenowlink.applink.AppLinkService;
+import com.ford.syncV4.proxy.SyncProxyALM;
+import com.ford.syncV4.proxy.rpc.enums.HMILevel;
+
+import android.app.Activity;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current {@link AppState} and publishes changes to it.
+ *
+ * Reads are a single volatile read and never block. Every change is a
+ * compare-and-set from one snapshot to the next, retried if another thread
+ * got there first, so readers always see a coherent snapshot and no caller
+ * ever waits on a monitor. Listeners are called on the thread that made the
+ * change, after it was published; when two threads change the state at the
+ * same time their listener calls may interleave, but each call describes a
+ * transition that really happened.
+ */
+public class AppStateHolder {
+
+    /**
+     * Notified after each change.
+     */
+    public interface Listener {
+        void onStateChanged(AppState previous, AppState current);
+    }
+
+    /**
+     * Computes the next state from the current one. May be called more than
+     * once if the state changes concurrently, so it must not have side effects.
+     */
+    public interface Transition {
+        /**
+         * @return the next state, or the given state itself to change nothing
+         */
+        AppState apply(AppState state);
+    }
+
+    private final AtomicReference<AppState> state = new AtomicReference<AppState>(AppState.EMPTY);
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    public AppState get() {
+        return state.get();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Applies a transition atomically.
+     * @return the state after the transition
+     */
+    public AppState update(Transition transition) {
+        while (true) {
+            AppState current = state.get();
+            AppState next = transition.apply(current);
+            if (next == current) {
+                return current;
+            }
+            if (state.compareAndSet(current, next)) {
+                for (Listener listener : listeners) {
+                    listener.onStateChanged(current, next);
+                }
+                return next;
+            }
+        }
+    }
+
+    public void setApplication(final AppLinkApplication application) {
+        update(new Transition() {
+            @Override
+            public AppState apply(AppState state) {
+                return state.withApplication(application);
+            }
+        });
+    }
+
+    public void setService(final AppLinkService service) {
+        update(new Transition() {
+            @Override
+            public AppState apply(AppState state) {
+                return state.withService(service);
+            }
+        });
+    }
+
+    /**
+     * Clears the service, unless another instance has replaced it already.
+     */
+    public void clearService(final AppLinkService service) {
+        update(new Transition() {
+            @Override
+            public AppState apply(AppState state) {
+                return state.getService() == service ? state.withService(null) : state;
+            }
+        });
+    }
+
+    /**
+     * Replaces the proxy if it is still {@code expect}.
+     * @return false if the proxy was changed by someone else
+     */
+    public boolean compareAndSetProxy(final SyncProxyALM expect, final SyncProxyALM proxy) {
+        final boolean[] matched = new boolean[1];
+        update(new Transition() {
+            @Override
+            public AppState apply(AppState state) {
+                matched[0] = state.getProxy() == expect;
+                return matched[0] ? state.withProxy(proxy) : state;
+            }
+        });
+        return matched[0];
+    }
+
+    public void setCurrentActivity(final Activity activity) {
+        update(new Transition() {
+            @Override
+            public AppState apply(AppState state) {
+                return state.withCurrentActivity(activity);
+            }
+        });
+    }
+
+    /**
+     * Clears the current activity, unless another activity has taken the foreground.
+     */
+    public void clearCurrentActivity(final Activity activity) {
+        update(new Transition() {
+            @Override
+            public AppState apply(AppState state) {
+                return state.getCurrentActivity() == activity ? state.withCurrentActivity(null) : state;
+            }
+        });
+    }
+
+    public void setLockScreenUp(final boolean lockScreenUp) {
+        update(new Transition() {
+            @Override
+            public AppState apply(AppState state) {
+                return state.withLockScreenUp(lockScreenUp);
+            }
+        });
+    }
+
+    public void setHmiLevel(final HMILevel hmiLevel) {
+        update(new Transition() {
+            @Override
+            public AppState apply(AppState state) {
+                return state.withHmiLevel(hmiLevel);
+            }
+        });
+    }
+}
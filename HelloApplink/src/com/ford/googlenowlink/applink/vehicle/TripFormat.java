@@ -0,0 +1,100 @@
+package com.ford.googlenowlink.applink.vehicle;
+
+import java.nio.ByteBuffer;
+
+/**
+ * On-disk format of a trip recording.
+ *
+ * A trip file starts with a header (magic "VDR1", a format version, the
+ * number of signals and the offset from recorded times to wall-clock time)
+ * followed by blocks. A block holds up to a few hundred
+ * records and is decodable on its own:
+ * <pre>
+ *   int    payload length in bytes
+ *   varint record count n
+ *   varlong time of the first record (ms)
+ *   n-1 x  varlong time delta to the previous record
+ *   n x    varint mask of the signals that changed
+ *   per signal, for each record whose mask has its bit:
+ *          zigzag varlong delta of the fixed-point value to the previous
+ *          one of that signal in the block (the first is relative to 0)
+ * </pre>
+ * Values are stored as fixed-point numbers with a per-signal resolution
+ * (see {@link #SCALE}). Next to the trip file an index file holds one entry
+ * per block: first time, last time and file offset, each a long.
+ */
+final class TripFormat {
+    static final int MAGIC = 0x56445231; // "VDR1"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 4 + 2 + 1 + 8;
+    static final int INDEX_ENTRY_SIZE = 3 * 8;
+    static final String FILE_SUFFIX = ".vdr";
+    static final String INDEX_SUFFIX = ".idx";
+
+    static final VehicleSignal[] SIGNALS = VehicleSignal.values();
+
+    /** Fixed-point steps per unit of each signal, in {@link VehicleSignal} order. */
+    static final double[] SCALE = {
+            100,     // speed: 0.01 km/h
+            1,       // rpm
+            100,     // fuel level: 0.01 %
+            10,      // external temperature: 0.1 degree
+            1,       // odometer: 1 km
+            1,       // PRNDL ordinal
+            1000000, // latitude: 1e-6 degree, ~0.1 m
+            1000000  // longitude
+    };
+
+    // worst case size of one record in a block
+    static final int MAX_RECORD_SIZE = 10 + 5 + SIGNALS.length * 10;
+
+    private TripFormat() {
+    }
+
+    static long quantize(VehicleSignal signal, double value) {
+        return Math.round(value * SCALE[signal.ordinal()]);
+    }
+
+    static double dequantize(VehicleSignal signal, long value) {
+        return value / SCALE[signal.ordinal()];
+    }
+
+    static void writeHeader(ByteBuffer out, long wallClockOffsetMs) {
+        out.putInt(MAGIC);
+        out.putShort(VERSION);
+        out.put((byte) SIGNALS.length);
+        out.putLong(wallClockOffsetMs);
+    }
+
+    static void putVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 63) {
+                throw new IllegalStateException("Malformed varint");
+            }
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    static void putZigZag(ByteBuffer out, long value) {
+        putVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    static long getZigZag(ByteBuffer in) {
+        long value = getVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,220 @@
+package com.ford.googlenowlink.applink.vehicle;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a trip written by {@link TripRecorder}, one change at a time.
+ *
+ * The file is memory-mapped and decoded a block at a time into reusable
+ * primitive arrays, so iterating allocates nothing per record. The values
+ * returned for a record are the latest known value of every signal, not
+ * just the ones that changed. {@link #seek} uses the index file to skip
+ * straight to the block holding a time; without an index it scans.
+ */
+public class TripReader implements Closeable {
+    private static final VehicleSignal[] SIGNALS = TripFormat.SIGNALS;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final long wallClockOffsetMs;
+    // index: one entry per block
+    private final long[] blockFirstTimes;
+    private final long[] blockLastTimes;
+    private final long[] blockOffsets;
+
+    // the decoded block
+    private long[] times = new long[0];
+    private int[] masks = new int[0];
+    private double[][] values = new double[SIGNALS.length][0];
+    private int blockRows;
+    private int row = -1;
+
+    private final double[] current = new double[SIGNALS.length];
+    private int validMask;
+
+    public TripReader(File trip) throws IOException {
+        file = new RandomAccessFile(trip, "r");
+        try {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            if (buffer.remaining() < TripFormat.HEADER_SIZE || buffer.getInt() != TripFormat.MAGIC) {
+                throw new IOException("Not a trip file: " + trip);
+            }
+            short version = buffer.getShort();
+            int signals = buffer.get();
+            if (version != TripFormat.VERSION || signals != SIGNALS.length) {
+                throw new IOException("Unsupported trip file version " + version + " with " + signals + " signals");
+            }
+            wallClockOffsetMs = buffer.getLong();
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+
+        File indexFile = TripRecorder.indexFileOf(trip);
+        int blocks = indexFile.exists() ? (int) (indexFile.length() / TripFormat.INDEX_ENTRY_SIZE) : 0;
+        blockFirstTimes = new long[blocks];
+        blockLastTimes = new long[blocks];
+        blockOffsets = new long[blocks];
+        if (blocks > 0) {
+            RandomAccessFile index = new RandomAccessFile(indexFile, "r");
+            try {
+                ByteBuffer entries = ByteBuffer.allocate(blocks * TripFormat.INDEX_ENTRY_SIZE);
+                FileChannel channel = index.getChannel();
+                while (entries.hasRemaining() && channel.read(entries) >= 0) {
+                    // keep reading
+                }
+                entries.flip();
+                for (int i = 0; i < blocks; i++) {
+                    blockFirstTimes[i] = entries.getLong();
+                    blockLastTimes[i] = entries.getLong();
+                    blockOffsets[i] = entries.getLong();
+                }
+            } finally {
+                index.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the offset to add to recorded times to get wall-clock time in milliseconds.
+     */
+    public long getWallClockOffsetMs() {
+        return wallClockOffsetMs;
+    }
+
+    /**
+     * Returns the number of indexed blocks.
+     */
+    public int getBlockCount() {
+        return blockOffsets.length;
+    }
+
+    /**
+     * Positions the reader before the first record at or after the given time.
+     * Values from before that point are not known until their signals change again.
+     * @return false if there is no such record
+     */
+    public boolean seek(long fromMs) {
+        validMask = 0;
+        blockRows = 0;
+        row = -1;
+        int low = 0;
+        int high = blockLastTimes.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (blockLastTimes[mid] < fromMs) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (low < blockOffsets.length) {
+            buffer.position((int) blockOffsets[low]);
+        } else {
+            // past the indexed blocks: blocks written after the index (if any) are scanned
+            buffer.position(blockOffsets.length == 0 ? TripFormat.HEADER_SIZE : (int) blockOffsets[blockOffsets.length - 1]);
+        }
+        while (next()) {
+            if (times[row] >= fromMs) {
+                row--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves to the next record.
+     * @return false at the end of the trip
+     */
+    public boolean next() {
+        if (row + 1 >= blockRows) {
+            if (!readBlock()) {
+                return false;
+            }
+        }
+        row++;
+        int mask = masks[row];
+        for (int i = 0; i < SIGNALS.length; i++) {
+            if (SIGNALS[i].isIn(mask)) {
+                current[i] = values[i][row];
+            }
+        }
+        validMask |= mask;
+        return true;
+    }
+
+    public long getTimeMs() {
+        return times[row];
+    }
+
+    /**
+     * Returns the {@link VehicleSignal#mask()} bits of the signals that changed in this record.
+     */
+    public int getChangedMask() {
+        return masks[row];
+    }
+
+    public boolean has(VehicleSignal signal) {
+        return signal.isIn(validMask);
+    }
+
+    /**
+     * Returns the latest value of the signal, or NaN if it is not known yet.
+     */
+    public double get(VehicleSignal signal) {
+        return has(signal) ? current[signal.ordinal()] : Double.NaN;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private boolean readBlock() {
+        if (buffer.remaining() < 4) {
+            return false;
+        }
+        int length = buffer.getInt();
+        if (length <= 0 || length > buffer.remaining()) {
+            // a block cut short when the recording was interrupted
+            buffer.position(buffer.limit());
+            return false;
+        }
+        int rows = (int) TripFormat.getVarLong(buffer);
+        if (rows > times.length) {
+            times = new long[rows];
+            masks = new int[rows];
+            for (int i = 0; i < SIGNALS.length; i++) {
+                values[i] = new double[rows];
+            }
+        }
+        long time = TripFormat.getVarLong(buffer);
+        times[0] = time;
+        for (int r = 1; r < rows; r++) {
+            time += TripFormat.getVarLong(buffer);
+            times[r] = time;
+        }
+        for (int r = 0; r < rows; r++) {
+            masks[r] = (int) TripFormat.getVarLong(buffer);
+        }
+        for (int i = 0; i < SIGNALS.length; i++) {
+            long value = 0;
+            for (int r = 0; r < rows; r++) {
+                if (SIGNALS[i].isIn(masks[r])) {
+                    value += TripFormat.getZigZag(buffer);
+                    values[i][r] = TripFormat.dequantize(SIGNALS[i], value);
+                }
+            }
+        }
+        blockRows = rows;
+        row = -1;
+        return true;
+    }
+}
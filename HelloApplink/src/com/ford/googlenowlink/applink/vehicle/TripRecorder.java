@@ -0,0 +1,283 @@
+package com.ford.googlenowlink.applink.vehicle;
+
+import com.ford.googlenowlink.applink.log.AppLog;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Records the vehicle data changes of a trip into a compact {@link TripFormat} file.
+ *
+ * Each change reported by the {@link VehicleDataEngine} is appended as a
+ * fixed-size row to a preallocated direct buffer. Once the buffer is full, or
+ * the flush interval has passed, its rows are encoded column by column with
+ * delta and varint coding and written to the trip file in one block, and the
+ * block's time range is appended to the index file. Recording allocates
+ * nothing per change.
+ */
+public class TripRecorder implements VehicleDataEngine.Listener {
+    public static final int DEFAULT_BLOCK_RECORDS = 256;
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 60000;
+    public static final int DEFAULT_MAX_TRIPS = 20;
+
+    private static final String FILE_PREFIX = "trip-";
+    private static final VehicleSignal[] SIGNALS = TripFormat.SIGNALS;
+    // time, changed mask, one value per signal
+    private static final int ROW_SIZE = 8 + 4 + SIGNALS.length * 8;
+
+    private final File directory;
+    private final int blockRecords;
+    private final long flushIntervalMs;
+    private final int maxTrips;
+    private final ByteBuffer rows;
+    private final ByteBuffer block;
+    private final ByteBuffer header = ByteBuffer.allocate(TripFormat.HEADER_SIZE);
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(TripFormat.INDEX_ENTRY_SIZE);
+    private final long[] previous = new long[SIGNALS.length];
+
+    private File file;
+    private RandomAccessFile dataFile;
+    private RandomAccessFile indexFile;
+    private FileChannel data;
+    private FileChannel index;
+    private int rowCount;
+    private long lastFlushMs;
+    private long recordCount;
+    private long blockCount;
+    private long bytesWritten;
+    private IOException failure;
+
+    public TripRecorder(File directory) {
+        this(directory, DEFAULT_BLOCK_RECORDS, DEFAULT_FLUSH_INTERVAL_MS, DEFAULT_MAX_TRIPS);
+    }
+
+    /**
+     * @param blockRecords    changes buffered before a block is written
+     * @param flushIntervalMs longest time a change stays buffered
+     * @param maxTrips        trip files kept in the directory, older ones are deleted
+     */
+    public TripRecorder(File directory, int blockRecords, long flushIntervalMs, int maxTrips) {
+        this.directory = directory;
+        this.blockRecords = blockRecords;
+        this.flushIntervalMs = flushIntervalMs;
+        this.maxTrips = maxTrips;
+        rows = ByteBuffer.allocateDirect(blockRecords * ROW_SIZE);
+        block = ByteBuffer.allocateDirect(4 + 10 + blockRecords * TripFormat.MAX_RECORD_SIZE);
+    }
+
+    /**
+     * Starts a new trip file. A trip in progress is finished first.
+     * @param clockMs current time on the engine's clock, to relate recorded times to wall-clock time
+     */
+    public synchronized void start(long clockMs) {
+        stop();
+        deleteOldTrips();
+        long now = System.currentTimeMillis();
+        file = new File(directory, FILE_PREFIX
+                + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date(now)) + TripFormat.FILE_SUFFIX);
+        try {
+            dataFile = new RandomAccessFile(file, "rw");
+            dataFile.setLength(0);
+            indexFile = new RandomAccessFile(indexFileOf(file), "rw");
+            indexFile.setLength(0);
+            data = dataFile.getChannel();
+            index = indexFile.getChannel();
+            header.clear();
+            TripFormat.writeHeader(header, now - clockMs);
+            header.flip();
+            writeFully(data, header);
+        } catch (IOException e) {
+            fail(e);
+            return;
+        }
+        rowCount = 0;
+        rows.clear();
+        lastFlushMs = clockMs;
+        recordCount = 0;
+        blockCount = 0;
+        bytesWritten = header.limit();
+        failure = null;
+    }
+
+    public synchronized boolean isRecording() {
+        return data != null;
+    }
+
+    @Override
+    public synchronized void onVehicleData(VehicleDataSnapshot snapshot, int changedMask) {
+        if (data == null) {
+            return;
+        }
+        long timeMs = snapshot.getTimeMs();
+        int base = rowCount * ROW_SIZE;
+        rows.putLong(base, timeMs);
+        rows.putInt(base + 8, changedMask);
+        for (int i = 0; i < SIGNALS.length; i++) {
+            if (SIGNALS[i].isIn(changedMask)) {
+                rows.putDouble(base + 12 + i * 8, snapshot.get(SIGNALS[i]));
+            }
+        }
+        rowCount++;
+        recordCount++;
+        if (rowCount == blockRecords || timeMs - lastFlushMs >= flushIntervalMs) {
+            flush(timeMs);
+        }
+    }
+
+    /**
+     * Writes the buffered changes to the trip file.
+     */
+    public synchronized void flush(long clockMs) {
+        lastFlushMs = clockMs;
+        if (data == null || rowCount == 0) {
+            return;
+        }
+        block.clear();
+        block.putInt(0);
+        TripFormat.putVarLong(block, rowCount);
+        long firstTime = rows.getLong(0);
+        long lastTime = firstTime;
+        TripFormat.putVarLong(block, firstTime);
+        for (int row = 1; row < rowCount; row++) {
+            long time = rows.getLong(row * ROW_SIZE);
+            TripFormat.putVarLong(block, time - lastTime);
+            lastTime = time;
+        }
+        for (int row = 0; row < rowCount; row++) {
+            TripFormat.putVarLong(block, rows.getInt(row * ROW_SIZE + 8));
+        }
+        Arrays.fill(previous, 0);
+        for (int i = 0; i < SIGNALS.length; i++) {
+            for (int row = 0; row < rowCount; row++) {
+                int base = row * ROW_SIZE;
+                if (SIGNALS[i].isIn(rows.getInt(base + 8))) {
+                    long value = TripFormat.quantize(SIGNALS[i], rows.getDouble(base + 12 + i * 8));
+                    TripFormat.putZigZag(block, value - previous[i]);
+                    previous[i] = value;
+                }
+            }
+        }
+        block.putInt(0, block.position() - 4);
+        block.flip();
+        try {
+            long offset = data.position();
+            int length = block.limit();
+            writeFully(data, block);
+            indexEntry.clear();
+            indexEntry.putLong(firstTime).putLong(lastTime).putLong(offset);
+            indexEntry.flip();
+            writeFully(index, indexEntry);
+            bytesWritten += length;
+            blockCount++;
+        } catch (IOException e) {
+            fail(e);
+        }
+        rowCount = 0;
+    }
+
+    /**
+     * Flushes and closes the trip file.
+     */
+    public synchronized void stop() {
+        if (data == null) {
+            return;
+        }
+        flush(lastFlushMs);
+        if (AppLog.isLoggable(Log.INFO)) {
+            AppLog.i("Recorded " + recordCount + " vehicle data changes in " + blockCount
+                    + " blocks, " + bytesWritten + " bytes to " + file);
+        }
+        close();
+    }
+
+    public synchronized File getFile() {
+        return file;
+    }
+
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Returns the error that stopped the last trip, or null.
+     */
+    public synchronized IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Returns the trip files in the directory, oldest first.
+     */
+    public File[] listTrips() {
+        File[] trips = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(FILE_PREFIX) && name.endsWith(TripFormat.FILE_SUFFIX);
+            }
+        });
+        if (trips == null) {
+            return new File[0];
+        }
+        // the timestamp in the name sorts chronologically
+        Arrays.sort(trips);
+        return trips;
+    }
+
+    static File indexFileOf(File trip) {
+        String name = trip.getName();
+        return new File(trip.getParentFile(),
+                name.substring(0, name.length() - TripFormat.FILE_SUFFIX.length()) + TripFormat.INDEX_SUFFIX);
+    }
+
+    private void deleteOldTrips() {
+        File[] trips = listTrips();
+        for (int i = 0; i <= trips.length - maxTrips; i++) {
+            if (!trips[i].delete() || !indexFileOf(trips[i]).delete()) {
+                AppLog.w("Can't delete old trip {}", trips[i]);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void fail(IOException e) {
+        AppLog.e("Can't write trip file {}", file, e);
+        failure = e;
+        close();
+    }
+
+    private void close() {
+        try {
+            if (dataFile != null) {
+                dataFile.close();
+            }
+            if (indexFile != null) {
+                indexFile.close();
+            }
+        } catch (IOException e) {
+            AppLog.e("Can't close trip file {}", file, e);
+        }
+        dataFile = null;
+        indexFile = null;
+        data = null;
+        index = null;
+    }
+}
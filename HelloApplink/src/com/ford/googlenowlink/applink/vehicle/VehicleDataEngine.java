@@ -0,0 +1,325 @@
+package com.ford.googlenowlink.applink.vehicle;
+
+import com.ford.googlenowlink.applink.connection.RegistrationCache;
+import com.ford.googlenowlink.applink.connection.TaskScheduler;
+import com.ford.googlenowlink.applink.log.AppLog;
+import com.ford.googlenowlink.applink.rpc.AsyncRpcClient;
+import com.ford.googlenowlink.applink.rpc.RpcCallback;
+import com.ford.googlenowlink.applink.rpc.RpcFuture;
+import com.ford.syncV4.proxy.rpc.GPSData;
+import com.ford.syncV4.proxy.rpc.GetVehicleData;
+import com.ford.syncV4.proxy.rpc.GetVehicleDataResponse;
+import com.ford.syncV4.proxy.rpc.OnVehicleData;
+import com.ford.syncV4.proxy.rpc.SubscribeVehicleData;
+import com.ford.syncV4.proxy.rpc.SubscribeVehicleDataResponse;
+import com.ford.syncV4.proxy.rpc.UnsubscribeVehicleData;
+import com.ford.syncV4.proxy.rpc.UnsubscribeVehicleDataResponse;
+import com.ford.syncV4.proxy.rpc.enums.PRNDL;
+import com.ford.syncV4.proxy.rpc.enums.Result;
+
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Subscribes to vehicle data and turns the OnVehicleData stream into
+ * snapshots for the app's consumers.
+ *
+ * Every notification is decoded into primitive per-signal values. A value
+ * only counts as a change once its signal's minimum interval has passed and
+ * it moved by more than the signal's deadband. SYNC only notifies on
+ * changes, so a change held back by the interval is published by a flush
+ * scheduled for when the interval ends, unless a notification publishes it
+ * first. Consumers are called, without locking, only for notifications that
+ * changed something, each time with a new immutable {@link VehicleDataSnapshot}.
+ *
+ * Notifications must be fed from one thread at a time, and the scheduler must
+ * run the flush on that thread too.
+ */
+public class VehicleDataEngine {
+    static final String CACHE_KEY = "SubscribeVehicleData";
+
+    /**
+     * Notified when a notification changed at least one signal.
+     */
+    public interface Listener {
+        /**
+         * @param changedMask {@link VehicleSignal#mask()} bits of the signals that changed
+         */
+        void onVehicleData(VehicleDataSnapshot snapshot, int changedMask);
+    }
+
+    private static final VehicleSignal[] SIGNALS = VehicleSignal.values();
+
+    private final AsyncRpcClient rpcClient;
+    private final RegistrationCache registrationCache;
+    private final VehicleDataSubscriptions subscriptions;
+    private final TaskScheduler clock;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    // written only by the thread feeding notifications
+    private final double[] published = new double[SIGNALS.length];
+    private final long[] publishedAt = new long[SIGNALS.length];
+    private final double[] latest = new double[SIGNALS.length];
+    private int latestMask;
+    private int publishedMask;
+    private long notificationCount;
+    private long changeCount;
+    // when the scheduled flush runs, -1 if none is scheduled
+    private long flushAtMs = -1;
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushAtMs = -1;
+            publish(clock.now());
+        }
+    };
+
+    private volatile VehicleDataSnapshot snapshot = VehicleDataSnapshot.EMPTY;
+
+    /**
+     * @param registrationCache records the subscription for replay after a warm reconnect, may be null
+     * @param clock             time source for the sampling intervals; runs the flush of held back
+     *                          changes on the thread that feeds the notifications
+     */
+    public VehicleDataEngine(AsyncRpcClient rpcClient, RegistrationCache registrationCache,
+                             VehicleDataSubscriptions subscriptions, TaskScheduler clock) {
+        this.rpcClient = rpcClient;
+        this.registrationCache = registrationCache;
+        this.subscriptions = subscriptions;
+        this.clock = clock;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the last snapshot handed to the listeners.
+     */
+    public VehicleDataSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public VehicleDataSubscriptions getSubscriptions() {
+        return subscriptions;
+    }
+
+    /**
+     * Subscribes to every configured signal.
+     */
+    public RpcFuture<SubscribeVehicleDataResponse> subscribe() {
+        final SubscribeVehicleData request = new SubscribeVehicleData();
+        request.setSpeed(subscriptions.contains(VehicleSignal.SPEED));
+        request.setRpm(subscriptions.contains(VehicleSignal.RPM));
+        request.setFuelLevel(subscriptions.contains(VehicleSignal.FUEL_LEVEL));
+        request.setExternalTemperature(subscriptions.contains(VehicleSignal.EXTERNAL_TEMPERATURE));
+        request.setOdometer(subscriptions.contains(VehicleSignal.ODOMETER));
+        request.setPrndl(subscriptions.contains(VehicleSignal.PRNDL));
+        request.setGps(subscriptions.contains(VehicleSignal.GPS_LATITUDE)
+                || subscriptions.contains(VehicleSignal.GPS_LONGITUDE));
+        RpcFuture<SubscribeVehicleDataResponse> future = rpcClient.send(request, SubscribeVehicleDataResponse.class);
+        future.addCallback(new RpcCallback<SubscribeVehicleDataResponse>() {
+            @Override
+            public void onResponse(SubscribeVehicleDataResponse response) {
+                if (response.getResultCode() == Result.SUCCESS) {
+                    if (registrationCache != null) {
+                        registrationCache.record(CACHE_KEY, request, SubscribeVehicleDataResponse.class);
+                    }
+                } else {
+                    AppLog.w("SubscribeVehicleData failed: {} {}", response.getResultCode(), response.getInfo());
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                AppLog.w("SubscribeVehicleData failed", cause);
+            }
+        });
+        return future;
+    }
+
+    public RpcFuture<UnsubscribeVehicleDataResponse> unsubscribe() {
+        if (registrationCache != null) {
+            registrationCache.forget(CACHE_KEY);
+        }
+        UnsubscribeVehicleData request = new UnsubscribeVehicleData();
+        request.setSpeed(subscriptions.contains(VehicleSignal.SPEED));
+        request.setRpm(subscriptions.contains(VehicleSignal.RPM));
+        request.setFuelLevel(subscriptions.contains(VehicleSignal.FUEL_LEVEL));
+        request.setExternalTemperature(subscriptions.contains(VehicleSignal.EXTERNAL_TEMPERATURE));
+        request.setOdometer(subscriptions.contains(VehicleSignal.ODOMETER));
+        request.setPrndl(subscriptions.contains(VehicleSignal.PRNDL));
+        request.setGps(subscriptions.contains(VehicleSignal.GPS_LATITUDE)
+                || subscriptions.contains(VehicleSignal.GPS_LONGITUDE));
+        return rpcClient.send(request, UnsubscribeVehicleDataResponse.class);
+    }
+
+    /**
+     * Reads the current value of every configured signal once, e.g. right
+     * after subscribing, since notifications only arrive on changes. Pass the
+     * response to {@link #onGetVehicleDataResponse} from the thread that feeds
+     * the notifications.
+     */
+    public RpcFuture<GetVehicleDataResponse> refresh() {
+        GetVehicleData request = new GetVehicleData();
+        request.setSpeed(subscriptions.contains(VehicleSignal.SPEED));
+        request.setRpm(subscriptions.contains(VehicleSignal.RPM));
+        request.setFuelLevel(subscriptions.contains(VehicleSignal.FUEL_LEVEL));
+        request.setExternalTemperature(subscriptions.contains(VehicleSignal.EXTERNAL_TEMPERATURE));
+        request.setOdometer(subscriptions.contains(VehicleSignal.ODOMETER));
+        request.setPrndl(subscriptions.contains(VehicleSignal.PRNDL));
+        request.setGps(subscriptions.contains(VehicleSignal.GPS_LATITUDE)
+                || subscriptions.contains(VehicleSignal.GPS_LONGITUDE));
+        return rpcClient.send(request, GetVehicleDataResponse.class);
+    }
+
+    public void onVehicleData(OnVehicleData notification) {
+        onVehicleData(notification, clock.now());
+    }
+
+    /**
+     * Applies a notification received at the given time (on the engine's clock).
+     */
+    public void onVehicleData(OnVehicleData notification, long timeMs) {
+        apply(timeMs, notification.getSpeed(), notification.getRpm(), notification.getFuelLevel(),
+                notification.getExternalTemperature(), notification.getOdometer(), notification.getPrndl(),
+                notification.getGps());
+    }
+
+    /**
+     * Applies the values read by {@link #refresh()}.
+     */
+    public void onGetVehicleDataResponse(GetVehicleDataResponse response) {
+        if (response.getResultCode() != Result.SUCCESS) {
+            return;
+        }
+        apply(clock.now(), response.getSpeed(), response.getRpm(), response.getFuelLevel(),
+                response.getExternalTemperature(), response.getOdometer(), response.getPrndl(),
+                response.getGps());
+    }
+
+    private void apply(long timeMs, Double speed, Integer rpm, Double fuelLevel, Double externalTemperature,
+                       Integer odometer, PRNDL prndl, GPSData gps) {
+        notificationCount++;
+        if (speed != null) {
+            offer(VehicleSignal.SPEED, speed);
+        }
+        if (rpm != null) {
+            offer(VehicleSignal.RPM, rpm);
+        }
+        if (fuelLevel != null) {
+            offer(VehicleSignal.FUEL_LEVEL, fuelLevel);
+        }
+        if (externalTemperature != null) {
+            offer(VehicleSignal.EXTERNAL_TEMPERATURE, externalTemperature);
+        }
+        if (odometer != null) {
+            offer(VehicleSignal.ODOMETER, odometer);
+        }
+        if (prndl != null) {
+            offer(VehicleSignal.PRNDL, prndl.ordinal());
+        }
+        if (gps != null) {
+            Double latitude = gps.getLatitudeDegrees();
+            Double longitude = gps.getLongitudeDegrees();
+            if (latitude != null) {
+                offer(VehicleSignal.GPS_LATITUDE, latitude);
+            }
+            if (longitude != null) {
+                offer(VehicleSignal.GPS_LONGITUDE, longitude);
+            }
+        }
+        publish(timeMs);
+    }
+
+    private void offer(VehicleSignal signal, double value) {
+        if (subscriptions.contains(signal)) {
+            latest[signal.ordinal()] = value;
+            latestMask |= signal.mask();
+        }
+    }
+
+    private void publish(long timeMs) {
+        int changedMask = 0;
+        // when the first change held back by its interval may go out, -1 if none is
+        long heldUntilMs = -1;
+        int pending = latestMask;
+        for (int i = 0; pending != 0; i++, pending >>>= 1) {
+            if ((pending & 1) == 0) {
+                continue;
+            }
+            VehicleSignal signal = SIGNALS[i];
+            if (signal.isIn(publishedMask)) {
+                if (Math.abs(latest[i] - published[i]) <= subscriptions.getDeadband(signal)) {
+                    continue;
+                }
+                long dueMs = publishedAt[i] + subscriptions.getMinIntervalMs(signal);
+                if (timeMs < dueMs) {
+                    if (heldUntilMs < 0 || dueMs < heldUntilMs) {
+                        heldUntilMs = dueMs;
+                    }
+                    continue;
+                }
+            }
+            published[i] = latest[i];
+            publishedAt[i] = timeMs;
+            publishedMask |= signal.mask();
+            changedMask |= signal.mask();
+        }
+        if (heldUntilMs >= 0) {
+            scheduleFlush(heldUntilMs, timeMs);
+        }
+        if (changedMask == 0) {
+            return;
+        }
+        changeCount++;
+        VehicleDataSnapshot next = new VehicleDataSnapshot(published.clone(), publishedMask, timeMs);
+        snapshot = next;
+        for (Listener listener : listeners) {
+            listener.onVehicleData(next, changedMask);
+        }
+    }
+
+    /**
+     * Schedules a flush for when a held back change may go out, unless one is
+     * already scheduled by then.
+     */
+    private void scheduleFlush(long dueMs, long timeMs) {
+        if (flushAtMs >= 0 && flushAtMs <= dueMs) {
+            return;
+        }
+        flushAtMs = dueMs;
+        clock.cancel(flushTask);
+        clock.postDelayed(flushTask, dueMs - timeMs);
+    }
+
+    /**
+     * Forgets every value, e.g. after the proxy was closed.
+     * Must not run concurrently with a notification.
+     */
+    public void reset() {
+        clock.cancel(flushTask);
+        flushAtMs = -1;
+        latestMask = 0;
+        publishedMask = 0;
+        snapshot = VehicleDataSnapshot.EMPTY;
+    }
+
+    /**
+     * Returns the number of notifications applied.
+     */
+    public long getNotificationCount() {
+        return notificationCount;
+    }
+
+    /**
+     * Returns the number of snapshots handed to the listeners, by notifications or flushes.
+     */
+    public long getChangeCount() {
+        return changeCount;
+    }
+}
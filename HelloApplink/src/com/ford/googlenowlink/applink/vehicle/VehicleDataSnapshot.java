@@ -0,0 +1,88 @@
+package com.ford.googlenowlink.applink.vehicle;
+
+import com.ford.syncV4.proxy.rpc.enums.PRNDL;
+
+/**
+ * Immutable copy of the latest vehicle data values, one primitive per
+ * {@link VehicleSignal}. Signals SYNC has not reported yet are not valid.
+ */
+public class VehicleDataSnapshot {
+    static final VehicleDataSnapshot EMPTY = new VehicleDataSnapshot(new double[VehicleSignal.values().length], 0, 0);
+
+    private static final PRNDL[] GEARS = PRNDL.values();
+
+    private final double[] values;
+    private final int validMask;
+    private final long timeMs;
+
+    VehicleDataSnapshot(double[] values, int validMask, long timeMs) {
+        this.values = values;
+        this.validMask = validMask;
+        this.timeMs = timeMs;
+    }
+
+    public boolean has(VehicleSignal signal) {
+        return signal.isIn(validMask);
+    }
+
+    /**
+     * Returns the signal's value, or NaN if it has not been reported.
+     */
+    public double get(VehicleSignal signal) {
+        return has(signal) ? values[signal.ordinal()] : Double.NaN;
+    }
+
+    public double getSpeed() {
+        return get(VehicleSignal.SPEED);
+    }
+
+    public double getFuelLevel() {
+        return get(VehicleSignal.FUEL_LEVEL);
+    }
+
+    public double getLatitude() {
+        return get(VehicleSignal.GPS_LATITUDE);
+    }
+
+    public double getLongitude() {
+        return get(VehicleSignal.GPS_LONGITUDE);
+    }
+
+    /**
+     * Returns the gear selector position, or null if it has not been reported.
+     */
+    public PRNDL getPrndl() {
+        if (!has(VehicleSignal.PRNDL)) {
+            return null;
+        }
+        int ordinal = (int) values[VehicleSignal.PRNDL.ordinal()];
+        return ordinal >= 0 && ordinal < GEARS.length ? GEARS[ordinal] : null;
+    }
+
+    public int getValidMask() {
+        return validMask;
+    }
+
+    /**
+     * Returns the time the snapshot was taken, on the engine's clock.
+     */
+    public long getTimeMs() {
+        return timeMs;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("VehicleData[t=").append(timeMs);
+        for (VehicleSignal signal : VehicleSignal.values()) {
+            if (has(signal)) {
+                sb.append(", ").append(signal).append('=');
+                if (signal == VehicleSignal.PRNDL) {
+                    sb.append(getPrndl());
+                } else {
+                    sb.append(values[signal.ordinal()]);
+                }
+            }
+        }
+        return sb.append(']').toString();
+    }
+}
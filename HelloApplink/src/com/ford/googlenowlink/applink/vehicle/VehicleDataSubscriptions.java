@@ -0,0 +1,51 @@
+package com.ford.googlenowlink.applink.vehicle;
+
+/**
+ * Declarative description of the vehicle data the app subscribes to, and
+ * how often and by how much each signal must change before consumers hear
+ * about it.
+ */
+public class VehicleDataSubscriptions {
+    private final long[] minIntervalMs = new long[VehicleSignal.values().length];
+    private final double[] deadband = new double[VehicleSignal.values().length];
+    private int mask;
+
+    /**
+     * Subscribes to a signal.
+     * @param minIntervalMs minimum time between two reported changes of the signal, 0 for no limit
+     * @param deadband      changes up to this size are ignored, 0 to report every change
+     */
+    public VehicleDataSubscriptions add(VehicleSignal signal, long minIntervalMs, double deadband) {
+        if (minIntervalMs < 0 || deadband < 0) {
+            throw new IllegalArgumentException("minIntervalMs and deadband must not be negative");
+        }
+        this.minIntervalMs[signal.ordinal()] = minIntervalMs;
+        this.deadband[signal.ordinal()] = deadband;
+        mask |= signal.mask();
+        return this;
+    }
+
+    /**
+     * Subscribes to both GPS coordinates with the same limits.
+     */
+    public VehicleDataSubscriptions addGps(long minIntervalMs, double deadbandDegrees) {
+        add(VehicleSignal.GPS_LATITUDE, minIntervalMs, deadbandDegrees);
+        return add(VehicleSignal.GPS_LONGITUDE, minIntervalMs, deadbandDegrees);
+    }
+
+    public boolean contains(VehicleSignal signal) {
+        return signal.isIn(mask);
+    }
+
+    public int getMask() {
+        return mask;
+    }
+
+    public long getMinIntervalMs(VehicleSignal signal) {
+        return minIntervalMs[signal.ordinal()];
+    }
+
+    public double getDeadband(VehicleSignal signal) {
+        return deadband[signal.ordinal()];
+    }
+}
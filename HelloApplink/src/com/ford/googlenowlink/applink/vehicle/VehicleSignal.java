@@ -0,0 +1,32 @@
+package com.ford.googlenowlink.applink.vehicle;
+
+/**
+ * Vehicle data signals the app can subscribe to. Each has a bit in the
+ * masks used by {@link VehicleDataSnapshot} and {@link VehicleDataEngine.Listener}.
+ */
+public enum VehicleSignal {
+    /** km/h */
+    SPEED,
+    /** rpm */
+    RPM,
+    /** percent */
+    FUEL_LEVEL,
+    /** degrees Celsius */
+    EXTERNAL_TEMPERATURE,
+    /** km */
+    ODOMETER,
+    /** ordinal of the PRNDL enum */
+    PRNDL,
+    /** degrees */
+    GPS_LATITUDE,
+    /** degrees */
+    GPS_LONGITUDE;
+
+    public int mask() {
+        return 1 << ordinal();
+    }
+
+    public boolean isIn(int mask) {
+        return (mask & mask()) != 0;
+    }
+}
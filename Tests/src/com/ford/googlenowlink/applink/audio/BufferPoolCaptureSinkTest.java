@@ -0,0 +1,74 @@
+package com.ford.googlenowlink.applink.audio;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BufferPoolCaptureSinkTest {
+    private static final byte[] CHUNK = new byte[100];
+
+    private final List<ByteBuffer> utterances = new ArrayList<ByteBuffer>();
+    private final List<Integer> dropped = new ArrayList<Integer>();
+    private BufferPoolCaptureSink sink;
+
+    @Before
+    public void setUp() {
+        sink = new BufferPoolCaptureSink(1000, 1, new BufferPoolCaptureSink.Listener() {
+            @Override
+            public void onUtterance(ByteBuffer audio, int droppedChunks) {
+                utterances.add(audio);
+            }
+
+            @Override
+            public void onUtteranceDropped(int droppedChunks) {
+                dropped.add(droppedChunks);
+            }
+        });
+    }
+
+    @Test
+    public void utteranceIsHandedToTheListener() {
+        sink.start();
+        assertTrue(sink.write(CHUNK));
+        assertTrue(sink.write(CHUNK));
+        sink.finish();
+
+        assertFalse(sink.isCapturing());
+        assertEquals(1, utterances.size());
+        assertEquals(200, utterances.get(0).remaining());
+        assertTrue(dropped.isEmpty());
+    }
+
+    @Test
+    public void exhaustedPoolDropsTheWholeUtteranceOnce() {
+        sink.start();
+        sink.finish();
+        // the only buffer is still held by the listener
+        sink.start();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(sink.isCapturing());
+            assertFalse(sink.write(CHUNK));
+        }
+        sink.finish();
+
+        assertFalse(sink.isCapturing());
+        assertEquals(Arrays.asList(5), dropped);
+        assertEquals(1, utterances.size());
+
+        // once the buffer is back the next utterance is captured again
+        sink.recycle(utterances.get(0));
+        sink.start();
+        assertTrue(sink.write(CHUNK));
+        sink.finish();
+        assertEquals(2, utterances.size());
+        assertEquals(Arrays.asList(5), dropped);
+    }
+}
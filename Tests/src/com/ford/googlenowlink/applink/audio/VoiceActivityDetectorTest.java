@@ -0,0 +1,119 @@
+package com.ford.googlenowlink.applink.audio;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays the PCM fixtures in fixtures/vad (16 kHz, 16-bit LE mono, see the
+ * README there) through the detector as OnAudioPassThru chunks and checks the
+ * frame, at 20 ms each, where it settles.
+ */
+public class VoiceActivityDetectorTest {
+    private static final int SAMPLE_RATE = 16000;
+    // 20 ms of audio
+    private static final int FRAME_BYTES = 640;
+
+    /** The state the detector settled in and the frame at which it did. */
+    private static class Outcome {
+        final VoiceActivityDetector.State state;
+        final int frame;
+
+        Outcome(VoiceActivityDetector.State state, int frame) {
+            this.state = state;
+            this.frame = frame;
+        }
+    }
+
+    @Test
+    public void speechFromTheFirstFrameEndsAfterTheHangover() throws IOException {
+        // 1.2 s of speech from t=0 (frame 60), then 700 ms of hangover
+        Outcome outcome = replay("speech_at_start.pcm", FRAME_BYTES);
+        assertEquals(VoiceActivityDetector.State.ENDED, outcome.state);
+        assertEquals(95, outcome.frame);
+    }
+
+    @Test
+    public void fricativeTailExtendsTheUtterance() throws IOException {
+        // voiced speech stops at 1.2 s (frame 60), the fricative at 1.6 s (frame 80)
+        Outcome outcome = replay("fricative_tail.pcm", FRAME_BYTES);
+        assertEquals(VoiceActivityDetector.State.ENDED, outcome.state);
+        assertEquals(115, outcome.frame);
+    }
+
+    @Test
+    public void roomNoiseTimesOutWithoutSpeech() throws IOException {
+        Outcome outcome = replay("room_noise.pcm", FRAME_BYTES);
+        assertEquals(VoiceActivityDetector.State.NO_SPEECH, outcome.state);
+        // 5 s no-speech timeout
+        assertEquals(250, outcome.frame);
+    }
+
+    @Test
+    public void samplesSplitAcrossChunksGiveTheSameResult() throws IOException {
+        // odd chunk sizes leave half a sample at the end of every other chunk
+        for (int chunkSize : new int[] {1, 333, 639}) {
+            Outcome outcome = replay("fricative_tail.pcm", chunkSize);
+            assertEquals("chunk size " + chunkSize, VoiceActivityDetector.State.ENDED, outcome.state);
+            assertEquals("chunk size " + chunkSize, 115, outcome.frame);
+        }
+    }
+
+    @Test
+    public void resetStartsOver() throws IOException {
+        byte[] pcm = load("speech_at_start.pcm");
+        VoiceActivityDetector vad = new VoiceActivityDetector(SAMPLE_RATE);
+        vad.process(pcm, 0, pcm.length);
+        assertEquals(VoiceActivityDetector.State.ENDED, vad.getState());
+
+        vad.reset();
+        assertEquals(VoiceActivityDetector.State.WAITING, vad.getState());
+        assertEquals(0, vad.getFrameCount());
+        // half a sample left from a previous utterance must not shift this one
+        vad.process(new byte[] {1}, 0, 1);
+        vad.reset();
+        assertEquals(95, settle(vad, pcm, FRAME_BYTES).frame);
+    }
+
+    private static Outcome replay(String fixture, int chunkSize) throws IOException {
+        return settle(new VoiceActivityDetector(SAMPLE_RATE), load(fixture), chunkSize);
+    }
+
+    /**
+     * Feeds the audio chunk by chunk and returns as soon as the utterance is
+     * over; chunks are at most a frame long, so at most one frame ends per chunk
+     * and the frame count is the one the state changed on.
+     */
+    private static Outcome settle(VoiceActivityDetector vad, byte[] pcm, int chunkSize) {
+        assertTrue(chunkSize <= FRAME_BYTES);
+        for (int offset = 0; offset < pcm.length; offset += chunkSize) {
+            VoiceActivityDetector.State state = vad.process(pcm, offset, Math.min(chunkSize, pcm.length - offset));
+            if (state == VoiceActivityDetector.State.ENDED || state == VoiceActivityDetector.State.NO_SPEECH) {
+                return new Outcome(state, vad.getFrameCount());
+            }
+        }
+        return new Outcome(vad.getState(), vad.getFrameCount());
+    }
+
+    private static byte[] load(String fixture) throws IOException {
+        InputStream in = VoiceActivityDetectorTest.class.getResourceAsStream("/vad/" + fixture);
+        assertNotNull(fixture, in);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
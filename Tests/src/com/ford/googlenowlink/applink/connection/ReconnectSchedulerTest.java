@@ -0,0 +1,152 @@
+package com.ford.googlenowlink.applink.connection;
+
+import com.ford.syncV4.exception.SyncExceptionCause;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the scheduler with the default settings on a virtual clock. The jitter
+ * source is seeded, and a second Random with the same seed gives the delays the
+ * attempts are expected at.
+ */
+public class ReconnectSchedulerTest {
+    private static final long SEED = 42;
+    private static final long ATTEMPT_TIMEOUT_MS = 30000;
+    // the delay of each of the eight attempts is drawn from the upper half of these
+    private static final long[] BACKOFF_CEILINGS_MS = {1000, 2000, 4000, 8000, 16000, 32000, 60000, 60000};
+    // the proxy closed while connected or connecting
+    private static final SyncExceptionCause TRANSIENT = SyncExceptionCause.HEARTBEAT_PAST_DUE;
+
+    private VirtualTaskScheduler clock;
+    private Random expectedJitter;
+    private int reconnects;
+    private ReconnectScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        clock = new VirtualTaskScheduler();
+        expectedJitter = new Random(SEED);
+        scheduler = new ReconnectScheduler(clock, new Runnable() {
+            @Override
+            public void run() {
+                reconnects++;
+            }
+        }, new Random(SEED), ReconnectScheduler.DEFAULT_BASE_DELAY_MS, ReconnectScheduler.DEFAULT_MAX_DELAY_MS,
+                ReconnectScheduler.DEFAULT_MAX_ATTEMPTS, ReconnectScheduler.DEFAULT_OPEN_DURATION_MS);
+    }
+
+    @Test
+    public void backoffDoublesWithEqualJitterUpToTheCap() {
+        scheduler.onConnectionLost(TRANSIENT);
+        for (int attempt = 0; attempt < BACKOFF_CEILINGS_MS.length; attempt++) {
+            assertEquals(ReconnectScheduler.State.BACKOFF, scheduler.getState());
+            long delay = nextDelay(BACKOFF_CEILINGS_MS[attempt]);
+            assertTrue("attempt " + attempt + " after " + delay + " ms",
+                    delay >= BACKOFF_CEILINGS_MS[attempt] / 2 && delay <= BACKOFF_CEILINGS_MS[attempt]);
+            expectAttemptAfter(delay);
+            scheduler.onConnectionLost(TRANSIENT);
+        }
+        assertEquals(BACKOFF_CEILINGS_MS.length, scheduler.getTotalAttempts());
+    }
+
+    @Test
+    public void circuitOpensAfterEightFailedAttemptsAndProbesAfterFiveMinutes() {
+        failEveryAttempt();
+        assertEquals(ReconnectScheduler.State.OPEN, scheduler.getState());
+        assertEquals(1, scheduler.getCircuitOpenCount());
+
+        // the probe fails: open again for another five minutes
+        expectAttemptAfter(ReconnectScheduler.DEFAULT_OPEN_DURATION_MS);
+        assertEquals(ReconnectScheduler.State.HALF_OPEN, scheduler.getState());
+        scheduler.onConnectionLost(TRANSIENT);
+        assertEquals(ReconnectScheduler.State.OPEN, scheduler.getState());
+        assertEquals(2, scheduler.getCircuitOpenCount());
+
+        // the next probe connects, which closes the circuit
+        expectAttemptAfter(ReconnectScheduler.DEFAULT_OPEN_DURATION_MS);
+        scheduler.onConnected();
+        assertEquals(ReconnectScheduler.State.IDLE, scheduler.getState());
+        assertEquals(1, scheduler.getReconnectCount());
+        assertEquals(clock.now(), scheduler.getLastReconnectMs());
+        assertEquals(0, clock.getPendingCount());
+
+        // a new failure starts over at the shortest backoff
+        scheduler.onConnectionLost(TRANSIENT);
+        expectAttemptAfter(nextDelay(1000));
+    }
+
+    @Test
+    public void attemptThatNeverFinishesFailsAfterThirtySeconds() {
+        scheduler.onConnectionLost(TRANSIENT);
+        expectAttemptAfter(nextDelay(1000));
+
+        // neither connected nor closed again
+        clock.advance(ATTEMPT_TIMEOUT_MS - 1);
+        assertEquals(1, reconnects);
+        clock.advance(1);
+        assertEquals(ReconnectScheduler.State.BACKOFF, scheduler.getState());
+        expectAttemptAfter(nextDelay(2000));
+
+        // connecting in time cancels the timeout
+        scheduler.onConnected();
+        clock.advance(ATTEMPT_TIMEOUT_MS);
+        assertEquals(ReconnectScheduler.State.IDLE, scheduler.getState());
+        assertEquals(2, reconnects);
+    }
+
+    @Test
+    public void permanentCauseOpensTheCircuitRightAway() {
+        scheduler.onConnectionLost(SyncExceptionCause.SYNC_REGISTRATION_ERROR);
+        assertEquals(ReconnectScheduler.State.OPEN, scheduler.getState());
+        assertEquals(1, scheduler.getCircuitOpenCount());
+        expectAttemptAfter(ReconnectScheduler.DEFAULT_OPEN_DURATION_MS);
+        assertEquals(ReconnectScheduler.State.HALF_OPEN, scheduler.getState());
+    }
+
+    @Test
+    public void causesThatNeedNoReconnectScheduleNothing() {
+        scheduler.onConnectionLost(SyncExceptionCause.SYNC_PROXY_CYCLED);
+        assertEquals(ReconnectScheduler.State.IDLE, scheduler.getState());
+        assertEquals(0, clock.getPendingCount());
+
+        scheduler.onConnectionLost(TRANSIENT);
+        scheduler.onConnectionLost(SyncExceptionCause.BLUETOOTH_DISABLED);
+        assertEquals(ReconnectScheduler.State.IDLE, scheduler.getState());
+        assertEquals(0, clock.getPendingCount());
+        clock.advance(ReconnectScheduler.DEFAULT_OPEN_DURATION_MS);
+        assertEquals(0, reconnects);
+    }
+
+    /**
+     * Returns the delay the scheduler draws for an attempt with this backoff ceiling.
+     */
+    private long nextDelay(long ceiling) {
+        long half = ceiling / 2;
+        return half + (long) (expectedJitter.nextDouble() * (ceiling - half));
+    }
+
+    /**
+     * Checks that the next attempt runs exactly after the delay, not a millisecond earlier.
+     */
+    private void expectAttemptAfter(long delayMs) {
+        int before = reconnects;
+        clock.advance(delayMs - 1);
+        assertEquals("attempt before " + delayMs + " ms", before, reconnects);
+        clock.advance(1);
+        assertEquals("attempt after " + delayMs + " ms", before + 1, reconnects);
+    }
+
+    private void failEveryAttempt() {
+        scheduler.onConnectionLost(TRANSIENT);
+        for (long ceiling : BACKOFF_CEILINGS_MS) {
+            expectAttemptAfter(nextDelay(ceiling));
+            scheduler.onConnectionLost(TRANSIENT);
+        }
+    }
+}
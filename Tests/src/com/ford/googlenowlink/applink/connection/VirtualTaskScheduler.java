@@ -0,0 +1,76 @@
+package com.ford.googlenowlink.applink.connection;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A {@link TaskScheduler} on a virtual clock that only moves when the test
+ * advances it, running the tasks that came due on the test's thread. Like a
+ * Handler, cancel removes every pending post of the task.
+ */
+public class VirtualTaskScheduler implements TaskScheduler {
+    private static class Pending {
+        final Runnable task;
+        final long dueMs;
+
+        Pending(Runnable task, long dueMs) {
+            this.task = task;
+            this.dueMs = dueMs;
+        }
+    }
+
+    private final List<Pending> pending = new ArrayList<Pending>();
+    private long nowMs;
+
+    @Override
+    public synchronized long now() {
+        return nowMs;
+    }
+
+    @Override
+    public synchronized void postDelayed(Runnable task, long delayMs) {
+        pending.add(new Pending(task, nowMs + delayMs));
+    }
+
+    @Override
+    public synchronized void cancel(Runnable task) {
+        Iterator<Pending> it = pending.iterator();
+        while (it.hasNext()) {
+            if (it.next().task == task) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Moves the clock forward, running the tasks that come due in order.
+     */
+    public void advance(long ms) {
+        long target;
+        synchronized (this) {
+            target = nowMs + ms;
+        }
+        while (true) {
+            Pending next = null;
+            synchronized (this) {
+                for (Pending candidate : pending) {
+                    if (candidate.dueMs <= target && (next == null || candidate.dueMs < next.dueMs)) {
+                        next = candidate;
+                    }
+                }
+                if (next == null) {
+                    nowMs = target;
+                    return;
+                }
+                pending.remove(next);
+                nowMs = next.dueMs;
+            }
+            next.task.run();
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+}
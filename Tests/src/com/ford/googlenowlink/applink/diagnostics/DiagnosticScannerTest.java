@@ -0,0 +1,163 @@
+package com.ford.googlenowlink.applink.diagnostics;
+
+import com.ford.googlenowlink.applink.connection.VirtualTaskScheduler;
+import com.ford.googlenowlink.applink.rpc.AsyncRpcClient;
+import com.ford.googlenowlink.applink.rpc.LoopbackRpcTransport;
+import com.ford.syncV4.proxy.rpc.DIDResult;
+import com.ford.syncV4.proxy.rpc.enums.VehicleDataResultCode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiagnosticScannerTest {
+    private static final int ECU = 0x7E0;
+    private static final int DID_COUNT = 2500;
+    private static final int MAX_DIDS_PER_REQUEST = 1000;
+    private static final int MAX_CONCURRENT = 2;
+    private static final long DTC_TTL_MS = 60000;
+    private static final long DID_TTL_MS = 10000;
+
+    /**
+     * Holds responses until the test delivers them, newest first, and records
+     * how many requests were in flight at most.
+     */
+    private class HeldResponses implements Executor {
+        final List<Runnable> held = new ArrayList<Runnable>();
+        int maxInFlight;
+
+        @Override
+        public void execute(Runnable delivery) {
+            held.add(delivery);
+            maxInFlight = Math.max(maxInFlight, client.getPendingCount());
+        }
+
+        void deliverNewestFirst() {
+            while (!held.isEmpty()) {
+                held.remove(held.size() - 1).run();
+            }
+        }
+    }
+
+    private final List<DiagnosticReport> reports = new ArrayList<DiagnosticReport>();
+    private final DiagnosticScanner.Listener listener = new DiagnosticScanner.Listener() {
+        @Override
+        public void onScanComplete(DiagnosticReport report) {
+            reports.add(report);
+        }
+    };
+    private VirtualTaskScheduler clock;
+    private SimulatedEcuResponder ecus;
+    private HeldResponses responses;
+    private AsyncRpcClient client;
+    private DiagnosticScanner scanner;
+    private DiagnosticScan scan;
+
+    @Before
+    public void setUp() {
+        clock = new VirtualTaskScheduler();
+        ecus = new SimulatedEcuResponder().addEcu(ECU, 0x11, "P0301", "P0420");
+        // the ECU rejects a request with more DIDs than the scanner may send
+        ecus.setMaxDidsPerRequest(MAX_DIDS_PER_REQUEST);
+        int[] dids = new int[DID_COUNT];
+        for (int i = 0; i < DID_COUNT; i++) {
+            dids[i] = 0xD000 + i;
+            ecus.setDid(ECU, dids[i], "data" + i);
+        }
+        responses = new HeldResponses();
+        LoopbackRpcTransport transport = new LoopbackRpcTransport(ecus, responses);
+        client = new AsyncRpcClient(transport, null, 0);
+        transport.setClient(client);
+        scanner = new DiagnosticScanner(client, clock, MAX_DIDS_PER_REQUEST, MAX_CONCURRENT, DTC_TTL_MS,
+                DID_TTL_MS);
+        scan = new DiagnosticScan().readDtcs(ECU).readDids(ECU, dids);
+    }
+
+    @Test
+    public void didsAreSplitAndReassembledFromOutOfOrderResponses() {
+        scanner.scan(scan, listener);
+        assertTrue(reports.isEmpty());
+        responses.deliverNewestFirst();
+
+        assertEquals(1, reports.size());
+        DiagnosticReport.EcuReport report = reports.get(0).getEcuReport(ECU);
+        assertEquals(Arrays.asList(), report.getFailures());
+        // GetDTCs and ReadDIDs of 1000, 1000 and 500 DIDs
+        assertEquals(4, report.getRequestCount());
+        assertEquals(4, ecus.getRequestCount());
+        assertEquals(MAX_CONCURRENT, responses.maxInFlight);
+        assertEquals(Arrays.asList("P0301", "P0420"), report.getDtcs());
+        assertEquals(Integer.valueOf(0x11), report.getEcuHeader());
+        assertEquals(DID_COUNT, report.getDids().size());
+        for (int i = 0; i < DID_COUNT; i++) {
+            DIDResult result = report.getDids().get(0xD000 + i);
+            assertEquals(VehicleDataResultCode.SUCCESS, result.getResultCode());
+            assertEquals("data" + i, result.getData());
+        }
+    }
+
+    @Test
+    public void resultsAreCachedWithinTheirTimeToLive() {
+        scanner.scan(scan, listener);
+        responses.deliverNewestFirst();
+
+        clock.advance(DID_TTL_MS - 1);
+        scanner.scan(scan, listener);
+        // answered from the cache before scan() returns
+        assertEquals(2, reports.size());
+        DiagnosticReport.EcuReport cached = reports.get(1).getEcuReport(ECU);
+        assertEquals(0, cached.getRequestCount());
+        assertEquals(DID_COUNT + 1, cached.getCachedCount());
+        assertEquals(DID_COUNT, cached.getDids().size());
+        assertEquals(4, ecus.getRequestCount());
+    }
+
+    @Test
+    public void expiredResultsAreQueriedAgain() {
+        scanner.scan(scan, listener);
+        responses.deliverNewestFirst();
+
+        // the DIDs expired, the DTCs did not
+        clock.advance(DID_TTL_MS);
+        scanner.scan(scan, listener);
+        responses.deliverNewestFirst();
+        DiagnosticReport.EcuReport report = reports.get(1).getEcuReport(ECU);
+        assertEquals(3, report.getRequestCount());
+        assertEquals(1, report.getCachedCount());
+        assertEquals(DID_COUNT, report.getDids().size());
+        assertNotNull(report.getDtcs());
+        assertEquals(7, ecus.getRequestCount());
+
+        clock.advance(DTC_TTL_MS);
+        scanner.scan(scan, listener);
+        responses.deliverNewestFirst();
+        report = reports.get(2).getEcuReport(ECU);
+        assertEquals(4, report.getRequestCount());
+        assertEquals(0, report.getCachedCount());
+        assertEquals(11, ecus.getRequestCount());
+    }
+
+    @Test
+    public void invalidateForgetsTheCache() {
+        scanner.scan(new DiagnosticScan().readDids(ECU, 0xD000, 0xFFFF), listener);
+        responses.deliverNewestFirst();
+        DIDResult unknown = reports.get(0).getEcuReport(ECU).getDids().get(0xFFFF);
+        assertEquals(VehicleDataResultCode.INVALID_ID, unknown.getResultCode());
+        assertNull(unknown.getData());
+
+        scanner.invalidate();
+        scanner.scan(new DiagnosticScan().readDids(ECU, 0xD000), listener);
+        responses.deliverNewestFirst();
+        assertEquals(1, reports.get(1).getEcuReport(ECU).getRequestCount());
+        assertEquals(0, reports.get(1).getEcuReport(ECU).getCachedCount());
+    }
+}
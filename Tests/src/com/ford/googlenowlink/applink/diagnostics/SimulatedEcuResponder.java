@@ -0,0 +1,138 @@
+package com.ford.googlenowlink.applink.diagnostics;
+
+import com.ford.googlenowlink.applink.rpc.LoopbackRpcTransport;
+import com.ford.syncV4.proxy.RPCRequest;
+import com.ford.syncV4.proxy.RPCResponse;
+import com.ford.syncV4.proxy.rpc.DIDResult;
+import com.ford.syncV4.proxy.rpc.GetDTCs;
+import com.ford.syncV4.proxy.rpc.GetDTCsResponse;
+import com.ford.syncV4.proxy.rpc.ReadDID;
+import com.ford.syncV4.proxy.rpc.ReadDIDResponse;
+import com.ford.syncV4.proxy.rpc.enums.Result;
+import com.ford.syncV4.proxy.rpc.enums.VehicleDataResultCode;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Answers GetDTCs and ReadDID like a set of ECUs would, for running a
+ * {@link DiagnosticScanner} over a {@link LoopbackRpcTransport} in tests.
+ * Other requests are never answered.
+ */
+public class SimulatedEcuResponder implements LoopbackRpcTransport.Responder {
+
+    private static class Ecu {
+        final int header;
+        final Vector<String> dtcs;
+        final Map<Integer, String> dids = new HashMap<Integer, String>();
+
+        Ecu(int header, Vector<String> dtcs) {
+            this.header = header;
+            this.dtcs = dtcs;
+        }
+    }
+
+    // guarded by itself
+    private final Map<Integer, Ecu> ecus = new HashMap<Integer, Ecu>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private volatile int maxDidsPerRequest = DiagnosticScanner.DEFAULT_MAX_DIDS_PER_REQUEST;
+
+    public SimulatedEcuResponder addEcu(int ecu, int header, String... dtcs) {
+        synchronized (ecus) {
+            ecus.put(ecu, new Ecu(header, new Vector<String>(Arrays.asList(dtcs))));
+        }
+        return this;
+    }
+
+    public SimulatedEcuResponder setDid(int ecu, int did, String data) {
+        synchronized (ecus) {
+            ecus.get(ecu).dids.put(did, data);
+        }
+        return this;
+    }
+
+    /**
+     * ReadDID requests with more DIDs than this are rejected with INVALID_DATA.
+     */
+    public void setMaxDidsPerRequest(int maxDidsPerRequest) {
+        this.maxDidsPerRequest = maxDidsPerRequest;
+    }
+
+    /**
+     * Returns the number of GetDTCs and ReadDID requests answered.
+     */
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    @Override
+    public RPCResponse respond(RPCRequest request) {
+        if (request instanceof GetDTCs) {
+            requestCount.incrementAndGet();
+            return respond((GetDTCs) request);
+        }
+        if (request instanceof ReadDID) {
+            requestCount.incrementAndGet();
+            return respond((ReadDID) request);
+        }
+        return null;
+    }
+
+    private GetDTCsResponse respond(GetDTCs request) {
+        GetDTCsResponse response = new GetDTCsResponse();
+        synchronized (ecus) {
+            Ecu ecu = ecus.get(request.getEcuName());
+            if (ecu == null) {
+                response.setSuccess(false);
+                response.setResultCode(Result.INVALID_DATA);
+                response.setInfo("Unknown ECU " + request.getEcuName());
+                return response;
+            }
+            response.setSuccess(true);
+            response.setResultCode(Result.SUCCESS);
+            response.setEcuHeader(ecu.header);
+            response.setDtc(new Vector<String>(ecu.dtcs));
+        }
+        return response;
+    }
+
+    private ReadDIDResponse respond(ReadDID request) {
+        ReadDIDResponse response = new ReadDIDResponse();
+        Vector<Integer> locations = request.getDidLocation();
+        if (locations == null || locations.isEmpty() || locations.size() > maxDidsPerRequest) {
+            response.setSuccess(false);
+            response.setResultCode(Result.INVALID_DATA);
+            response.setInfo("Expected 1 to " + maxDidsPerRequest + " DIDs");
+            return response;
+        }
+        synchronized (ecus) {
+            Ecu ecu = ecus.get(request.getEcuName());
+            if (ecu == null) {
+                response.setSuccess(false);
+                response.setResultCode(Result.INVALID_DATA);
+                response.setInfo("Unknown ECU " + request.getEcuName());
+                return response;
+            }
+            Vector<DIDResult> results = new Vector<DIDResult>(locations.size());
+            for (Integer location : locations) {
+                DIDResult result = new DIDResult();
+                result.setDidLocation(location);
+                String data = ecu.dids.get(location);
+                if (data != null) {
+                    result.setResultCode(VehicleDataResultCode.SUCCESS);
+                    result.setData(data);
+                } else {
+                    result.setResultCode(VehicleDataResultCode.INVALID_ID);
+                }
+                results.add(result);
+            }
+            response.setSuccess(true);
+            response.setResultCode(Result.SUCCESS);
+            response.setDidResult(results);
+        }
+        return response;
+    }
+}
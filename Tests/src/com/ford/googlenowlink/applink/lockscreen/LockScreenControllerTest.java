@@ -0,0 +1,152 @@
+package com.ford.googlenowlink.applink.lockscreen;
+
+import com.ford.googlenowlink.applink.connection.VirtualTaskScheduler;
+import com.ford.syncV4.proxy.rpc.enums.LockScreenStatus;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LockScreenControllerTest {
+    private static final long CLEAR_DELAY_MS = 1500;
+
+    /** Records the calls instead of drawing anything. */
+    private static class RecordingSurface implements LockScreenController.Surface {
+        final List<String> calls = new ArrayList<String>();
+
+        @Override
+        public void prepare() {
+            calls.add("prepare");
+        }
+
+        @Override
+        public void show() {
+            calls.add("show");
+        }
+
+        @Override
+        public void hide() {
+            calls.add("hide");
+        }
+    }
+
+    private VirtualTaskScheduler scheduler;
+    private RecordingSurface surface;
+    private List<Boolean> lockChanges;
+    private LockScreenController controller;
+
+    @Before
+    public void setUp() {
+        scheduler = new VirtualTaskScheduler();
+        surface = new RecordingSurface();
+        lockChanges = new ArrayList<Boolean>();
+        controller = new LockScreenController(scheduler, CLEAR_DELAY_MS);
+        controller.setSurface(surface);
+        controller.setListener(new LockScreenController.Listener() {
+            @Override
+            public void onLockChanged(boolean locked) {
+                lockChanges.add(locked);
+            }
+        });
+    }
+
+    @Test
+    public void requiredShowsAtOnce() {
+        controller.onStatus(LockScreenStatus.REQUIRED);
+
+        assertTrue(controller.isLocked());
+        assertEquals(Arrays.asList("show"), surface.calls);
+        assertEquals(Arrays.asList(true), lockChanges);
+        assertEquals(1, controller.getShowCount());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void offHidesOnlyAfterTheClearDelay() {
+        controller.onStatus(LockScreenStatus.REQUIRED);
+        controller.onStatus(LockScreenStatus.OFF);
+
+        scheduler.advance(CLEAR_DELAY_MS - 1);
+        assertTrue(controller.isLocked());
+        assertEquals(Arrays.asList("show"), surface.calls);
+
+        scheduler.advance(1);
+        assertFalse(controller.isLocked());
+        assertEquals(Arrays.asList("show", "hide"), surface.calls);
+        assertEquals(Arrays.asList(true, false), lockChanges);
+    }
+
+    @Test
+    public void repeatedOffDoesNotPushTheHideBack() {
+        controller.onStatus(LockScreenStatus.REQUIRED);
+        controller.onStatus(LockScreenStatus.OFF);
+        scheduler.advance(1000);
+        controller.onStatus(LockScreenStatus.OPTIONAL);
+
+        scheduler.advance(CLEAR_DELAY_MS - 1000);
+        assertFalse(controller.isLocked());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void flapWithinTheDelayKeepsTheLockScreenUp() {
+        controller.onStatus(LockScreenStatus.REQUIRED);
+        controller.onStatus(LockScreenStatus.OFF);
+        scheduler.advance(CLEAR_DELAY_MS / 2);
+        controller.onStatus(LockScreenStatus.REQUIRED);
+
+        scheduler.advance(CLEAR_DELAY_MS * 2);
+        assertTrue(controller.isLocked());
+        assertEquals(Arrays.asList("show"), surface.calls);
+        assertEquals(Arrays.asList(true), lockChanges);
+        assertEquals(1, controller.getShowCount());
+        assertEquals(1, controller.getFlapCount());
+    }
+
+    @Test
+    public void clearCancelsAPendingHide() {
+        controller.onStatus(LockScreenStatus.REQUIRED);
+        controller.onStatus(LockScreenStatus.OFF);
+        controller.clear();
+
+        assertFalse(controller.isLocked());
+        assertEquals(Arrays.asList("show", "hide"), surface.calls);
+        assertEquals(0, scheduler.getPendingCount());
+
+        // a new connection locks again; the cancelled hide must not take it down
+        controller.onStatus(LockScreenStatus.REQUIRED);
+        scheduler.advance(CLEAR_DELAY_MS * 2);
+        assertTrue(controller.isLocked());
+        assertEquals(Arrays.asList("show", "hide", "show"), surface.calls);
+        assertEquals(0, controller.getFlapCount());
+    }
+
+    @Test
+    public void surfaceAvailableWhileLockedShowsAgain() {
+        controller.onStatus(LockScreenStatus.REQUIRED);
+        controller.onSurfaceAvailable();
+
+        assertEquals(Arrays.asList("show", "show"), surface.calls);
+        assertEquals(1, controller.getShowCount());
+        controller.onFrameShown();
+        assertEquals(1, controller.getShowLatency().getCount());
+    }
+
+    @Test
+    public void surfaceAvailableWhileConnectedAndUnlockedPrepares() {
+        controller.onSurfaceAvailable();
+        assertTrue(surface.calls.isEmpty());
+
+        controller.onStatus(LockScreenStatus.OFF);
+        controller.onSurfaceAvailable();
+        assertEquals(Arrays.asList("prepare", "prepare"), surface.calls);
+        assertFalse(controller.isLocked());
+    }
+}
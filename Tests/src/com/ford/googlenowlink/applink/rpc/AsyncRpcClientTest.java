@@ -0,0 +1,231 @@
+package com.ford.googlenowlink.applink.rpc;
+
+import com.ford.syncV4.proxy.RPCRequest;
+import com.ford.syncV4.proxy.RPCResponse;
+import com.ford.syncV4.proxy.rpc.GenericResponse;
+import com.ford.syncV4.proxy.rpc.Show;
+import com.ford.syncV4.proxy.rpc.ShowResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncRpcClientTest {
+
+    /** Answers every Show while answering is on, and remembers the requests. */
+    private static class ShowResponder implements LoopbackRpcTransport.Responder {
+        final List<RPCRequest> requests = new ArrayList<RPCRequest>();
+        boolean answering = true;
+
+        @Override
+        public RPCResponse respond(RPCRequest request) {
+            requests.add(request);
+            return answering ? new ShowResponse() : null;
+        }
+    }
+
+    /** Runs tasks only when the test says so. */
+    private static class QueuedExecutor implements Executor {
+        final List<Runnable> queued = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable task) {
+            queued.add(task);
+        }
+
+        void runAll() {
+            while (!queued.isEmpty()) {
+                queued.remove(0).run();
+            }
+        }
+    }
+
+    /** Records what a callback was called with. */
+    private static class RecordingCallback implements RpcCallback<ShowResponse> {
+        ShowResponse response;
+        Throwable failure;
+
+        @Override
+        public void onResponse(ShowResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public void onFailure(Throwable cause) {
+            failure = cause;
+        }
+    }
+
+    private ShowResponder responder;
+    private QueuedExecutor callbacks;
+    private AsyncRpcClient client;
+
+    @Before
+    public void setUp() {
+        responder = new ShowResponder();
+        callbacks = new QueuedExecutor();
+        client = newClient(0);
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown(new IOException("test over"));
+    }
+
+    private AsyncRpcClient newClient(long timeoutMs) {
+        LoopbackRpcTransport transport = new LoopbackRpcTransport(responder, null);
+        AsyncRpcClient client = new AsyncRpcClient(transport, callbacks, timeoutMs);
+        transport.setClient(client);
+        return client;
+    }
+
+    @Test
+    public void responseCompletesTheMatchingRequest() throws Exception {
+        RpcFuture<ShowResponse> first = client.send(new Show());
+        RpcFuture<ShowResponse> second = client.send(new Show());
+
+        assertEquals(2, responder.requests.size());
+        assertEquals(Integer.valueOf(first.getCorrelationId()), responder.requests.get(0).getCorrelationID());
+        assertEquals(Integer.valueOf(second.getCorrelationId()), responder.requests.get(1).getCorrelationID());
+        assertEquals(Integer.valueOf(first.getCorrelationId()), first.get().getCorrelationID());
+        assertEquals(Integer.valueOf(second.getCorrelationId()), second.get().getCorrelationID());
+        assertEquals(0, client.getPendingCount());
+    }
+
+    @Test
+    public void responseOfTheWrongTypeFailsTheRequest() throws InterruptedException {
+        responder.answering = false;
+        RpcFuture<ShowResponse> future = client.send(new Show());
+        GenericResponse response = new GenericResponse();
+        response.setCorrelationID(future.getCorrelationId());
+        assertTrue(client.onResponse(response));
+
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof UnexpectedResponseException);
+        }
+        // a second response for the same request is not matched
+        assertFalse(client.onResponse(response));
+    }
+
+    @Test
+    public void timeoutFailsTheRequestAndFreesItsSlot() throws InterruptedException {
+        client.shutdown(new IOException("replaced"));
+        client = newClient(50);
+        responder.answering = false;
+        RpcFuture<ShowResponse> future = client.send(new Show());
+        assertEquals(1, client.getPendingCount());
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        } catch (TimeoutException e) {
+            fail("the request did not time out");
+        }
+        assertEquals(0, client.getPendingCount());
+        ShowResponse late = new ShowResponse();
+        late.setCorrelationID(future.getCorrelationId());
+        assertFalse(client.onResponse(late));
+    }
+
+    @Test
+    public void cancelStopsWaitingForTheResponse() {
+        client.shutdown(new IOException("replaced"));
+        // long enough that the timeout would keep the slot for the rest of the test
+        client = newClient(60000);
+        responder.answering = false;
+        RpcFuture<ShowResponse> future = client.send(new Show());
+        assertEquals(1, client.getPendingCount());
+
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+        assertEquals(0, client.getPendingCount());
+        ShowResponse late = new ShowResponse();
+        late.setCorrelationID(future.getCorrelationId());
+        assertFalse(client.onResponse(late));
+    }
+
+    @Test
+    public void failAllFailsEveryRequestInFlight() throws InterruptedException {
+        responder.answering = false;
+        IOException closed = new IOException("proxy closed");
+        List<RpcFuture<ShowResponse>> futures = new ArrayList<RpcFuture<ShowResponse>>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(client.send(new Show()));
+        }
+
+        client.failAll(closed);
+        assertEquals(0, client.getPendingCount());
+        for (RpcFuture<ShowResponse> future : futures) {
+            try {
+                future.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertSame(closed, e.getCause());
+            }
+        }
+    }
+
+    @Test
+    public void callbacksRunOnTheCallbackExecutor() {
+        RecordingCallback answered = new RecordingCallback();
+        client.send(new Show()).addCallback(answered);
+        responder.answering = false;
+        RecordingCallback abandoned = new RecordingCallback();
+        client.send(new Show()).addCallback(abandoned);
+        IOException closed = new IOException("proxy closed");
+        client.failAll(closed);
+
+        // both futures are complete, but nothing ran on the completing thread
+        assertNull(answered.response);
+        assertNull(abandoned.failure);
+        assertEquals(2, callbacks.queued.size());
+        callbacks.runAll();
+        assertEquals(ShowResponse.class, answered.response.getClass());
+        assertNull(answered.failure);
+        assertSame(closed, abandoned.failure);
+    }
+
+    @Test
+    public void requestsBeyondTheSlotArrayUseTheOverflowMap() throws Exception {
+        // twice the table's 256 slots, so every slot is taken twice over
+        int count = 512;
+        responder.answering = false;
+        List<RpcFuture<ShowResponse>> futures = new ArrayList<RpcFuture<ShowResponse>>();
+        for (int i = 0; i < count; i++) {
+            futures.add(client.send(new Show()));
+        }
+        assertEquals(count, client.getPendingCount());
+
+        // newest first, so the overflowed requests are answered while their slot is still taken
+        for (int i = count - 1; i >= 0; i--) {
+            ShowResponse response = new ShowResponse();
+            response.setCorrelationID(futures.get(i).getCorrelationId());
+            assertTrue(client.onResponse(response));
+            assertSame(response, futures.get(i).get());
+            assertEquals(i, client.getPendingCount());
+        }
+        for (RpcFuture<ShowResponse> future : futures) {
+            assertTrue(future.isDone());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.ford.googlenowlink.applink.rpc;
+
+import com.ford.syncV4.exception.SyncException;
+import com.ford.syncV4.proxy.RPCRequest;
+import com.ford.syncV4.proxy.RPCResponse;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stand-in for SyncProxyALM that answers requests locally. A {@link Responder}
+ * builds the response for each request and it is handed back to the
+ * {@link AsyncRpcClient}, optionally on a separate executor to mimic the
+ * proxy's dispatch thread. Runs the RPC flows on a plain JVM in tests.
+ */
+public class LoopbackRpcTransport implements RpcTransport {
+
+    /**
+     * Produces the head unit's answer to a request.
+     */
+    public interface Responder {
+        /**
+         * @return the response, with the request's correlation ID, or null to never answer
+         */
+        RPCResponse respond(RPCRequest request) throws SyncException;
+    }
+
+    private final Responder responder;
+    private final Executor deliveryExecutor;
+    private volatile AsyncRpcClient client;
+    private final AtomicInteger sentCount = new AtomicInteger();
+
+    /**
+     * @param deliveryExecutor executor used to deliver responses, or null to deliver
+     *                         them before sendRPCRequest returns
+     */
+    public LoopbackRpcTransport(Responder responder, Executor deliveryExecutor) {
+        this.responder = responder;
+        this.deliveryExecutor = deliveryExecutor;
+    }
+
+    public void setClient(AsyncRpcClient client) {
+        this.client = client;
+    }
+
+    public int getSentCount() {
+        return sentCount.get();
+    }
+
+    @Override
+    public void sendRPCRequest(RPCRequest request) throws SyncException {
+        sentCount.incrementAndGet();
+        final RPCResponse response = responder.respond(request);
+        if (response == null) {
+            return;
+        }
+        if (response.getCorrelationID() == null) {
+            response.setCorrelationID(request.getCorrelationID());
+        }
+        if (deliveryExecutor == null) {
+            client.onResponse(response);
+        } else {
+            deliveryExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    client.onResponse(response);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.ford.googlenowlink.applink.vehicle;
+
+import com.ford.googlenowlink.applink.connection.VirtualTaskScheduler;
+import com.ford.syncV4.proxy.rpc.enums.PRNDL;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Replays fixtures/vehicle/pull_out.txt through the engine and checks which
+ * notifications reach the listeners, and with which changed signals.
+ */
+public class VehicleDataEngineTest {
+    private static final int GPS = VehicleSignal.GPS_LATITUDE.mask() | VehicleSignal.GPS_LONGITUDE.mask();
+
+    private final List<String> changes = new ArrayList<String>();
+    private VirtualTaskScheduler clock;
+    private VehicleDataEngine engine;
+
+    @Before
+    public void setUp() {
+        // fuel level is in the recording but not subscribed
+        VehicleDataSubscriptions subscriptions = new VehicleDataSubscriptions()
+                .add(VehicleSignal.SPEED, 1000, 1.0)
+                .add(VehicleSignal.RPM, 0, 100)
+                .add(VehicleSignal.PRNDL, 0, 0)
+                .addGps(2000, 0.0001);
+        clock = new VirtualTaskScheduler();
+        engine = new VehicleDataEngine(null, null, subscriptions, clock);
+        engine.addListener(new VehicleDataEngine.Listener() {
+            @Override
+            public void onVehicleData(VehicleDataSnapshot snapshot, int changedMask) {
+                changes.add(change(snapshot.getTimeMs(), changedMask));
+            }
+        });
+    }
+
+    @Test
+    public void replayReportsOnlyChangesPastIntervalAndDeadband() throws IOException {
+        assertEquals(13, replay("pull_out.txt"));
+
+        assertEquals(Arrays.asList(
+                change(0, VehicleSignal.SPEED.mask() | VehicleSignal.RPM.mask() | VehicleSignal.PRNDL.mask() | GPS),
+                // 200: rpm moved 50, within its deadband
+                change(400, VehicleSignal.PRNDL.mask()),
+                // 600: speed changed 600 ms after it was last reported
+                change(600, VehicleSignal.RPM.mask()),
+                // 1000: rpm within its deadband, gps within its interval
+                change(1000, VehicleSignal.SPEED.mask()),
+                change(1200, VehicleSignal.RPM.mask()),
+                change(2000, VehicleSignal.SPEED.mask() | GPS),
+                // 2200: rpm moved 80 since it was last reported; 3000: speed moved 0.5
+                change(3200, VehicleSignal.SPEED.mask()),
+                // 3400: speed within its interval, held back
+                change(3600, VehicleSignal.RPM.mask()),
+                // the held back speed goes out with a notification that doesn't carry it
+                change(4300, VehicleSignal.SPEED.mask())),
+                changes);
+        assertEquals(13, engine.getNotificationCount());
+        assertEquals(9, engine.getChangeCount());
+
+        VehicleDataSnapshot snapshot = engine.getSnapshot();
+        assertEquals(25.0, snapshot.getSpeed(), 0);
+        assertEquals(3000, snapshot.get(VehicleSignal.RPM), 0);
+        assertEquals(PRNDL.DRIVE, snapshot.getPrndl());
+        assertEquals(42.3002, snapshot.getLatitude(), 1e-9);
+        assertEquals(-83.2303, snapshot.getLongitude(), 1e-9);
+        assertFalse(snapshot.has(VehicleSignal.FUEL_LEVEL));
+    }
+
+    @Test
+    public void resetReportsEverySignalAgain() throws IOException {
+        replay("pull_out.txt");
+        engine.reset();
+        changes.clear();
+
+        new VehicleDataReplay(engine).replay(new StringReader("4400 speed=25.0 rpm=3050\n"));
+        assertEquals(Arrays.asList(change(4400, VehicleSignal.SPEED.mask() | VehicleSignal.RPM.mask())), changes);
+    }
+
+    @Test
+    public void heldBackChangeIsFlushedWhenItsIntervalEnds() {
+        notifyAt(0, "speed=0.0");
+        // the car speeds up and then SYNC has nothing new to report
+        notifyAt(400, "speed=20.0");
+        assertEquals(1, changes.size());
+
+        clock.advance(599);
+        assertEquals(1, changes.size());
+        clock.advance(1);
+        assertEquals(Arrays.asList(change(0, VehicleSignal.SPEED.mask()), change(1000, VehicleSignal.SPEED.mask())),
+                changes);
+        assertEquals(20.0, engine.getSnapshot().getSpeed(), 0);
+        assertEquals(2, engine.getNotificationCount());
+        assertEquals(2, engine.getChangeCount());
+        assertEquals(0, clock.getPendingCount());
+    }
+
+    @Test
+    public void heldBackChangesAreFlushedInTheOrderTheirIntervalsEnd() {
+        notifyAt(0, "speed=0.0 gps=42.30000,-83.23000");
+        notifyAt(500, "speed=10.0 gps=42.30100,-83.23000");
+        // the later value is the one flushed
+        notifyAt(1500, "gps=42.30200,-83.23000");
+        clock.advance(1000);
+
+        assertEquals(Arrays.asList(
+                change(0, VehicleSignal.SPEED.mask() | GPS),
+                change(1000, VehicleSignal.SPEED.mask()),
+                change(2000, VehicleSignal.GPS_LATITUDE.mask())),
+                changes);
+        assertEquals(42.302, engine.getSnapshot().getLatitude(), 1e-9);
+        assertEquals(0, clock.getPendingCount());
+    }
+
+    @Test
+    public void flushPublishesNothingOnceTheValueIsBackWithinTheDeadband() {
+        notifyAt(0, "speed=10.0");
+        notifyAt(400, "speed=20.0");
+        notifyAt(600, "speed=10.5");
+        clock.advance(1000);
+        assertEquals(Arrays.asList(change(0, VehicleSignal.SPEED.mask())), changes);
+    }
+
+    @Test
+    public void resetCancelsTheFlush() {
+        notifyAt(0, "speed=0.0");
+        notifyAt(400, "speed=20.0");
+        engine.reset();
+        assertEquals(0, clock.getPendingCount());
+        clock.advance(1000);
+        assertEquals(1, changes.size());
+    }
+
+    @Test
+    public void malformedLineIsReportedWithItsNumber() {
+        try {
+            new VehicleDataReplay(engine).replay(new StringReader("# header\n0 speed=1.0\n100 speed\n"));
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Line 3: "));
+        }
+    }
+
+    private int replay(String fixture) throws IOException {
+        InputStream in = VehicleDataEngineTest.class.getResourceAsStream("/vehicle/" + fixture);
+        assertNotNull(fixture, in);
+        Reader reader = new InputStreamReader(in, "UTF-8");
+        try {
+            return new VehicleDataReplay(engine).replay(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Moves the clock to the time and feeds a notification with the values of a recording line.
+     */
+    private void notifyAt(long timeMs, String values) {
+        clock.advance(timeMs - clock.now());
+        engine.onVehicleData(VehicleDataReplay.parse((timeMs + " " + values).split(" ")));
+    }
+
+    private static String change(long timeMs, int changedMask) {
+        return timeMs + " " + Integer.toBinaryString(changedMask);
+    }
+}
@@ -0,0 +1,93 @@
+package com.ford.googlenowlink.applink.vehicle;
+
+import com.ford.syncV4.proxy.rpc.GPSData;
+import com.ford.syncV4.proxy.rpc.OnVehicleData;
+import com.ford.syncV4.proxy.rpc.enums.PRNDL;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Feeds recorded OnVehicleData notifications to a {@link VehicleDataEngine},
+ * so tests can exercise its filtering against a drive written down as text.
+ *
+ * A recording has one notification per line: the time in milliseconds
+ * followed by the reported values, e.g.
+ * {@code 1520 speed=52.5 rpm=2100 prndl=DRIVE gps=42.30,-83.23}.
+ * Keys are speed, rpm, fuelLevel, externalTemperature, odometer, prndl and
+ * gps; empty lines and lines starting with # are skipped.
+ */
+public class VehicleDataReplay {
+    private final VehicleDataEngine engine;
+
+    public VehicleDataReplay(VehicleDataEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Replays a whole recording, with the recorded times as the engine's clock.
+     * The scheduler's clock is not moved, so no flush of a held back change runs:
+     * only what the notifications themselves publish reaches the listeners.
+     * @return the number of notifications replayed
+     */
+    public int replay(Reader recording) throws IOException {
+        BufferedReader reader = new BufferedReader(recording);
+        int count = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.length() == 0 || line.charAt(0) == '#') {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            try {
+                long timeMs = Long.parseLong(fields[0]);
+                engine.onVehicleData(parse(fields), timeMs);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+            }
+            count++;
+        }
+        return count;
+    }
+
+    static OnVehicleData parse(String[] fields) {
+        OnVehicleData notification = new OnVehicleData();
+        for (int i = 1; i < fields.length; i++) {
+            int eq = fields[i].indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected key=value: " + fields[i]);
+            }
+            String key = fields[i].substring(0, eq);
+            String value = fields[i].substring(eq + 1);
+            if ("speed".equals(key)) {
+                notification.setSpeed(Double.valueOf(value));
+            } else if ("rpm".equals(key)) {
+                notification.setRpm(Integer.valueOf(value));
+            } else if ("fuelLevel".equals(key)) {
+                notification.setFuelLevel(Double.valueOf(value));
+            } else if ("externalTemperature".equals(key)) {
+                notification.setExternalTemperature(Double.valueOf(value));
+            } else if ("odometer".equals(key)) {
+                notification.setOdometer(Integer.valueOf(value));
+            } else if ("prndl".equals(key)) {
+                notification.setPrndl(PRNDL.valueOf(value));
+            } else if ("gps".equals(key)) {
+                int comma = value.indexOf(',');
+                if (comma < 0) {
+                    throw new IllegalArgumentException("Expected gps=latitude,longitude: " + value);
+                }
+                GPSData gps = new GPSData();
+                gps.setLatitudeDegrees(Double.valueOf(value.substring(0, comma)));
+                gps.setLongitudeDegrees(Double.valueOf(value.substring(comma + 1)));
+                notification.setGps(gps);
+            } else {
+                throw new IllegalArgumentException("Unknown key " + key);
+            }
+        }
+        return notification;
+    }
+}